@@ -50,6 +50,20 @@ public class citizen_applet extends Applet implements ExtendedLength {
     private static final byte P2_CARD_ID = (byte) 0x0A;
     private static final byte P2_PUBLIC_KEY = (byte) 0x0B;
     private static final byte P2_BALANCE = (byte) 0x0C;
+    private static final byte P2_TRANSFER_LIMITS = (byte) 0x0D;
+    private static final byte P2_PROFILE = (byte) 0x0E;
+    private static final byte P2_AVATAR_VERSION = (byte) 0x0F;
+    private static final byte P2_INFO_FIELD = (byte) 0x10;
+
+    // Profile TLV tags: [tag:1][len:2][value:N]
+    private static final byte TAG_CARD_ID = (byte) 0x01;
+    private static final byte TAG_TRY_REMAINING = (byte) 0x02;
+    private static final byte TAG_BALANCE = (byte) 0x03;
+    private static final byte TAG_INFO = (byte) 0x04;
+
+    // Info record v1: [0xC1] then [tag:1][len:1][value:N] per field, tag 0x00 = end
+    private static final byte INFO_FORMAT_V1 = (byte) 0xC1;
+    private static final byte INFO_TAG_END = (byte) 0x00;
 
     // PIN Configuration
     private static final byte PIN_LENGTH = 4;
@@ -57,7 +71,11 @@ public class citizen_applet extends Applet implements ExtendedLength {
 
     // Data sizes
     private static final short MAX_INFO_LENGTH = 512;
+    private static final short MAX_READABLE_INFO_LENGTH = 255; // GET INFO answers in one short APDU
     private static final short MAX_AVATAR_SIZE = (short) 15360; // 15KB with Extended APDU
+    private static final short AVATAR_CHUNK_SIZE = 200; // GET_AVATAR_CHUNK data per short APDU response
+    private static final short AVATAR_HEADER_SIZE = 4; // [totalLen:2][offset|chunkLen:2]
+    private static final short AVATAR_DIGEST_SIZE = 8; // leading bytes of SHA-1(avatar)
 
     // PBKDF2 Configuration
     private static final short PBKDF2_ITERATIONS = 1000; // Reduced for JavaCard performance
@@ -88,10 +106,12 @@ public class citizen_applet extends Applet implements ExtendedLength {
     private MessageDigest sha1; // For PBKDF2-HMAC-SHA1
     private RandomData randomData; // Dùng sinh Master Key ngẫu nhiên
 
-    // PBKDF2 working buffers
-    private byte[] hmacKey; // HMAC key buffer (64 bytes for SHA1 block)
-    private byte[] hmacBuffer; // HMAC intermediate buffer
-    private byte[] pbkdf2Buffer; // PBKDF2 output buffer
+    // PBKDF2 working buffers (transient RAM - 1000 iterations must not write EEPROM)
+    private byte[] hmacIpad; // K' XOR ipad, computed once per derivation (64 bytes)
+    private byte[] hmacOpad; // K' XOR opad, computed once per derivation (64 bytes)
+    private byte[] hmacBuffer; // HMAC inner hash (20 bytes)
+    private byte[] pbkdf2Buffer; // PBKDF2 U(i) (20 bytes)
+    private byte[] pbkdf2Result; // PBKDF2 T = U1 ^ U2 ^ ... (20 bytes)
 
     // RSA components
     private RSAPrivateKey rsaPrivateKey;
@@ -102,12 +122,16 @@ public class citizen_applet extends Applet implements ExtendedLength {
     // Encrypted data storage
     private byte[] encryptedBalance; // 16 bytes
     private byte[] encryptedInfo; // MAX_INFO_LENGTH + 16 for padding
-    private short encryptedInfoLength;
+    private short encryptedInfoLength; // padded (multiple of 16)
+    private short infoLength; // actual info length before padding
 
     // Avatar storage
     private byte[] avatar; // MAX_AVATAR_SIZE
     private byte[] avatarBuffer; // Temporary buffer for processing
-    private short avatarSize;
+    private short avatarSize; // encrypted (padded) size
+    private short avatarLength; // actual avatar length before padding
+    private short avatarVersion; // incremented on every avatar upload
+    private byte[] avatarDigest; // SHA-1(plain avatar), truncated - lets the host cache photos
 
     // Working buffer
     private byte[] tempBuffer;
@@ -139,13 +163,16 @@ public class citizen_applet extends Applet implements ExtendedLength {
         encryptedMasterKey = new byte[16];
 
         // PBKDF2 working buffers
-        hmacKey = new byte[SHA1_BLOCK_SIZE]; // 64 bytes
-        hmacBuffer = new byte[(short) (SHA1_BLOCK_SIZE + SHA1_HASH_SIZE)]; // 84 bytes
-        pbkdf2Buffer = new byte[SHA1_HASH_SIZE]; // 20 bytes
+        hmacIpad = JCSystem.makeTransientByteArray(SHA1_BLOCK_SIZE, JCSystem.CLEAR_ON_RESET);
+        hmacOpad = JCSystem.makeTransientByteArray(SHA1_BLOCK_SIZE, JCSystem.CLEAR_ON_RESET);
+        hmacBuffer = JCSystem.makeTransientByteArray(SHA1_HASH_SIZE, JCSystem.CLEAR_ON_RESET);
+        pbkdf2Buffer = JCSystem.makeTransientByteArray(SHA1_HASH_SIZE, JCSystem.CLEAR_ON_RESET);
+        pbkdf2Result = JCSystem.makeTransientByteArray(SHA1_HASH_SIZE, JCSystem.CLEAR_ON_RESET);
 
         // Avatar storage (add 16 bytes for AES padding)
         avatar = new byte[(short) (MAX_AVATAR_SIZE + 16)];
         avatarBuffer = new byte[(short) (MAX_AVATAR_SIZE + 16)];
+        avatarDigest = new byte[AVATAR_DIGEST_SIZE];
 
         // Crypto initialization - New Master Key Architecture
         md5 = MessageDigest.getInstance(MessageDigest.ALG_MD5, false);
@@ -172,7 +199,10 @@ public class citizen_applet extends Applet implements ExtendedLength {
         cardInitialized = false;
         cardActive = true;
         encryptedInfoLength = 0;
+        infoLength = 0;
         avatarSize = 0;
+        avatarLength = 0;
+        avatarVersion = 0;
     }
 
     // =====================================================
@@ -408,32 +438,46 @@ public class citizen_applet extends Applet implements ExtendedLength {
         byte p2 = buf[ISO7816.OFFSET_P2];
         boolean moreChunks = (p2 & 0x80) != 0;
 
-        // Receive chunk data
+        // Receive chunk data (short or extended APDU - whole avatar may come in one command)
         short received = apdu.setIncomingAndReceive();
+        short incoming = apdu.getIncomingLength();
 
-        if (received < 4) {
+        if (received < AVATAR_HEADER_SIZE) {
             ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
         }
 
         // Parse header: totalLen(2) + offset(2)
-        short dataOffset = ISO7816.OFFSET_CDATA;
+        short dataOffset = apdu.getOffsetCdata();
         short totalLen = Util.getShort(buf, dataOffset);
         short chunkOffset = Util.getShort(buf, (short) (dataOffset + 2));
-        short chunkLen = (short) (received - 4);
+        short chunkLen = (short) (incoming - AVATAR_HEADER_SIZE);
 
         // Validate
-        if (totalLen > MAX_AVATAR_SIZE || chunkOffset + chunkLen > totalLen) {
+        if (totalLen > MAX_AVATAR_SIZE || chunkOffset < 0 || chunkOffset + chunkLen > totalLen) {
             ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
         }
 
         // Copy chunk data to avatar buffer
-        Util.arrayCopy(buf, (short) (dataOffset + 4), avatarBuffer, chunkOffset, chunkLen);
+        short copied = (short) (received - AVATAR_HEADER_SIZE);
+        Util.arrayCopy(buf, (short) (dataOffset + AVATAR_HEADER_SIZE), avatarBuffer, chunkOffset, copied);
+
+        // Extended APDU: rest of the data arrives in further blocks
+        while (apdu.getCurrentState() == APDU.STATE_PARTIAL_INCOMING) {
+            received = apdu.receiveBytes((short) 0);
+            Util.arrayCopy(buf, (short) 0, avatarBuffer, (short) (chunkOffset + copied), received);
+            copied += received;
+        }
 
         // If last chunk, encrypt and store
         if (!moreChunks) {
             // Calculate padded length for AES (multiple of 16)
             short paddedLen = (short) (totalLen + (16 - (totalLen % 16)));
 
+            // Digest of the plain photo for GET AVATAR_VERSION
+            sha1.doFinal(avatarBuffer, (short) 0, totalLen, tempBuffer, (short) 0);
+            Util.arrayCopy(tempBuffer, (short) 0, avatarDigest, (short) 0, AVATAR_DIGEST_SIZE);
+            avatarVersion++;
+
             // Pad with zeros
             Util.arrayFillNonAtomic(avatarBuffer, totalLen, (short) (paddedLen - totalLen), (byte) 0x00);
 
@@ -441,6 +485,7 @@ public class citizen_applet extends Applet implements ExtendedLength {
             aesCipher.init(masterKey, Cipher.MODE_ENCRYPT);
             aesCipher.doFinal(avatarBuffer, (short) 0, paddedLen, avatar, (short) 0);
             avatarSize = paddedLen;
+            avatarLength = totalLen;
 
             // Clear buffer
             Util.arrayFillNonAtomic(avatarBuffer, (short) 0, paddedLen, (byte) 0x00);
@@ -473,6 +518,15 @@ public class citizen_applet extends Applet implements ExtendedLength {
             case P2_TRY_REMAINING:
                 getTryRemaining(apdu);
                 break;
+            case P2_TRANSFER_LIMITS:
+                getTransferLimits(apdu);
+                break;
+            case P2_PROFILE:
+                getProfile(apdu);
+                break;
+            case P2_AVATAR_VERSION:
+                getAvatarVersion(apdu);
+                break;
             case P2_INFORMATION:
                 if (p1 == P1_CITIZEN_INFO) {
                     getInfo(apdu);
@@ -526,6 +580,101 @@ public class citizen_applet extends Applet implements ExtendedLength {
         apdu.setOutgoingAndSend((short) 0, (short) 1);
     }
 
+    /**
+     * Get profile bundle in one response (login / dashboard load)
+     * TLV: CARD_ID, TRY_REMAINING, then BALANCE and INFO if PIN verified
+     * INFO has length 0 if not stored, and is left out if it does not fit Le
+     * (host then falls back to GET INFORMATION)
+     */
+    private void getProfile(APDU apdu) {
+        if (!cardInitialized) {
+            ISOException.throwIt(ISO7816.SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] buffer = apdu.getBuffer();
+        short off = 0;
+
+        off = putTlvHeader(buffer, off, TAG_CARD_ID, cardIdLength);
+        off = Util.arrayCopyNonAtomic(cardId, (short) 0, buffer, off, cardIdLength);
+
+        off = putTlvHeader(buffer, off, TAG_TRY_REMAINING, (short) 1);
+        buffer[off++] = pinTryCounter;
+
+        short infoLen = 0;
+        boolean withInfo = false;
+        if (pinVerified) {
+            aesCipher.init(masterKey, Cipher.MODE_DECRYPT);
+
+            // Balance: first 4 bytes of the decrypted block
+            aesCipher.doFinal(encryptedBalance, (short) 0, (short) 16, tempBuffer, (short) 0);
+            off = putTlvHeader(buffer, off, TAG_BALANCE, (short) 4);
+            off = Util.arrayCopyNonAtomic(tempBuffer, (short) 0, buffer, off, (short) 4);
+
+            // Info: decrypted into tempBuffer, sent after the TLV headers
+            if (encryptedInfoLength > 0) {
+                aesCipher.doFinal(encryptedInfo, (short) 0, encryptedInfoLength, tempBuffer, (short) 0);
+                infoLen = infoLength;
+            }
+            withInfo = true;
+        }
+
+        short le = apdu.setOutgoing();
+        if (withInfo && le >= 0 && (short) (off + 3 + infoLen) > le) {
+            withInfo = false; // does not fit short response
+        }
+        if (withInfo) {
+            off = putTlvHeader(buffer, off, TAG_INFO, infoLen);
+        } else {
+            infoLen = 0;
+        }
+
+        apdu.setOutgoingLength((short) (off + infoLen));
+        apdu.sendBytes((short) 0, off);
+        if (infoLen > 0) {
+            apdu.sendBytesLong(tempBuffer, (short) 0, infoLen);
+        }
+
+        // Clear temp buffer for security
+        Util.arrayFillNonAtomic(tempBuffer, (short) 0, (short) tempBuffer.length, (byte) 0x00);
+    }
+
+    private short putTlvHeader(byte[] buffer, short off, byte tag, short length) {
+        buffer[off] = tag;
+        Util.setShort(buffer, (short) (off + 1), length);
+        return (short) (off + 3);
+    }
+
+    /**
+     * Get avatar transfer limits for host negotiation
+     * Returns: [maxCommandData:2][maxResponseData:2]
+     * Host picks its chunk size from these and the reader's own APDU limit
+     */
+    private void getTransferLimits(APDU apdu) {
+        byte[] buffer = apdu.getBuffer();
+        Util.setShort(buffer, (short) 0, (short) (MAX_AVATAR_SIZE + AVATAR_HEADER_SIZE));
+        Util.setShort(buffer, (short) 2, (short) (MAX_AVATAR_SIZE + AVATAR_HEADER_SIZE));
+        apdu.setOutgoingAndSend((short) 0, (short) 4);
+    }
+
+    /**
+     * Get avatar version - lets the host skip the download when its cached copy is current
+     * Returns: [version:2][SHA-1(avatar):8]
+     */
+    private void getAvatarVersion(APDU apdu) {
+        if (!cardInitialized || !pinVerified) {
+            ISOException.throwIt(ISO7816.SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+
+        if (avatarSize == 0) {
+            ISOException.throwIt(ISO7816.SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] buffer = apdu.getBuffer();
+        Util.setShort(buffer, (short) 0, avatarVersion);
+        Util.arrayCopy(avatarDigest, (short) 0, buffer, (short) 2, AVATAR_DIGEST_SIZE);
+        apdu.setOutgoingAndSend((short) 0, (short) (2 + AVATAR_DIGEST_SIZE));
+    }
+
     private void getInfo(APDU apdu) {
         if (!cardInitialized || !pinVerified) {
             ISOException.throwIt(ISO7816.SW_SECURITY_STATUS_NOT_SATISFIED);
@@ -538,11 +687,10 @@ public class citizen_applet extends Applet implements ExtendedLength {
         byte[] buffer = apdu.getBuffer();
         // Use Master Key for decryption (v3.0)
         aesCipher.init(masterKey, Cipher.MODE_DECRYPT);
-        short len = aesCipher.doFinal(encryptedInfo, (short) 0, encryptedInfoLength, buffer, (short) 0);
+        aesCipher.doFinal(encryptedInfo, (short) 0, encryptedInfoLength, buffer, (short) 0);
 
-        // Remove padding
-        short actualLen = removePadding(buffer, len);
-        apdu.setOutgoingAndSend((short) 0, actualLen);
+        // Stored length - the record is binary TLV, trailing zeros may be data
+        apdu.setOutgoingAndSend((short) 0, infoLength);
     }
 
     /**
@@ -591,6 +739,12 @@ public class citizen_applet extends Applet implements ExtendedLength {
     /**
      * Get avatar chunk (New Multi-Command Protocol)
      * P1/P2 encode offset: (P1 << 8) | P2
+     * 
+     * Chunk size follows Le: short APDU (Le <= 256) gets AVATAR_CHUNK_SIZE bytes,
+     * extended APDU gets up to Le - 4 bytes (whole avatar in one response).
+     * Only the AES-ECB blocks covering [offset, offset + chunkLen) are decrypted,
+     * batch by batch in the APDU buffer - no full-avatar decryption
+     * and no plaintext written to EEPROM per chunk.
      */
     private void getAvatarChunk(APDU apdu) {
         if (!cardInitialized || !pinVerified) {
@@ -605,41 +759,64 @@ public class citizen_applet extends Applet implements ExtendedLength {
         byte p1 = buf[ISO7816.OFFSET_P1];
         byte p2 = buf[ISO7816.OFFSET_P2];
 
-        // Decrypt avatar with Master Key (v3.0)
-        aesCipher.init(masterKey, Cipher.MODE_DECRYPT);
-        aesCipher.doFinal(avatar, (short) 0, avatarSize, avatarBuffer, (short) 0);
-
-        // Get actual length
-        short actualLen = getArrayLen(avatarBuffer, avatarSize);
+        short actualLen = avatarLength;
 
         // Calculate offset directly from P1/P2
         short offset = (short) (((p1 & 0xFF) << 8) | (p2 & 0xFF));
 
         // Validate offset
-        if (offset >= actualLen) {
+        if (offset < 0 || offset >= actualLen) {
             // Return empty response to indicate end
-            buf[0] = (byte) ((actualLen >> 8) & 0xFF);
-            buf[1] = (byte) (actualLen & 0xFF);
-            buf[2] = 0;
-            buf[3] = 0;
+            Util.setShort(buf, (short) 0, actualLen);
+            Util.setShort(buf, (short) 2, (short) 0);
             apdu.setOutgoingAndSend((short) 0, (short) 4);
             return;
         }
 
-        // Calculate chunk size (max 200 bytes per chunk)
-        short remaining = (short) (actualLen - offset);
-        short chunkLen = (remaining > 200) ? 200 : remaining;
+        // Chunk size from Le (Le = 0000 in extended APDU may come back as negative)
+        short le = apdu.setOutgoing();
+        short maxChunk;
+        if (le < 0) {
+            maxChunk = MAX_AVATAR_SIZE;
+        } else if (le > 256) {
+            maxChunk = (short) (le - AVATAR_HEADER_SIZE);
+        } else if (le <= AVATAR_HEADER_SIZE) {
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+            return;
+        } else {
+            maxChunk = (short) (le - AVATAR_HEADER_SIZE);
+            if (maxChunk > AVATAR_CHUNK_SIZE) {
+                maxChunk = AVATAR_CHUNK_SIZE;
+            }
+        }
 
-        // Build response: [totalLen:2][chunkLen:2][data:N]
-        buf[0] = (byte) ((actualLen >> 8) & 0xFF);
-        buf[1] = (byte) (actualLen & 0xFF);
-        buf[2] = (byte) ((chunkLen >> 8) & 0xFF);
-        buf[3] = (byte) (chunkLen & 0xFF);
+        short remaining = (short) (actualLen - offset);
+        short chunkLen = (remaining > maxChunk) ? maxChunk : remaining;
+        apdu.setOutgoingLength((short) (AVATAR_HEADER_SIZE + chunkLen));
+
+        // Header: [totalLen:2][chunkLen:2]
+        Util.setShort(buf, (short) 0, actualLen);
+        Util.setShort(buf, (short) 2, chunkLen);
+        apdu.sendBytes((short) 0, AVATAR_HEADER_SIZE);
+
+        // Decrypt covering blocks into the APDU buffer, one buffer-full at a time
+        short batchMax = (short) (buf.length & (short) 0xFFF0);
+        short pos = offset;
+        short end = (short) (offset + chunkLen);
+        aesCipher.init(masterKey, Cipher.MODE_DECRYPT);
 
-        // Copy chunk data
-        Util.arrayCopy(avatarBuffer, offset, buf, (short) 4, chunkLen);
+        while (pos < end) {
+            short blockStart = (short) (pos & (short) 0xFFF0);
+            short blockEnd = (short) ((short) (end + 15) & (short) 0xFFF0);
+            if ((short) (blockEnd - blockStart) > batchMax) {
+                blockEnd = (short) (blockStart + batchMax);
+            }
+            aesCipher.doFinal(avatar, blockStart, (short) (blockEnd - blockStart), buf, (short) 0);
 
-        apdu.setOutgoingAndSend((short) 0, (short) (4 + chunkLen));
+            short sendEnd = (blockEnd < end) ? blockEnd : end;
+            apdu.sendBytes((short) (pos - blockStart), (short) (sendEnd - pos));
+            pos = sendEnd;
+        }
     }
 
     // =====================================================
@@ -654,6 +831,8 @@ public class citizen_applet extends Applet implements ExtendedLength {
             case P1_CITIZEN_INFO:
                 if (p2 == P2_INFORMATION) {
                     updateInfo(apdu);
+                } else if (p2 == P2_INFO_FIELD) {
+                    updateInfoField(apdu);
                 } else if (p2 == P2_BALANCE) {
                     updateBalance(apdu);
                 } else if (p2 == P2_AVATAR) {
@@ -735,23 +914,148 @@ public class citizen_applet extends Applet implements ExtendedLength {
         byte[] buffer = apdu.getBuffer();
         short lc = apdu.setIncomingAndReceive();
 
-        if (lc == 0 || lc > MAX_INFO_LENGTH) {
+        if (lc == 0 || lc > MAX_READABLE_INFO_LENGTH) {
             ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
         }
 
-        // Apply padding
-        short paddedLen = (short) (lc + (16 - (lc % 16)));
+        // Zero-pad to the next block boundary (length is kept, no extra block needed)
+        short paddedLen = (short) ((short) (lc + 15) & (short) 0xFFF0);
         Util.arrayFillNonAtomic(buffer, (short) (ISO7816.OFFSET_CDATA + lc), (short) (paddedLen - lc), (byte) 0x00);
 
         // Encrypt with Master Key (v3.0)
         aesCipher.init(masterKey, Cipher.MODE_ENCRYPT);
         aesCipher.doFinal(buffer, ISO7816.OFFSET_CDATA, paddedLen, encryptedInfo, (short) 0);
         encryptedInfoLength = paddedLen;
+        infoLength = lc;
+
+        buffer[0] = (byte) 0x01;
+        apdu.setOutgoingAndSend((short) 0, (short) 1);
+    }
+
+    /**
+     * Patch one field of the v1 info record: data = [tag:1][len:1][value:len]
+     * len = 0 removes the field, a tag not in the record is appended; a card
+     * without info yet starts a new record. Only the AES blocks from the first changed byte on are re-encrypted;
+     * a same-length edit rewrites just the blocks the value spans (ECB).
+     * Legacy (pipe) records answer 6985 - the host rewrites them whole.
+     */
+    private void updateInfoField(APDU apdu) {
+        if (!cardInitialized || !pinVerified) {
+            ISOException.throwIt(ISO7816.SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+
+        byte[] buffer = apdu.getBuffer();
+        short lc = apdu.setIncomingAndReceive();
+        short dataOff = ISO7816.OFFSET_CDATA;
+
+        if (lc < 2 || (short) (2 + (buffer[(short) (dataOff + 1)] & 0xFF)) != lc) {
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        }
+        byte tag = buffer[dataOff];
+        short newSize = (short) (buffer[(short) (dataOff + 1)] & 0xFF);
+        if (tag == INFO_TAG_END) {
+            ISOException.throwIt(ISO7816.SW_WRONG_DATA);
+        }
+        if (newSize > 0) {
+            newSize += 2;
+        }
+        boolean newRecord = infoLength == 0;
+        if (newRecord) {
+            // No info stored yet: start an empty v1 record [C1]
+            Util.arrayFillNonAtomic(tempBuffer, (short) 0, (short) 16, (byte) 0x00);
+            tempBuffer[0] = INFO_FORMAT_V1;
+        } else {
+            aesCipher.init(masterKey, Cipher.MODE_DECRYPT);
+            aesCipher.doFinal(encryptedInfo, (short) 0, encryptedInfoLength, tempBuffer, (short) 0);
+            if (tempBuffer[0] != INFO_FORMAT_V1) {
+                clearInfoAndThrow(ISO7816.SW_CONDITIONS_NOT_SATISFIED);
+            }
+        }
+
+        // Locate the field (or the end of the record)
+        short recordEnd = newRecord ? (short) 1 : infoLength;
+        short fieldOff = -1;
+        short oldSize = 0;
+        short off = 1;
+        while (off < recordEnd) {
+            if (tempBuffer[off] == INFO_TAG_END) {
+                recordEnd = off;
+                break;
+            }
+            if ((short) (off + 2) > recordEnd) {
+                clearInfoAndThrow(ISO7816.SW_DATA_INVALID);
+            }
+            short size = (short) (2 + (tempBuffer[(short) (off + 1)] & 0xFF));
+            if ((short) (off + size) > recordEnd) {
+                clearInfoAndThrow(ISO7816.SW_DATA_INVALID);
+            }
+            if (tempBuffer[off] == tag) {
+                fieldOff = off;
+                oldSize = size;
+                break;
+            }
+            off += size;
+        }
+        if (fieldOff < 0) {
+            fieldOff = recordEnd;
+        }
+
+        short newInfoLength = (short) (recordEnd - oldSize + newSize);
+        if (newInfoLength > MAX_READABLE_INFO_LENGTH) {
+            clearInfoAndThrow(ISO7816.SW_WRONG_LENGTH);
+        }
+
+        // Patch the plaintext: move the tail if the field grows/shrinks, then write it
+        short changeStart;
+        short changeEnd;
+        short newPaddedLen = (short) ((short) (newInfoLength + 15) & (short) 0xFFF0);
+        if (newSize == oldSize) {
+            changeStart = (short) (fieldOff + 2);
+            changeEnd = (short) (fieldOff + newSize);
+        } else {
+            short tailOff = (short) (fieldOff + oldSize);
+            Util.arrayCopyNonAtomic(tempBuffer, tailOff, tempBuffer, (short) (fieldOff + newSize),
+                    (short) (recordEnd - tailOff));
+            Util.arrayFillNonAtomic(tempBuffer, newInfoLength, (short) (newPaddedLen - newInfoLength), (byte) 0x00);
+            changeStart = fieldOff;
+            changeEnd = newPaddedLen;
+        }
+        if (newSize > 0) {
+            tempBuffer[fieldOff] = tag;
+            Util.arrayCopyNonAtomic(buffer, (short) (dataOff + 1), tempBuffer, (short) (fieldOff + 1),
+                    (short) (newSize - 1));
+        }
+        if (newRecord) {
+            // Header block has never been encrypted
+            changeStart = 0;
+            changeEnd = newPaddedLen;
+        }
+
+        // Re-encrypt only the blocks covering [changeStart, changeEnd)
+        if (changeEnd > changeStart) {
+            changeStart = (short) (changeStart & (short) 0xFFF0);
+            changeEnd = (short) ((short) (changeEnd + 15) & (short) 0xFFF0);
+            aesCipher.init(masterKey, Cipher.MODE_ENCRYPT);
+            aesCipher.doFinal(tempBuffer, changeStart, (short) (changeEnd - changeStart), encryptedInfo, changeStart);
+        }
+        if (newPaddedLen < encryptedInfoLength) {
+            Util.arrayFillNonAtomic(encryptedInfo, newPaddedLen, (short) (encryptedInfoLength - newPaddedLen),
+                    (byte) 0x00);
+        }
+        encryptedInfoLength = newPaddedLen;
+        infoLength = newInfoLength;
 
+        Util.arrayFillNonAtomic(tempBuffer, (short) 0, (short) tempBuffer.length, (byte) 0x00);
         buffer[0] = (byte) 0x01;
         apdu.setOutgoingAndSend((short) 0, (short) 1);
     }
 
+    private void clearInfoAndThrow(short sw) {
+        // Decrypted info must not stay in tempBuffer
+        Util.arrayFillNonAtomic(tempBuffer, (short) 0, (short) tempBuffer.length, (byte) 0x00);
+        ISOException.throwIt(sw);
+    }
+
     private void updateBalance(APDU apdu) {
         if (!cardInitialized || !pinVerified) {
             ISOException.throwIt(ISO7816.SW_SECURITY_STATUS_NOT_SATISFIED);
@@ -855,13 +1159,17 @@ public class citizen_applet extends Applet implements ExtendedLength {
         pinVerified = false;
         cardActive = true;
         pinTryCounter = MAX_PIN_TRIES;
+        Util.arrayFillNonAtomic(encryptedInfo, (short) 0, encryptedInfoLength, (byte) 0x00);
         encryptedInfoLength = 0;
+        infoLength = 0;
         avatarSize = 0;
+        avatarLength = 0;
+        avatarVersion = 0;
 
+        Util.arrayFillNonAtomic(avatarDigest, (short) 0, AVATAR_DIGEST_SIZE, (byte) 0x00);
         Util.arrayFillNonAtomic(pin, (short) 0, (short) 16, (byte) 0x00);
         Util.arrayFillNonAtomic(cardId, (short) 0, (short) 12, (byte) 0x00);
         Util.arrayFillNonAtomic(encryptedBalance, (short) 0, (short) 16, (byte) 0x00);
-        Util.arrayFillNonAtomic(encryptedInfo, (short) 0, encryptedInfoLength, (byte) 0x00);
         Util.arrayFillNonAtomic(avatar, (short) 0, avatarSize, (byte) 0x00);
 
         byte[] buffer = apdu.getBuffer();
@@ -952,17 +1260,6 @@ public class citizen_applet extends Applet implements ExtendedLength {
         buffer[(short) (offset + 3)] = (byte) (value & 0xFF);
     }
 
-    private short removePadding(byte[] output, short length) {
-        short paddingLen = 0;
-        for (short i = (short) (length - 1); i >= 0; i--) {
-            if (output[i] != (byte) 0x00) {
-                break;
-            }
-            paddingLen++;
-        }
-        return (short) (length - paddingLen);
-    }
-
     private short getArrayLen(byte[] data, short maxLen) {
         short count = 0;
         for (short i = (short) (maxLen - 1); i >= 0; i--) {
@@ -1000,6 +1297,14 @@ public class citizen_applet extends Applet implements ExtendedLength {
     /**
      * PBKDF2-HMAC-SHA1 implementation for JavaCard
      * 
+     * The HMAC key (password) is the same for all iterations, so the padded
+     * ipad/opad blocks are built once (hmacInit) and every iteration is just
+     * two SHA1 passes over RAM buffers.
+     * 
+     * Compatibility: v3.0 derived U1 over the first (saltLen + 4) bytes of
+     * (K' XOR ipad) - the salt buffer was overwritten before hashing. Kept as is,
+     * otherwise PIN Keys of already personalized cards would no longer match.
+     * 
      * @param password   Password bytes
      * @param passOff    Password offset
      * @param passLen    Password length
@@ -1017,85 +1322,79 @@ public class citizen_applet extends Applet implements ExtendedLength {
             byte[] output, short outOff, short dkLen) {
 
         // For 16-byte key, we only need one block (SHA1 produces 20 bytes)
-        // Block index = 1 (big-endian 4 bytes)
-
-        // First iteration: U1 = HMAC(password, salt || INT(1))
-        // Prepare salt || INT(1) in hmacBuffer
-        Util.arrayCopy(salt, saltOff, hmacBuffer, (short) 0, saltLen);
-        hmacBuffer[(short) (saltLen)] = 0x00;
-        hmacBuffer[(short) (saltLen + 1)] = 0x00;
-        hmacBuffer[(short) (saltLen + 2)] = 0x00;
-        hmacBuffer[(short) (saltLen + 3)] = 0x01;
-
-        // U1 = HMAC-SHA1(password, salt || 0x00000001)
-        hmacSha1(password, passOff, passLen,
-                hmacBuffer, (short) 0, (short) (saltLen + 4),
-                pbkdf2Buffer, (short) 0);
+        hmacInit(password, passOff, passLen);
 
-        // Copy U1 to output (this will be XORed with subsequent U values)
-        Util.arrayCopy(pbkdf2Buffer, (short) 0, output, outOff, dkLen);
+        // First iteration: U1 (message = first saltLen + 4 bytes of K' XOR ipad, see above)
+        hmacSha1(hmacIpad, (short) 0, (short) (saltLen + 4), pbkdf2Buffer, (short) 0);
+        Util.arrayCopyNonAtomic(pbkdf2Buffer, (short) 0, pbkdf2Result, (short) 0, dkLen);
 
-        // Subsequent iterations: Ui = HMAC(password, U(i-1)), output ^= Ui
+        // Subsequent iterations: Ui = HMAC(password, U(i-1)), T ^= Ui
         for (short i = 1; i < iterations; i++) {
-            // Ui = HMAC-SHA1(password, U(i-1))
-            hmacSha1(password, passOff, passLen,
-                    pbkdf2Buffer, (short) 0, SHA1_HASH_SIZE,
-                    pbkdf2Buffer, (short) 0);
+            hmacSha1(pbkdf2Buffer, (short) 0, SHA1_HASH_SIZE, pbkdf2Buffer, (short) 0);
 
-            // XOR with output
+            // XOR into RAM accumulator (no XOR primitive in Util)
             for (short j = 0; j < dkLen; j++) {
-                output[(short) (outOff + j)] ^= pbkdf2Buffer[j];
+                pbkdf2Result[j] ^= pbkdf2Buffer[j];
             }
         }
+
+        // Single write to output (may be EEPROM), then wipe key material
+        Util.arrayCopy(pbkdf2Result, (short) 0, output, outOff, dkLen);
+        Util.arrayFillNonAtomic(hmacIpad, (short) 0, SHA1_BLOCK_SIZE, (byte) 0x00);
+        Util.arrayFillNonAtomic(hmacOpad, (short) 0, SHA1_BLOCK_SIZE, (byte) 0x00);
+        Util.arrayFillNonAtomic(hmacBuffer, (short) 0, SHA1_HASH_SIZE, (byte) 0x00);
+        Util.arrayFillNonAtomic(pbkdf2Buffer, (short) 0, SHA1_HASH_SIZE, (byte) 0x00);
+        Util.arrayFillNonAtomic(pbkdf2Result, (short) 0, SHA1_HASH_SIZE, (byte) 0x00);
     }
 
     /**
-     * HMAC-SHA1 implementation
+     * Prepare HMAC-SHA1 key blocks: hmacIpad = K' XOR ipad, hmacOpad = K' XOR opad
+     * K' = key zero-padded to block size (or SHA1(key) if longer than a block),
+     * so only the first key bytes differ from plain 0x36 / 0x5C blocks.
+     * 
+     * @param key    HMAC key
+     * @param keyOff Key offset
+     * @param keyLen Key length
+     */
+    private void hmacInit(byte[] key, short keyOff, short keyLen) {
+        if (keyLen > SHA1_BLOCK_SIZE) {
+            // If key > block size, hash it first
+            sha1.reset();
+            sha1.doFinal(key, keyOff, keyLen, hmacBuffer, (short) 0);
+            key = hmacBuffer;
+            keyOff = 0;
+            keyLen = SHA1_HASH_SIZE;
+        }
+
+        Util.arrayFillNonAtomic(hmacIpad, (short) 0, SHA1_BLOCK_SIZE, (byte) 0x36);
+        Util.arrayFillNonAtomic(hmacOpad, (short) 0, SHA1_BLOCK_SIZE, (byte) 0x5C);
+        for (short i = 0; i < keyLen; i++) {
+            byte k = key[(short) (keyOff + i)];
+            hmacIpad[i] ^= k;
+            hmacOpad[i] ^= k;
+        }
+        sha1.reset();
+    }
+
+    /**
+     * HMAC-SHA1 with the key blocks prepared by hmacInit
      * HMAC(K, m) = H((K' XOR opad) || H((K' XOR ipad) || m))
+     * Output may overlap message (message is fully consumed by the inner hash)
      * 
-     * @param key     HMAC key
-     * @param keyOff  Key offset
-     * @param keyLen  Key length
      * @param message Message to authenticate
      * @param msgOff  Message offset
      * @param msgLen  Message length
      * @param output  Output buffer (20 bytes)
      * @param outOff  Output offset
      */
-    private void hmacSha1(byte[] key, short keyOff, short keyLen,
-            byte[] message, short msgOff, short msgLen,
+    private void hmacSha1(byte[] message, short msgOff, short msgLen,
             byte[] output, short outOff) {
-
-        // Step 1: Prepare K' (key padded/hashed to block size)
-        if (keyLen > SHA1_BLOCK_SIZE) {
-            // If key > block size, hash it first
-            sha1.reset();
-            sha1.doFinal(key, keyOff, keyLen, hmacKey, (short) 0);
-            Util.arrayFillNonAtomic(hmacKey, SHA1_HASH_SIZE,
-                    (short) (SHA1_BLOCK_SIZE - SHA1_HASH_SIZE), (byte) 0x00);
-        } else {
-            // Pad key with zeros
-            Util.arrayCopy(key, keyOff, hmacKey, (short) 0, keyLen);
-            Util.arrayFillNonAtomic(hmacKey, keyLen,
-                    (short) (SHA1_BLOCK_SIZE - keyLen), (byte) 0x00);
-        }
-
-        // Step 2: Compute inner hash: H((K' XOR ipad) || message)
-        // ipad = 0x36 repeated
-        sha1.reset();
-        for (short i = 0; i < SHA1_BLOCK_SIZE; i++) {
-            hmacBuffer[i] = (byte) (hmacKey[i] ^ 0x36);
-        }
-        sha1.update(hmacBuffer, (short) 0, SHA1_BLOCK_SIZE);
+        // Inner hash: H((K' XOR ipad) || message) - doFinal resets the digest
+        sha1.update(hmacIpad, (short) 0, SHA1_BLOCK_SIZE);
         sha1.doFinal(message, msgOff, msgLen, hmacBuffer, (short) 0);
 
-        // Step 3: Compute outer hash: H((K' XOR opad) || inner_hash)
-        // opad = 0x5C repeated
-        sha1.reset();
-        for (short i = 0; i < SHA1_BLOCK_SIZE; i++) {
-            hmacBuffer[(short) (SHA1_HASH_SIZE + i)] = (byte) (hmacKey[i] ^ 0x5C);
-        }
-        sha1.update(hmacBuffer, SHA1_HASH_SIZE, SHA1_BLOCK_SIZE);
+        // Outer hash: H((K' XOR opad) || inner_hash)
+        sha1.update(hmacOpad, (short) 0, SHA1_BLOCK_SIZE);
         sha1.doFinal(hmacBuffer, (short) 0, SHA1_HASH_SIZE, output, outOff);
     }
 }
@@ -2,10 +2,16 @@ package citizencard;
 
 import javafx.application.Application;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCombination;
 import javafx.stage.Stage;
 
 import citizencard.controller.LoginViewController;
 import citizencard.dao.CardDAO;
+import citizencard.service.CardService;
+import citizencard.service.TerminalPool;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Main Application Entry Point
@@ -15,6 +21,9 @@ import citizencard.dao.CardDAO;
  */
 public class MainApp extends Application {
 
+    private static final Path METRICS_FILE = Paths.get("data", "apdu_metrics.txt");
+    private static final Path TRACE_FILE = Paths.get("data", "apdu_trace.txt");
+
     @Override
     public void start(Stage primaryStage) {
         try {
@@ -22,6 +31,9 @@ public class MainApp extends Application {
             CardDAO.getInstance();
             System.out.println("✅ Database initialized");
 
+            // APDU latency report, refreshed every minute
+            CardService.getInstance().startMetricsDump(METRICS_FILE, 60);
+
             // Fixed window size for all screens
             final double WINDOW_WIDTH = 1200;
             final double WINDOW_HEIGHT = 850;
@@ -29,6 +41,10 @@ public class MainApp extends Application {
             LoginViewController loginController = new LoginViewController();
             Scene scene = new Scene(loginController.getRoot(), WINDOW_WIDTH, WINDOW_HEIGHT);
 
+            // Debug: Ctrl+Shift+T prints the recent APDU exchanges to the console
+            scene.getAccelerators().put(KeyCombination.keyCombination("Ctrl+Shift+T"),
+                    () -> CardService.getInstance().dumpApduTrace(System.out, 0));
+
             // Load CSS
             scene.getStylesheets().add(getClass().getResource("/css/styles.css").toExternalForm());
 
@@ -51,6 +67,10 @@ public class MainApp extends Application {
 
     @Override
     public void stop() {
+        CardService.getInstance().stopMetricsDump(METRICS_FILE);
+        CardService.getInstance().writeApduTrace(TRACE_FILE);
+        TerminalPool.closeIssuancePool();
+        CardDAO.getInstance().shutdown();
         System.out.println("👋 Application shutting down");
     }
 
@@ -2,6 +2,7 @@ package citizencard.controller;
 
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -14,6 +15,7 @@ import citizencard.service.CardService;
 import citizencard.dao.CardDAO;
 import citizencard.util.DatabaseViewer;
 import citizencard.util.DataValidator;
+import citizencard.util.PagedListView;
 import citizencard.util.UIHelper;
 
 /**
@@ -29,6 +31,7 @@ public class AdminDashboardController {
     private CardDAO cardDAO;
     private DemoWorkflowController demoController;
     private VBox contentArea;
+    private PagedListView<CardDAO.CardRecord> citizenList;
 
     public AdminDashboardController() {
         cardService = CardService.getInstance();
@@ -162,9 +165,10 @@ public class AdminDashboardController {
         HBox statsRow = new HBox(20);
         statsRow.setAlignment(Pos.CENTER_LEFT);
 
-        // Real Statistics from Database
-        int totalCards = cardDAO.getCardCountByStatus(null);
-        int activeCards = cardDAO.getCardCountByStatus("ACTIVE");
+        // Real Statistics from Database (maintained counters, no query per render)
+        citizencard.dao.CardStats.Snapshot stats = cardDAO.getCardStats();
+        long totalCards = stats.total;
+        long activeCards = stats.getActive();
 
         VBox totalCardsCard = createStatCard("Tổng số thẻ", String.valueOf(totalCards), "💳", "#3b82f6");
         VBox activeCardsCard = createStatCard("Thẻ hoạt động", String.valueOf(activeCards), "✅", "#22c55e");
@@ -321,6 +325,8 @@ public class AdminDashboardController {
         Button searchBtn = new Button("🔍 Tìm kiếm");
         searchBtn.getStyleClass().addAll("btn", "btn-primary");
         searchBtn.setOnAction(e -> searchCitizenForInvoice(searchField.getText()));
+        searchField.setOnAction(e -> searchCitizenForInvoice(searchField.getText()));
+        attachCardTypeAhead(searchField, null, this::showSendInvoiceDialog);
 
         searchRow.getChildren().addAll(new Label("Tìm ID thẻ:"), searchField, searchBtn);
 
@@ -337,98 +343,210 @@ public class AdminDashboardController {
         }
 
         String cardId = query.trim();
-        java.util.List<citizencard.dao.CardDAO.CardRecord> cards = cardDAO.getAllCards();
+        java.util.List<citizencard.dao.CardSearchIndex.Match> matches = cardDAO.searchCards(cardId, null, 2);
 
-        // Check if card exists
-        boolean found = cards.stream().anyMatch(c -> c.cardId.contains(cardId));
-        if (found) {
-            showSendInvoiceDialog(cardId);
-        } else {
+        if (matches.isEmpty()) {
             showAlert("Không tìm thấy", "Không tìm thấy thẻ với ID: " + cardId);
+        } else if (matches.size() == 1
+                || matches.get(0).type == citizencard.dao.CardSearchIndex.MatchType.EXACT) {
+            showSendInvoiceDialog(matches.get(0).cardId);
+        } else if (matches.get(0).type == citizencard.dao.CardSearchIndex.MatchType.PREFIX
+                && citizenList != null) {
+            // Several matches: narrow the list below to the card IDs starting with the query
+            CardDAO.CardFilter listFilter = new CardDAO.CardFilter();
+            listFilter.cardIdPrefix = cardId;
+            citizenList.setSource(cardPages(listFilter));
+        } else {
+            performValidatedSearch(cardId, "Tất cả");
         }
     }
 
+    /**
+     * Live card-ID suggestions under a search field (served from the in-memory search index)
+     *
+     * @param status   Only suggest cards with this status, or null for all
+     * @param onSelect Called with the chosen card ID
+     */
+    private void attachCardTypeAhead(TextField field, java.util.function.Supplier<String> status,
+            java.util.function.Consumer<String> onSelect) {
+        ContextMenu suggestions = new ContextMenu();
+
+        field.textProperty().addListener((obs, oldText, newText) -> {
+            suggestions.getItems().clear();
+            if (newText == null || newText.trim().isEmpty()) {
+                suggestions.hide();
+                return;
+            }
+
+            for (citizencard.dao.CardSearchIndex.Match match : cardDAO.searchCards(newText,
+                    status != null ? status.get() : null, 8)) {
+                MenuItem item = new MenuItem(match.cardId + "  ·  " + toStatusVi(match.status));
+                item.setOnAction(e -> {
+                    suggestions.hide();
+                    onSelect.accept(match.cardId);
+                });
+                suggestions.getItems().add(item);
+            }
+
+            if (suggestions.getItems().isEmpty()) {
+                suggestions.hide();
+            } else if (!suggestions.isShowing() && field.getScene() != null) {
+                suggestions.show(field, javafx.geometry.Side.BOTTOM, 0, 0);
+            }
+        });
+        field.focusedProperty().addListener((obs, was, focused) -> {
+            if (!focused) {
+                suggestions.hide();
+            }
+        });
+    }
+
     private VBox createCitizenInvoiceTable() {
         VBox section = new VBox(15);
 
         Label sectionTitle = new Label("Danh sách cư dân - Nhấn để gửi hóa đơn");
         sectionTitle.getStyleClass().add("section-title");
 
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.getStyleClass().add("db-scroll-pane");
-        scrollPane.setFitToWidth(true);
-        scrollPane.setPrefHeight(400);
+        // Load real cards from database page by page; only visible rows get cells
+        citizenList = new PagedListView<>(view -> new CitizenInvoiceCell(), 70,
+                "📭 Chưa có cư dân nào trong hệ thống.\nHãy tạo thẻ mới để bắt đầu.");
+        citizenList.getView().getStyleClass().add("citizens-list");
+        citizenList.getView().setPrefHeight(400);
+        citizenList.setSource(cardPages(new CardDAO.CardFilter()));
 
-        VBox citizensList = new VBox(5);
-        citizensList.getStyleClass().add("citizens-list");
+        section.getChildren().addAll(sectionTitle, citizenList.getView());
+        return section;
+    }
 
-        // Load real cards from database
-        java.util.List<citizencard.dao.CardDAO.CardRecord> cards = cardDAO.getAllCards();
+    private static String toStatusCode(String statusVi) {
+        if (statusVi == null) {
+            return null;
+        }
+        return switch (statusVi) {
+            case "Hoạt động" -> "ACTIVE";
+            case "Bị khóa" -> "BLOCKED";
+            case "Hết hạn" -> "EXPIRED";
+            default -> null; // "Tất cả"
+        };
+    }
 
-        if (cards.isEmpty()) {
-            Label emptyLabel = new Label("📭 Chưa có cư dân nào trong hệ thống.\nHãy tạo thẻ mới để bắt đầu.");
-            emptyLabel.setStyle("-fx-font-size: 16px; -fx-text-fill: #6b7280; -fx-padding: 40px;");
-            citizensList.getChildren().add(emptyLabel);
-        } else {
-            for (citizencard.dao.CardDAO.CardRecord card : cards) {
-                String statusVi = switch (card.status) {
-                    case "ACTIVE" -> "Hoạt động";
-                    case "BLOCKED" -> "Bị khóa";
-                    case "EXPIRED" -> "Hết hạn";
-                    default -> card.status;
-                };
+    private static String toStatusVi(String status) {
+        return switch (status) {
+            case "ACTIVE" -> "Hoạt động";
+            case "BLOCKED" -> "Bị khóa";
+            case "EXPIRED" -> "Hết hạn";
+            default -> status;
+        };
+    }
 
-                String registered = card.registeredAt != null ? card.registeredAt : "N/A";
-                citizensList.getChildren().add(
-                        createCitizenInvoiceItem(card.cardId, statusVi, registered));
+    /**
+     * Registered cards matching filter, newest first, via CardDAO keyset cursors
+     */
+    private PagedListView.PageSource<CardDAO.CardRecord> cardPages(CardDAO.CardFilter filter) {
+        return new PagedListView.PageSource<>() {
+            private CardDAO.PageCursor cursor;
+            private boolean more = true;
+
+            @Override
+            public java.util.List<CardDAO.CardRecord> nextPage() {
+                CardDAO.CardPage page = cardDAO.getCardsPage(filter, cursor);
+                cursor = page.next;
+                more = page.hasMore();
+                return page.cards;
             }
-        }
 
-        scrollPane.setContent(citizensList);
-        section.getChildren().addAll(sectionTitle, scrollPane);
-        return section;
+            @Override
+            public boolean hasMore() {
+                return more;
+            }
+        };
     }
 
-    private HBox createCitizenInvoiceItem(String cardId, String status, String date) {
-        HBox item = new HBox(15);
-        item.setAlignment(Pos.CENTER_LEFT);
-        item.setPadding(new Insets(12));
-        item.getStyleClass().add("citizen-data-item");
+    /**
+     * Invoices of one card, newest first
+     */
+    private PagedListView.PageSource<CardDAO.InvoiceRecord> invoicePages(String cardId) {
+        return new PagedListView.PageSource<>() {
+            private CardDAO.PageCursor cursor;
+            private boolean more = true;
+
+            @Override
+            public java.util.List<CardDAO.InvoiceRecord> nextPage() {
+                CardDAO.InvoicePage page = cardDAO.getInvoicesPage(cardId, cursor, 30);
+                cursor = page.next;
+                more = page.hasMore();
+                return page.invoices;
+            }
 
-        Label cardIcon = new Label("👤");
-        cardIcon.setStyle("-fx-font-size: 24px;");
+            @Override
+            public boolean hasMore() {
+                return more;
+            }
+        };
+    }
 
-        Label cardIdLabel = new Label(cardId);
-        cardIdLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #1f2937;");
-        cardIdLabel.setPrefWidth(200);
+    /**
+     * Citizen row with invoice actions - built once per cell, refilled when the cell is reused
+     */
+    private class CitizenInvoiceCell extends ListCell<CardDAO.CardRecord> {
+        private final HBox item = new HBox(15);
+        private final Label cardIdLabel = new Label();
+        private final Label statusLabel = new Label();
+        private final Label dateLabel = new Label();
 
-        Label statusLabel = new Label(status);
-        statusLabel.getStyleClass().add(status.equals("Hoạt động") ? "status-success" : "status-error");
-        statusLabel.setPrefWidth(100);
+        CitizenInvoiceCell() {
+            item.setAlignment(Pos.CENTER_LEFT);
+            item.setPadding(new Insets(12));
+            item.getStyleClass().add("citizen-data-item");
 
-        Label dateLabel = new Label(date);
-        dateLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #6b7280;");
-        dateLabel.setPrefWidth(150);
+            Label cardIcon = new Label("👤");
+            cardIcon.setStyle("-fx-font-size: 24px;");
 
-        Region spacer = new Region();
-        HBox.setHgrow(spacer, Priority.ALWAYS);
+            cardIdLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #1f2937;");
+            cardIdLabel.setPrefWidth(200);
 
-        // Buttons container
-        HBox buttonsBox = new HBox(8);
-        buttonsBox.setAlignment(Pos.CENTER_RIGHT);
+            statusLabel.setPrefWidth(100);
 
-        Button historyBtn = new Button("📜 Lịch sử HĐ");
-        historyBtn.getStyleClass().addAll("btn", "btn-secondary");
-        historyBtn.setOnAction(e -> showInvoiceHistoryDialog(cardId));
+            dateLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #6b7280;");
+            dateLabel.setPrefWidth(150);
 
-        Button invoiceBtn = new Button("💸 Gửi hóa đơn");
-        invoiceBtn.getStyleClass().addAll("btn", "btn-primary");
-        invoiceBtn.setOnAction(e -> showSendInvoiceDialog(cardId));
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
 
-        buttonsBox.getChildren().addAll(historyBtn, invoiceBtn);
+            // Buttons container
+            HBox buttonsBox = new HBox(8);
+            buttonsBox.setAlignment(Pos.CENTER_RIGHT);
 
-        item.getChildren().addAll(cardIcon, cardIdLabel, statusLabel, dateLabel, spacer, buttonsBox);
-        return item;
+            Button historyBtn = new Button("📜 Lịch sử HĐ");
+            historyBtn.getStyleClass().addAll("btn", "btn-secondary");
+            historyBtn.setOnAction(e -> showInvoiceHistoryDialog(getItem().cardId));
+
+            Button invoiceBtn = new Button("💸 Gửi hóa đơn");
+            invoiceBtn.getStyleClass().addAll("btn", "btn-primary");
+            invoiceBtn.setOnAction(e -> showSendInvoiceDialog(getItem().cardId));
+
+            buttonsBox.getChildren().addAll(historyBtn, invoiceBtn);
+
+            item.getChildren().addAll(cardIcon, cardIdLabel, statusLabel, dateLabel, spacer, buttonsBox);
+        }
+
+        @Override
+        protected void updateItem(CardDAO.CardRecord card, boolean empty) {
+            super.updateItem(card, empty);
+            setText(null);
+            if (empty || card == null) {
+                setGraphic(null);
+                return;
+            }
+
+            String status = toStatusVi(card.status);
+            cardIdLabel.setText(card.cardId);
+            statusLabel.setText(status);
+            statusLabel.getStyleClass().removeAll("status-success", "status-error");
+            statusLabel.getStyleClass().add(status.equals("Hoạt động") ? "status-success" : "status-error");
+            dateLabel.setText(card.registeredAt != null ? card.registeredAt : "N/A");
+            setGraphic(item);
+        }
     }
 
     /**
@@ -445,57 +563,30 @@ public class AdminDashboardController {
         content.setPrefWidth(600);
         content.setPrefHeight(400);
 
-        // Get invoices from database
-        java.util.List<CardDAO.InvoiceRecord> invoices = cardDAO.getInvoicesByCardId(cardId);
+        // Totals come from one aggregate query; the list itself is paged
+        CardDAO.InvoiceTotals totals = cardDAO.getInvoiceTotals(cardId);
 
         // Stats row
         HBox statsRow = new HBox(20);
         statsRow.setAlignment(Pos.CENTER_LEFT);
 
-        long totalPending = invoices.stream()
-                .filter(i -> "PENDING".equals(i.status))
-                .mapToLong(i -> i.amount)
-                .sum();
-        long totalPaid = invoices.stream()
-                .filter(i -> "PAID".equals(i.status))
-                .mapToLong(i -> i.amount)
-                .sum();
-        long pendingCount = invoices.stream()
-                .filter(i -> "PENDING".equals(i.status))
-                .count();
-        long paidCount = invoices.stream()
-                .filter(i -> "PAID".equals(i.status))
-                .count();
-
-        VBox pendingCard = createStatCard("Chờ thanh toán", pendingCount + " HĐ", "⏳", "#f59e0b");
-        VBox pendingAmountCard = createStatCard("Tổng chờ TT", String.format("%,d VND", totalPending), "💰", "#ef4444");
-        VBox paidCard = createStatCard("Đã thanh toán", paidCount + " HĐ", "✅", "#22c55e");
-        VBox paidAmountCard = createStatCard("Tổng đã TT", String.format("%,d VND", totalPaid), "💵", "#3b82f6");
+        VBox pendingCard = createStatCard("Chờ thanh toán", totals.pendingCount + " HĐ", "⏳", "#f59e0b");
+        VBox pendingAmountCard = createStatCard("Tổng chờ TT", String.format("%,d VND", totals.pendingAmount), "💰",
+                "#ef4444");
+        VBox paidCard = createStatCard("Đã thanh toán", totals.paidCount + " HĐ", "✅", "#22c55e");
+        VBox paidAmountCard = createStatCard("Tổng đã TT", String.format("%,d VND", totals.paidAmount), "💵",
+                "#3b82f6");
 
         statsRow.getChildren().addAll(pendingCard, pendingAmountCard, paidCard, paidAmountCard);
 
         // Invoice list
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.setFitToWidth(true);
-        scrollPane.setPrefHeight(250);
-        scrollPane.getStyleClass().add("invoice-scroll");
-
-        VBox invoiceList = new VBox(8);
-        invoiceList.setPadding(new Insets(10));
-
-        if (invoices.isEmpty()) {
-            Label emptyLabel = new Label("📭 Cư dân này chưa có hóa đơn nào.");
-            emptyLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: #6b7280; -fx-padding: 20px;");
-            invoiceList.getChildren().add(emptyLabel);
-        } else {
-            for (CardDAO.InvoiceRecord invoice : invoices) {
-                invoiceList.getChildren().add(createInvoiceHistoryItem(invoice));
-            }
-        }
+        PagedListView<CardDAO.InvoiceRecord> invoiceList = new PagedListView<>(view -> new InvoiceHistoryCell(), 80,
+                "📭 Cư dân này chưa có hóa đơn nào.");
+        invoiceList.getView().getStyleClass().add("invoice-scroll");
+        invoiceList.getView().setPrefHeight(250);
+        invoiceList.setSource(invoicePages(cardId));
 
-        scrollPane.setContent(invoiceList);
-
-        content.getChildren().addAll(statsRow, new Separator(), scrollPane);
+        content.getChildren().addAll(statsRow, new Separator(), invoiceList.getView());
 
         dialog.getDialogPane().setContent(content);
         dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
@@ -507,50 +598,65 @@ public class AdminDashboardController {
     /**
      * Create invoice history item for dialog
      */
-    private HBox createInvoiceHistoryItem(CardDAO.InvoiceRecord invoice) {
-        HBox item = new HBox(15);
-        item.setAlignment(Pos.CENTER_LEFT);
-        item.setPadding(new Insets(10));
-        item.setStyle(
-                "-fx-background-color: white; -fx-background-radius: 6px; -fx-border-color: #e5e7eb; -fx-border-radius: 6px;");
-
-        // Status icon
-        String icon = "PAID".equals(invoice.status) ? "✅" : "⏳";
-        Label iconLabel = new Label(icon);
-        iconLabel.setStyle("-fx-font-size: 20px;");
-
-        // Info
-        VBox infoBox = new VBox(2);
-        Label amountLabel = new Label(String.format("%,d VND", invoice.amount));
-        amountLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #1f2937;");
-
-        String desc = invoice.description != null && !invoice.description.isEmpty()
-                ? invoice.description
-                : "Không có mô tả";
-        Label descLabel = new Label(desc);
-        descLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #6b7280;");
-
-        String dateStr = invoice.createdAt != null
-                ? invoice.createdAt.substring(0, Math.min(16, invoice.createdAt.length()))
-                : "N/A";
-        Label dateLabel = new Label("Ngày: " + dateStr);
-        dateLabel.setStyle("-fx-font-size: 11px; -fx-text-fill: #9ca3af;");
-
-        infoBox.getChildren().addAll(amountLabel, descLabel, dateLabel);
-
-        // Spacer
-        Region spacer = new Region();
-        HBox.setHgrow(spacer, Priority.ALWAYS);
+    /**
+     * Invoice history row - built once per cell, refilled when the cell is reused
+     */
+    private static class InvoiceHistoryCell extends ListCell<CardDAO.InvoiceRecord> {
+        private final HBox item = new HBox(15);
+        private final Label iconLabel = new Label();
+        private final Label amountLabel = new Label();
+        private final Label descLabel = new Label();
+        private final Label dateLabel = new Label();
+        private final Label statusLabel = new Label();
+
+        InvoiceHistoryCell() {
+            item.setAlignment(Pos.CENTER_LEFT);
+            item.setPadding(new Insets(10));
+            item.setStyle(
+                    "-fx-background-color: white; -fx-background-radius: 6px; -fx-border-color: #e5e7eb; -fx-border-radius: 6px;");
+
+            iconLabel.setStyle("-fx-font-size: 20px;");
+
+            // Info
+            VBox infoBox = new VBox(2);
+            amountLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #1f2937;");
+            descLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #6b7280;");
+            dateLabel.setStyle("-fx-font-size: 11px; -fx-text-fill: #9ca3af;");
+            infoBox.getChildren().addAll(amountLabel, descLabel, dateLabel);
+
+            // Spacer
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
+
+            item.getChildren().addAll(iconLabel, infoBox, spacer, statusLabel);
+        }
 
-        // Status badge
-        String statusText = "PAID".equals(invoice.status) ? "Đã thanh toán" : "Chờ thanh toán";
-        String statusColor = "PAID".equals(invoice.status) ? "#22c55e" : "#f59e0b";
-        Label statusLabel = new Label(statusText);
-        statusLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: " + statusColor
-                + "; -fx-padding: 4px 8px; -fx-background-color: " + statusColor + "20; -fx-background-radius: 4px;");
+        @Override
+        protected void updateItem(CardDAO.InvoiceRecord invoice, boolean empty) {
+            super.updateItem(invoice, empty);
+            setText(null);
+            if (empty || invoice == null) {
+                setGraphic(null);
+                return;
+            }
 
-        item.getChildren().addAll(iconLabel, infoBox, spacer, statusLabel);
-        return item;
+            boolean paid = "PAID".equals(invoice.status);
+            iconLabel.setText(paid ? "✅" : "⏳");
+            amountLabel.setText(String.format("%,d VND", invoice.amount));
+            descLabel.setText(invoice.description != null && !invoice.description.isEmpty()
+                    ? invoice.description
+                    : "Không có mô tả");
+            dateLabel.setText("Ngày: " + (invoice.createdAt != null
+                    ? invoice.createdAt.substring(0, Math.min(16, invoice.createdAt.length()))
+                    : "N/A"));
+
+            // Status badge
+            String statusColor = paid ? "#22c55e" : "#f59e0b";
+            statusLabel.setText(paid ? "Đã thanh toán" : "Chờ thanh toán");
+            statusLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: " + statusColor
+                    + "; -fx-padding: 4px 8px; -fx-background-color: " + statusColor + "20; -fx-background-radius: 4px;");
+            setGraphic(item);
+        }
     }
 
     // =====================================================
@@ -792,6 +898,9 @@ public class AdminDashboardController {
 
     private void printDatabaseToConsole() {
         try {
+            // Queued audit records first, so the viewer sees them
+            cardDAO.flushTransactionLogs();
+
             // Get database content as string
             String dbContent = DatabaseViewer.getDatabaseContentAsString();
 
@@ -833,6 +942,7 @@ public class AdminDashboardController {
             System.out.println("📈 DATABASE STATISTICS - ADMIN REQUEST");
             System.out.println("=".repeat(50));
 
+            cardDAO.flushTransactionLogs();
             DatabaseViewer.printDatabaseStats();
 
             Alert success = new Alert(Alert.AlertType.INFORMATION);
@@ -932,10 +1042,11 @@ public class AdminDashboardController {
         HBox statsRow = new HBox(20);
         statsRow.setAlignment(Pos.CENTER_LEFT);
 
-        // Get real counts from database
-        int totalCards = cardDAO.getCardCountByStatus(null);
-        int activeCards = cardDAO.getCardCountByStatus("ACTIVE");
-        int blockedCards = cardDAO.getCardCountByStatus("BLOCKED");
+        // Real counts from one consistent snapshot
+        citizencard.dao.CardStats.Snapshot stats = cardDAO.getCardStats();
+        long totalCards = stats.total;
+        long activeCards = stats.getActive();
+        long blockedCards = stats.getBlocked();
 
         VBox totalRecordsCard = createStatCard("Tổng bản ghi", String.valueOf(totalCards), "🗄️", "#3b82f6");
         VBox activeCardsCard = createStatCard("Thẻ hoạt động", String.valueOf(activeCards), "✅", "#22c55e");
@@ -964,6 +1075,8 @@ public class AdminDashboardController {
 
         Button searchBtn = new Button("🔍 Tìm kiếm");
         searchBtn.getStyleClass().addAll("btn", "btn-primary");
+        searchBtn.setOnAction(e -> performValidatedSearch(searchField.getText(), statusFilter.getValue()));
+        attachCardTypeAhead(searchField, () -> toStatusCode(statusFilter.getValue()), this::viewCardDetails);
 
         Button refreshBtn = new Button("🔄 Làm mới");
         refreshBtn.getStyleClass().addAll("btn", "btn-secondary");
@@ -995,48 +1108,15 @@ public class AdminDashboardController {
         // Table header
         HBox tableHeader = createTableHeader();
 
-        // Table content
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.getStyleClass().add("db-scroll-pane");
-        scrollPane.setFitToWidth(true);
-        scrollPane.setPrefHeight(400);
-
-        VBox tableContent = new VBox(2);
-        tableContent.getStyleClass().add("db-table-content");
-
-        // Load real data from database (only card_id, public_key, status)
+        // Load real data from database (only card_id, public_key, status) page by page
         // Note: Personal info (name, phone) is encrypted on card, not in DB
-        java.util.List<citizencard.dao.CardDAO.CardRecord> cards = cardDAO.getAllCards();
+        PagedListView<CardDAO.CardRecord> tableContent = new PagedListView<>(view -> new DatabaseRecordCell(), 56,
+                "📭 Chưa có dữ liệu thẻ nào trong hệ thống.\nHãy tạo thẻ mới để bắt đầu.");
+        tableContent.getView().getStyleClass().add("db-table-content");
+        tableContent.getView().setPrefHeight(400);
+        tableContent.setSource(cardPages(new CardDAO.CardFilter()));
 
-        if (cards.isEmpty()) {
-            Label emptyLabel = new Label("📭 Chưa có dữ liệu thẻ nào trong hệ thống.\nHãy tạo thẻ mới để bắt đầu.");
-            emptyLabel.setStyle("-fx-font-size: 16px; -fx-text-fill: #6b7280; -fx-padding: 40px;");
-            tableContent.getChildren().add(emptyLabel);
-        } else {
-            // Load real data from database (Only ID and Public Key)
-            for (citizencard.dao.CardDAO.CardRecord card : cards) {
-                String statusVi = switch (card.status) {
-                    case "ACTIVE" -> "Hoạt động";
-                    case "BLOCKED" -> "Bị khóa";
-                    case "EXPIRED" -> "Hết hạn";
-                    default -> card.status;
-                };
-
-                String registered = card.registeredAt != null ? card.registeredAt : "N/A";
-                String lastAccess = card.lastAccessed != null ? card.lastAccessed : "N/A";
-                // Truncate Public Key for display
-                String shortKey = card.publicKey != null && card.publicKey.length() > 20
-                        ? card.publicKey.substring(0, 20) + "..."
-                        : card.publicKey;
-
-                tableContent.getChildren().add(
-                        createDatabaseRecord(card.cardId, shortKey, statusVi, registered, lastAccess));
-            }
-        }
-
-        scrollPane.setContent(tableContent);
-
-        tableContainer.getChildren().addAll(tableHeader, scrollPane);
+        tableContainer.getChildren().addAll(tableHeader, tableContent.getView());
         return tableContainer;
 
     }
@@ -1075,59 +1155,84 @@ public class AdminDashboardController {
         return header;
     }
 
-    private HBox createDatabaseRecord(String cardId, String publicKey, String status,
-            String created, String lastAccess) {
-        HBox record = new HBox(15);
-        record.getStyleClass().add("db-table-row");
-        record.setPadding(new Insets(12, 20, 12, 20));
-        record.setAlignment(Pos.CENTER_LEFT);
+    /**
+     * Database grid row - built once per cell, refilled when the cell is reused
+     */
+    private class DatabaseRecordCell extends ListCell<CardDAO.CardRecord> {
+        private final HBox record = new HBox(15);
+        private final Label idLabel = new Label();
+        private final Label keyLabel = new Label();
+        private final Label statusLabel = new Label();
+        private final Label createdLabel = new Label();
 
-        Label idLabel = new Label(cardId);
-        idLabel.getStyleClass().add("db-cell-id");
-        idLabel.setPrefWidth(160);
+        DatabaseRecordCell() {
+            record.getStyleClass().add("db-table-row");
+            record.setPadding(new Insets(12, 20, 12, 20));
+            record.setAlignment(Pos.CENTER_LEFT);
 
-        Label keyLabel = new Label(publicKey);
-        keyLabel.getStyleClass().add("db-cell-name"); // Reuse style
-        keyLabel.setPrefWidth(200);
+            idLabel.getStyleClass().add("db-cell-id");
+            idLabel.setPrefWidth(160);
 
-        Label statusLabel = new Label(status);
-        String statusClass = switch (status) {
-            case "Hoạt động" -> "db-status-active";
-            case "Bị khóa" -> "db-status-blocked";
-            case "Hết hạn" -> "db-status-expired";
-            default -> "db-status-unknown";
-        };
-        statusLabel.getStyleClass().addAll("db-cell-status", statusClass);
-        statusLabel.setPrefWidth(100);
+            keyLabel.getStyleClass().add("db-cell-name"); // Reuse style
+            keyLabel.setPrefWidth(200);
 
-        Label createdLabel = new Label(created);
-        createdLabel.getStyleClass().add("db-cell-date");
-        createdLabel.setPrefWidth(140);
+            statusLabel.getStyleClass().add("db-cell-status");
+            statusLabel.setPrefWidth(100);
 
-        Region spacer = new Region();
-        HBox.setHgrow(spacer, Priority.ALWAYS);
+            createdLabel.getStyleClass().add("db-cell-date");
+            createdLabel.setPrefWidth(140);
 
-        // Action buttons
-        HBox actions = new HBox(5);
-        actions.setAlignment(Pos.CENTER_LEFT);
-        actions.setPrefWidth(180);
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
 
-        Button invoiceBtn = new Button("💸 Gửi HĐ");
-        invoiceBtn.getStyleClass().addAll("btn", "btn-small", "btn-success");
-        invoiceBtn.setTooltip(new Tooltip("Gửi hóa đơn"));
-        invoiceBtn.setOnAction(e -> showSendInvoiceDialog(cardId));
+            // Action buttons
+            HBox actions = new HBox(5);
+            actions.setAlignment(Pos.CENTER_LEFT);
+            actions.setPrefWidth(180);
 
-        Button deleteBtn = new Button("🗑️");
-        deleteBtn.getStyleClass().addAll("btn", "btn-small", "btn-icon", "btn-danger");
-        deleteBtn.setTooltip(new Tooltip("Xóa thẻ"));
-        deleteBtn.setOnAction(e -> deleteDatabaseRecord(cardId, "Hidden"));
+            Button invoiceBtn = new Button("💸 Gửi HĐ");
+            invoiceBtn.getStyleClass().addAll("btn", "btn-small", "btn-success");
+            invoiceBtn.setTooltip(new Tooltip("Gửi hóa đơn"));
+            invoiceBtn.setOnAction(e -> showSendInvoiceDialog(getItem().cardId));
 
-        actions.getChildren().addAll(invoiceBtn, deleteBtn);
+            Button deleteBtn = new Button("🗑️");
+            deleteBtn.getStyleClass().addAll("btn", "btn-small", "btn-icon", "btn-danger");
+            deleteBtn.setTooltip(new Tooltip("Xóa thẻ"));
+            deleteBtn.setOnAction(e -> deleteDatabaseRecord(getItem().cardId, "Hidden"));
 
-        record.getChildren().addAll(
-                idLabel, keyLabel, statusLabel, createdLabel, spacer, actions);
+            actions.getChildren().addAll(invoiceBtn, deleteBtn);
 
-        return record;
+            record.getChildren().addAll(
+                    idLabel, keyLabel, statusLabel, createdLabel, spacer, actions);
+        }
+
+        @Override
+        protected void updateItem(CardDAO.CardRecord card, boolean empty) {
+            super.updateItem(card, empty);
+            setText(null);
+            if (empty || card == null) {
+                setGraphic(null);
+                return;
+            }
+
+            String status = toStatusVi(card.status);
+            idLabel.setText(card.cardId);
+            // Truncate Public Key for display
+            keyLabel.setText(card.publicKey != null && card.publicKey.length() > 20
+                    ? card.publicKey.substring(0, 20) + "..."
+                    : card.publicKey);
+            statusLabel.setText(status);
+            statusLabel.getStyleClass().removeAll("db-status-active", "db-status-blocked", "db-status-expired",
+                    "db-status-unknown");
+            statusLabel.getStyleClass().add(switch (status) {
+                case "Hoạt động" -> "db-status-active";
+                case "Bị khóa" -> "db-status-blocked";
+                case "Hết hạn" -> "db-status-expired";
+                default -> "db-status-unknown";
+            });
+            createdLabel.setText(card.registeredAt != null ? card.registeredAt : "N/A");
+            setGraphic(record);
+        }
     }
 
     private void showSendInvoiceDialog(String cardId) {
@@ -1351,17 +1456,23 @@ public class AdminDashboardController {
 
         // Perform search with validated input
         String sanitizedQuery = DataValidator.sanitizeInput(query);
-        showAlert("Kết quả tìm kiếm",
-                "🔍 TÌM KIẾM HOÀN TẤT\n\n" +
-                        "Từ khóa: \"" + sanitizedQuery + "\"\n" +
-                        "Trạng thái: " + status + "\n\n" +
-                        "Tìm thấy 5 kết quả phù hợp:\n" +
-                        "• CITIZEN-CARD-001 - Nguyễn Văn A\n" +
-                        "• CITIZEN-CARD-002 - Trần Thị B\n" +
-                        "• CITIZEN-CARD-003 - Lê Văn C\n" +
-                        "• CITIZEN-CARD-004 - Phạm Thị D\n" +
-                        "• CITIZEN-CARD-005 - Hoàng Văn E\n\n" +
-                        "💡 Trong hệ thống thực tế, kết quả sẽ được hiển thị trong bảng dữ liệu.");
+        java.util.List<citizencard.dao.CardSearchIndex.Match> matches = cardDAO.searchCards(sanitizedQuery,
+                toStatusCode(status), 20);
+
+        StringBuilder message = new StringBuilder("🔍 TÌM KIẾM HOÀN TẤT\n\n")
+                .append("Từ khóa: \"").append(sanitizedQuery).append("\"\n")
+                .append("Trạng thái: ").append(status).append("\n\n");
+        if (matches.isEmpty()) {
+            message.append("Không tìm thấy thẻ phù hợp.");
+        } else {
+            message.append("Tìm thấy ").append(matches.size()).append(matches.size() == 20 ? "+" : "")
+                    .append(" kết quả phù hợp:\n");
+            for (citizencard.dao.CardSearchIndex.Match match : matches) {
+                message.append("• ").append(match.cardId).append(" - ").append(toStatusVi(match.status))
+                        .append("\n");
+            }
+        }
+        showAlert("Kết quả tìm kiếm", message.toString());
     }
 
     /**
@@ -1392,32 +1503,32 @@ public class AdminDashboardController {
 
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                try {
-                    // Check if card is connected
-                    if (!cardService.isConnected()) {
-                        showAlert("Lỗi kết nối",
-                                "❌ Thẻ chưa được kết nối!\n\n" +
-                                        "Vui lòng kết nối thẻ trước khi mở khóa.");
-                        return;
-                    }
-
-                    // Reset PIN tries
-                    int remainingTries = cardService.resetPinTries();
-
-                    showSuccessAlert("Mở khóa thành công",
-                            "✅ Thẻ đã được mở khóa!\n\n" +
-                                    "Số lần thử PIN còn lại: " + remainingTries + "\n\n" +
-                                    "Người dùng có thể đăng nhập lại với PIN đã đặt trước đó.");
-
-                } catch (Exception e) {
-                    showAlert("Lỗi mở khóa",
-                            "❌ Không thể mở khóa thẻ!\n\n" +
-                                    "Lỗi: " + e.getMessage() + "\n\n" +
-                                    "Vui lòng kiểm tra:\n" +
-                                    "• Thẻ đã được kết nối\n" +
-                                    "• Thẻ đã được khởi tạo\n" +
-                                    "• JCIDE terminal đang chạy");
+                // Check if card is connected
+                if (!cardService.isConnected()) {
+                    showAlert("Lỗi kết nối",
+                            "❌ Thẻ chưa được kết nối!\n\n" +
+                                    "Vui lòng kết nối thẻ trước khi mở khóa.");
+                    return;
                 }
+
+                // Reset PIN tries (card-owner thread)
+                cardService.submit(CardService::resetPinTries).whenComplete(
+                        (remainingTries, error) -> javafx.application.Platform.runLater(() -> {
+                            if (error != null) {
+                                showAlert("Lỗi mở khóa",
+                                        "❌ Không thể mở khóa thẻ!\n\n" +
+                                                "Lỗi: " + CardService.getErrorMessage(error) + "\n\n" +
+                                                "Vui lòng kiểm tra:\n" +
+                                                "• Thẻ đã được kết nối\n" +
+                                                "• Thẻ đã được khởi tạo\n" +
+                                                "• JCIDE terminal đang chạy");
+                                return;
+                            }
+                            showSuccessAlert("Mở khóa thành công",
+                                    "✅ Thẻ đã được mở khóa!\n\n" +
+                                            "Số lần thử PIN còn lại: " + remainingTries + "\n\n" +
+                                            "Người dùng có thể đăng nhập lại với PIN đã đặt trước đó.");
+                        }));
             }
         });
     }
@@ -1447,35 +1558,35 @@ public class AdminDashboardController {
 
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                try {
-                    // Check if card is connected
-                    if (!cardService.isConnected()) {
-                        showAlert("Lỗi kết nối",
-                                "❌ Thẻ chưa được kết nối!\n\n" +
-                                        "Vui lòng kết nối thẻ trước khi reset.");
-                        return;
-                    }
-
-                    // Clear card data
-                    cardService.clearCard();
-
-                    showSuccessAlert("Reset thẻ thành công",
-                            "✅ Thẻ đã được reset về trạng thái ban đầu!\n\n" +
-                                    "Thẻ hiện đã sạch và sẵn sàng để:\n" +
-                                    "• Khởi tạo lại với PIN mới\n" +
-                                    "• Đăng ký cư dân mới\n" +
-                                    "• Sử dụng như thẻ mới\n\n" +
-                                    "💡 Bạn có thể tạo thẻ mới ngay bây giờ!");
-
-                } catch (Exception e) {
-                    showAlert("Lỗi reset thẻ",
-                            "❌ Không thể reset thẻ!\n\n" +
-                                    "Lỗi: " + e.getMessage() + "\n\n" +
-                                    "Vui lòng kiểm tra:\n" +
-                                    "• Thẻ đã được kết nối\n" +
-                                    "• Thẻ đã được khởi tạo\n" +
-                                    "• JCIDE terminal đang chạy");
+                // Check if card is connected
+                if (!cardService.isConnected()) {
+                    showAlert("Lỗi kết nối",
+                            "❌ Thẻ chưa được kết nối!\n\n" +
+                                    "Vui lòng kết nối thẻ trước khi reset.");
+                    return;
                 }
+
+                // Clear card data (card-owner thread)
+                cardService.submit(CardService::clearCard).whenComplete(
+                        (result, error) -> javafx.application.Platform.runLater(() -> {
+                            if (error != null) {
+                                showAlert("Lỗi reset thẻ",
+                                        "❌ Không thể reset thẻ!\n\n" +
+                                                "Lỗi: " + CardService.getErrorMessage(error) + "\n\n" +
+                                                "Vui lòng kiểm tra:\n" +
+                                                "• Thẻ đã được kết nối\n" +
+                                                "• Thẻ đã được khởi tạo\n" +
+                                                "• JCIDE terminal đang chạy");
+                                return;
+                            }
+                            showSuccessAlert("Reset thẻ thành công",
+                                    "✅ Thẻ đã được reset về trạng thái ban đầu!\n\n" +
+                                            "Thẻ hiện đã sạch và sẵn sàng để:\n" +
+                                            "• Khởi tạo lại với PIN mới\n" +
+                                            "• Đăng ký cư dân mới\n" +
+                                            "• Sử dụng như thẻ mới\n\n" +
+                                            "💡 Bạn có thể tạo thẻ mới ngay bây giờ!");
+                        }));
             }
         });
     }
@@ -1490,9 +1601,12 @@ public class AdminDashboardController {
             return; // User cancelled
         }
 
-        // Step 2: Verify current PIN
-        try {
-            CardService.PinVerificationResult pinResult = cardService.verifyPin(currentPin);
+        // Step 2: Verify current PIN (card-owner thread)
+        cardService.verifyPinAsync(currentPin).whenComplete((pinResult, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Lỗi xác thực", "Không thể xác thực PIN: " + CardService.getErrorMessage(error));
+                return;
+            }
             if (!pinResult.success) {
                 String errorMsg = "PIN hiện tại không chính xác.";
                 if (pinResult.remainingTries > 0) {
@@ -1503,11 +1617,11 @@ public class AdminDashboardController {
                 showAlert("Xác thực thất bại", errorMsg);
                 return;
             }
-        } catch (Exception e) {
-            showAlert("Lỗi xác thực", "Không thể xác thực PIN: " + e.getMessage());
-            return;
-        }
+            chooseNewPin(currentPin);
+        }));
+    }
 
+    private void chooseNewPin(String currentPin) {
         // Step 3: Get new PIN
         String newPin = citizencard.util.PinInputDialog.showChangePinDialog(
                 "Nhập PIN mới",
@@ -1536,11 +1650,11 @@ public class AdminDashboardController {
             return;
         }
 
-        // Step 5: Change PIN on card
-        try {
-            boolean success = cardService.changePin(currentPin, newPin);
-
-            if (success) {
+        // Step 5: Change PIN on card (card-owner thread)
+        cardService.changePinAsync(currentPin, newPin).whenComplete((success, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Đổi PIN thất bại", "Lỗi: " + CardService.getErrorMessage(error));
+            } else if (success) {
                 showSuccessAlert("Đổi PIN thành công",
                         "✅ Mã PIN đã được thay đổi thành công!\n\n" +
                                 "Vui lòng sử dụng mã PIN mới cho các lần đăng nhập tiếp theo.");
@@ -1549,9 +1663,7 @@ public class AdminDashboardController {
                         "Không thể đổi PIN trên thẻ.\n\n" +
                                 "Có thể do lỗi giao tiếp với thẻ.");
             }
-        } catch (Exception e) {
-            showAlert("Đổi PIN thất bại", "Lỗi: " + e.getMessage());
-        }
+        }));
     }
 
     private void showSuccessAlert(String title, String message) {
@@ -11,6 +11,7 @@ import java.time.format.DateTimeFormatter;
 
 import citizencard.service.CardService;
 import citizencard.dao.CardDAO;
+import citizencard.util.CitizenInfoParser;
 import citizencard.util.DataValidator;
 import citizencard.util.PinInputDialog;
 import citizencard.util.UIHelper;
@@ -34,101 +35,141 @@ public class CitizenDashboardController {
     private javafx.scene.image.Image avatarImage;
 
     public CitizenDashboardController(CardService cardService, String cardId) {
+        this(cardService, cardId, null);
+    }
+
+    /**
+     * @param profile Profile already read from card (e.g. at login), or null to read it now
+     */
+    public CitizenDashboardController(CardService cardService, String cardId, CardService.CardProfile profile) {
         this.cardService = cardService;
         this.cardDAO = CardDAO.getInstance();
         this.cardId = cardId;
 
-        // Load data from card
-        loadDataFromCard();
-
-        // Sync any approved topups to card
-        syncApprovedTopups();
+        // Profile from login needs no APDU - show it right away
+        if (profile != null) {
+            applyCardData(readProfileData(profile, null));
+        }
 
         initializeUI();
+
+        // Avatar, approved topups (and the profile if not given) on the card-owner thread
+        loadDataFromCard(profile).whenComplete((data, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                System.err.println("[ERROR] Failed to load card data: " + CardService.getErrorMessage(error));
+                return;
+            }
+            applyCardData(data);
+            root.setLeft(createSidebar());
+            updateBalanceDisplay();
+            showDashboardOverview();
+        }));
+    }
+
+    /**
+     * Data read from the card on the card-owner thread, applied on the UI thread
+     */
+    private static class CardData {
+        int balance;
+        citizencard.model.CitizenInfo citizenInfo;
+        javafx.scene.image.Image avatarImage; // null = keep current
     }
 
     /**
-     * Load all data from smart card
+     * Load all data from smart card (card-owner thread)
+     * Balance and personal info come from one GET PROFILE (or the given profile)
      */
-    private void loadDataFromCard() {
-        System.out.println("[INFO] Loading citizen data from card...");
+    private java.util.concurrent.CompletableFuture<CardData> loadDataFromCard(CardService.CardProfile profile) {
+        return cardService.submit(card -> {
+            System.out.println("[INFO] Loading citizen data from card...");
+            CardData data = readProfileData(profile, card);
+
+            try {
+                // Get avatar from card (optional) - cached copy unless it changed on the card
+                byte[] avatarBytes = card.downloadAvatarCached();
+                if (avatarBytes != null && avatarBytes.length > 0) {
+                    data.avatarImage = citizencard.util.PhotoUtils.bytesToImage(avatarBytes);
+                    System.out.println("[INFO] Avatar loaded: " + avatarBytes.length + " bytes");
+                } else {
+                    System.out.println("[INFO] No avatar on card");
+                }
+
+            } catch (Exception e) {
+                System.err.println("[WARN] Failed to load avatar: " + e.getMessage());
+                // Avatar is optional, continue without it
+            }
+
+            // Sync any approved topups to card
+            Integer syncedBalance = syncApprovedTopups(card);
+            if (syncedBalance != null) {
+                data.balance = syncedBalance;
+            }
+
+            System.out.println("[INFO] Data loading completed");
+            return data;
+        });
+    }
+
+    /**
+     * Balance and personal info from a profile; with card != null a missing
+     * profile is read first (must then run on the card-owner thread)
+     */
+    private CardData readProfileData(CardService.CardProfile profile, CardService card) {
+        CardData data = new CardData();
 
         try {
-            // Get balance from card
-            this.currentBalance = cardService.getBalance();
-            System.out.println("[INFO] Balance loaded: " + currentBalance + " VND");
+            if (profile == null && card != null) {
+                profile = card.readProfile();
+            }
+            data.balance = profile != null ? profile.balance : 0;
+            System.out.println("[INFO] Balance loaded: " + data.balance + " VND");
 
         } catch (Exception e) {
             System.err.println("[ERROR] Failed to load balance: " + e.getMessage());
-            this.currentBalance = 0;
+            data.balance = 0;
         }
 
         try {
-            // Get personal info from card
-            byte[] infoBytes = cardService.getPersonalInfo();
+            byte[] infoBytes = profile != null ? profile.personalInfo
+                    : card != null ? card.getPersonalInfo() : null;
             if (infoBytes != null && infoBytes.length > 0) {
-                this.citizenInfo = citizencard.util.CitizenInfoParser.parse(infoBytes);
-                System.out.println("[INFO] Personal info loaded: " +
-                        citizencard.util.CitizenInfoParser.toString(citizenInfo));
+                data.citizenInfo = CitizenInfoParser.parse(infoBytes);
+                System.out.println("[INFO] Personal info loaded: " + CitizenInfoParser.toString(data.citizenInfo));
             } else {
                 System.out.println("[WARN] No personal info on card");
-                // Create empty CitizenInfo with all required parameters
-                this.citizenInfo = new citizencard.model.CitizenInfo(
-                        "Chưa có thông tin", // name
-                        "", // dob
-                        "", // idNumber
-                        "", // roomNumber
-                        "", // phone
-                        null, // email
-                        null, // pin
-                        0, // balance
-                        null, // photoPath
-                        null // photoData
-                );
+                data.citizenInfo = placeholderInfo("Chưa có thông tin");
             }
 
         } catch (Exception e) {
             System.err.println("[ERROR] Failed to load personal info: " + e.getMessage());
             e.printStackTrace();
-            // Create empty CitizenInfo with all required parameters
-            this.citizenInfo = new citizencard.model.CitizenInfo(
-                    "Lỗi tải dữ liệu", // name
-                    "", // dob
-                    "", // idNumber
-                    "", // roomNumber
-                    "", // phone
-                    null, // email
-                    null, // pin
-                    0, // balance
-                    null, // photoPath
-                    null // photoData
-            );
+            data.citizenInfo = placeholderInfo("Lỗi tải dữ liệu");
         }
+        return data;
+    }
 
-        try {
-            // Get avatar from card (optional)
-            byte[] avatarBytes = cardService.downloadAvatar();
-            if (avatarBytes != null && avatarBytes.length > 0) {
-                this.avatarImage = citizencard.util.PhotoUtils.bytesToImage(avatarBytes);
-                System.out.println("[INFO] Avatar loaded: " + avatarBytes.length + " bytes");
-            } else {
-                System.out.println("[INFO] No avatar on card");
-            }
+    private static citizencard.model.CitizenInfo placeholderInfo(String name) {
+        // Constructor: (name, dob, idNumber, roomNumber, phone, email, pin, balance, photoPath, photoData)
+        return new citizencard.model.CitizenInfo(name, "", "", "", "", null, null, 0, null, null);
+    }
 
-        } catch (Exception e) {
-            System.err.println("[WARN] Failed to load avatar: " + e.getMessage());
-            // Avatar is optional, continue without it
+    private void applyCardData(CardData data) {
+        this.currentBalance = data.balance;
+        this.citizenInfo = data.citizenInfo;
+        if (data.avatarImage != null) {
+            this.avatarImage = data.avatarImage;
         }
-
-        System.out.println("[INFO] Data loading completed");
     }
 
     /**
-     * Sync approved topup requests to card balance
+     * Sync approved topup requests to card balance (card-owner thread)
      * This is called when citizen logs in to credit any approved topups
+     *
+     * @return Card balance after the last credited topup, or null if nothing was credited
      */
-    private void syncApprovedTopups() {
+    private Integer syncApprovedTopups(CardService card) {
         System.out.println("[INFO] Syncing approved topup requests...");
+        Integer balance = null;
 
         try {
             // Get approved topups that need to be synced
@@ -159,7 +200,7 @@ public class CitizenDashboardController {
 
             if (toSync.isEmpty()) {
                 System.out.println("[INFO] No pending approved topups to sync");
-                return;
+                return null;
             }
 
             System.out.println("[INFO] Found " + toSync.size() + " approved topups, total: " + totalToCredit + " VND");
@@ -168,13 +209,13 @@ public class CitizenDashboardController {
             for (CardDAO.TopupRecord req : toSync) {
                 try {
                     // Send APDU to credit money to card
-                    int newBalance = cardService.topupBalance((int) req.amount);
+                    int newBalance = card.topupBalance((int) req.amount);
 
                     // Mark as synced by updating status to SYNCED (or we can keep APPROVED)
                     // For now, we'll update to a new status "SYNCED"
                     cardDAO.markTopupAsSynced(req.id);
 
-                    currentBalance = newBalance;
+                    balance = newBalance;
                     System.out.println("[INFO] Credited " + req.amount + " VND from topup #" + req.id
                             + ", new balance: " + newBalance);
 
@@ -187,11 +228,12 @@ public class CitizenDashboardController {
                 }
             }
 
-            System.out.println("[INFO] Topup sync completed, current balance: " + currentBalance + " VND");
+            System.out.println("[INFO] Topup sync completed, current balance: " + balance + " VND");
 
         } catch (Exception e) {
             System.err.println("[ERROR] Failed to sync topups: " + e.getMessage());
         }
+        return balance;
     }
 
     private void initializeUI() {
@@ -672,9 +714,13 @@ public class CitizenDashboardController {
     private void refreshCardInfo() {
         System.out.println("[INFO] Refreshing card data...");
 
-        try {
-            // Reload all data from card (including avatar)
-            loadDataFromCard();
+        // Reload all data from card (including avatar) on the card-owner thread
+        loadDataFromCard(null).whenComplete((data, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Lỗi làm mới", "Không thể làm mới thông tin thẻ: " + CardService.getErrorMessage(error));
+                return;
+            }
+            applyCardData(data);
 
             // Rebuild sidebar to update avatar (don't create new root)
             VBox newSidebar = createSidebar();
@@ -689,11 +735,7 @@ public class CitizenDashboardController {
             showSuccessMessage("Làm mới thành công",
                     "✅ Thông tin thẻ đã được cập nhật từ thẻ thông minh.\n\n" +
                             "Ảnh đại diện và thông tin cá nhân đã được làm mới.");
-
-        } catch (Exception e) {
-            showAlert("Lỗi làm mới", "Không thể làm mới thông tin thẻ: " + e.getMessage());
-            e.printStackTrace();
-        }
+        }));
     }
 
     private void showBalanceInfo() {
@@ -1021,14 +1063,18 @@ public class CitizenDashboardController {
             return;
         }
 
-        // Get fresh balance from card
-        try {
-            currentBalance = cardService.getBalance();
-        } catch (Exception e) {
-            showAlert("Lỗi kết nối", "Không thể đọc số dư từ thẻ. Vui lòng thử lại.");
-            return;
-        }
+        // Get fresh balance from card (card-owner thread), then confirm on UI thread
+        cardService.getBalanceAsync().whenComplete((balance, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Lỗi kết nối", "Không thể đọc số dư từ thẻ. Vui lòng thử lại.");
+                return;
+            }
+            currentBalance = balance;
+            confirmAndPayInvoice(invoice);
+        }));
+    }
 
+    private void confirmAndPayInvoice(CardDAO.InvoiceRecord invoice) {
         // Show confirmation dialog
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Xác nhận thanh toán");
@@ -1059,42 +1105,56 @@ public class CitizenDashboardController {
                     return;
                 }
 
-                try {
-                    // Send APDU to deduct money from card (returns new balance)
-                    int newBalance = cardService.makePayment((int) invoice.amount);
-
-                    // Update database
-                    boolean dbSuccess = cardDAO.payInvoice(invoice.id);
-                    if (dbSuccess) {
-                        // Update local balance from card response
-                        currentBalance = newBalance;
-                        updateBalanceDisplay();
-
-                        // Log transaction
-                        cardDAO.logTransaction(cardId, "PAYMENT", true, null);
-
-                        showSuccessMessage("Thanh toán thành công",
-                                "Đã thanh toán hóa đơn thành công!\n\n" +
-                                        "Số tiền: " + String.format("%,d VND", invoice.amount) + "\n" +
-                                        "Số dư còn lại: " + String.format("%,d VND", currentBalance));
-
-                        // Refresh invoice list
-                        showInvoices();
-                    } else {
-                        // DB failed but card already deducted - this is a conflict situation
-                        showAlert("Cảnh báo",
-                                "Tiền đã bị trừ trên thẻ nhưng không thể cập nhật database.\n" +
-                                        "Vui lòng liên hệ quản trị viên!");
-                        cardDAO.logTransaction(cardId, "PAYMENT", false, "DB update failed after card deduction");
-                    }
-                } catch (Exception e) {
-                    showAlert("Lỗi thanh toán", "Lỗi khi thanh toán: " + e.getMessage());
-                    cardDAO.logTransaction(cardId, "PAYMENT", false, e.getMessage());
-                }
+                // Send APDU to deduct money from card (returns new balance)
+                cardService.makePaymentAsync((int) invoice.amount).whenComplete(
+                        (newBalance, error) -> javafx.application.Platform.runLater(() -> {
+                            if (error != null) {
+                                String message = CardService.getErrorMessage(error);
+                                showAlert("Lỗi thanh toán", "Lỗi khi thanh toán: " + message);
+                                cardDAO.logTransaction(cardId, "PAYMENT", false, message);
+                            } else {
+                                completeInvoicePayment(invoice, newBalance);
+                            }
+                        }));
             }
         });
     }
 
+    /**
+     * Record paid invoice after the card deducted the amount
+     */
+    private void completeInvoicePayment(CardDAO.InvoiceRecord invoice, int newBalance) {
+        try {
+            // Update database
+            boolean dbSuccess = cardDAO.payInvoice(invoice.id);
+            if (dbSuccess) {
+                // Update local balance from card response
+                currentBalance = newBalance;
+                updateBalanceDisplay();
+
+                // Log transaction
+                cardDAO.logTransaction(cardId, "PAYMENT", true, null);
+
+                showSuccessMessage("Thanh toán thành công",
+                        "Đã thanh toán hóa đơn thành công!\n\n" +
+                                "Số tiền: " + String.format("%,d VND", invoice.amount) + "\n" +
+                                "Số dư còn lại: " + String.format("%,d VND", currentBalance));
+
+                // Refresh invoice list
+                showInvoices();
+            } else {
+                // DB failed but card already deducted - this is a conflict situation
+                showAlert("Cảnh báo",
+                        "Tiền đã bị trừ trên thẻ nhưng không thể cập nhật database.\n" +
+                                "Vui lòng liên hệ quản trị viên!");
+                cardDAO.logTransaction(cardId, "PAYMENT", false, "DB update failed after card deduction");
+            }
+        } catch (Exception e) {
+            showAlert("Lỗi thanh toán", "Lỗi khi thanh toán: " + e.getMessage());
+            cardDAO.logTransaction(cardId, "PAYMENT", false, e.getMessage());
+        }
+    }
+
     // =====================================================
     // TOPUP MANAGEMENT
     // =====================================================
@@ -1190,25 +1250,9 @@ public class CitizenDashboardController {
             return;
         }
 
-        CardService.PinVerificationResult pinResult = cardService.verifyPin(pin);
-        if (!pinResult.success) {
-            showPinError(pinResult);
-            return;
-        }
-
-        // Save email to card (stored in personal info)
-        try {
-            String infoData = "EMAIL:" + newEmail.trim();
-            boolean success = cardService.updatePersonalInfo(infoData.getBytes());
-            if (success) {
-                showSuccessMessage("Thành công", "Đã cập nhật email: " + newEmail);
-                showEditProfile();
-            } else {
-                showAlert("Lỗi", "Không thể cập nhật email.");
-            }
-        } catch (Exception e) {
-            showAlert("Lỗi", "Lỗi khi cập nhật: " + e.getMessage());
-        }
+        // Save email to card (one field of the personal info record)
+        updateInfoFieldOnCard(pin, CitizenInfoParser.TAG_EMAIL, newEmail.trim(),
+                "Đã cập nhật email: " + newEmail, "Không thể cập nhật email.");
     }
 
     private void changePhone(String newPhone) {
@@ -1233,25 +1277,38 @@ public class CitizenDashboardController {
             return;
         }
 
-        CardService.PinVerificationResult pinResult = cardService.verifyPin(pin);
-        if (!pinResult.success) {
-            showPinError(pinResult);
-            return;
-        }
+        // Save phone to card (one field of the personal info record)
+        updateInfoFieldOnCard(pin, CitizenInfoParser.TAG_PHONE, cleanPhone,
+                "Đã cập nhật SĐT: " + cleanPhone, "Không thể cập nhật số điện thoại.");
+    }
 
-        // Save phone to card
-        try {
-            String infoData = "PHONE:" + cleanPhone;
-            boolean success = cardService.updatePersonalInfo(infoData.getBytes());
-            if (success) {
-                showSuccessMessage("Thành công", "Đã cập nhật SĐT: " + cleanPhone);
-                showEditProfile();
-            } else {
-                showAlert("Lỗi", "Không thể cập nhật số điện thoại.");
+    /**
+     * Verify PIN and patch one info field as a single card-owner task
+     * (no other card operation can run between the two)
+     */
+    private void updateInfoFieldOnCard(String pin, byte tag, String value, String successMessage,
+            String failureMessage) {
+        cardService.submit(card -> {
+            CardService.PinVerificationResult pinResult = card.verifyPin(pin);
+            if (pinResult.success && !card.updateInfoField(tag, value)) {
+                throw new RuntimeException(failureMessage);
             }
-        } catch (Exception e) {
-            showAlert("Lỗi", "Lỗi khi cập nhật: " + e.getMessage());
-        }
+            return pinResult;
+        }).whenComplete((pinResult, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Lỗi", "Lỗi khi cập nhật: " + CardService.getErrorMessage(error));
+                return;
+            }
+            if (!pinResult.success) {
+                showPinError(pinResult);
+                return;
+            }
+            if (citizenInfo != null) {
+                citizenInfo = CitizenInfoParser.withField(citizenInfo, tag, value);
+            }
+            showSuccessMessage("Thành công", successMessage);
+            showEditProfile();
+        }));
     }
 
     private void showPinError(CardService.PinVerificationResult pinResult) {
@@ -1386,46 +1443,47 @@ public class CitizenDashboardController {
                 return; // User cancelled
             }
 
-            // Verify PIN
-            CardService.PinVerificationResult pinResult = cardService.verifyPin(pin);
-            if (!pinResult.success) {
-                if (pinResult.remainingTries > 0) {
-                    showAlert("Sai mã PIN",
-                            "Mã PIN không đúng!\nSố lần thử còn lại: " + pinResult.remainingTries);
+            // Verify PIN on the card-owner thread, then confirm on UI thread
+            cardService.verifyPinAsync(pin).whenComplete((pinResult, error) -> javafx.application.Platform.runLater(() -> {
+                if (error != null) {
+                    showAlert("Lỗi xác thực", "Không thể xác thực PIN: " + CardService.getErrorMessage(error));
+                } else if (!pinResult.success) {
+                    showPinError(pinResult);
                 } else {
-                    showAlert("Thẻ bị khóa", "Thẻ đã bị khóa do nhập sai PIN nhiều lần!");
-                }
-                return;
-            }
-
-            // Confirm
-            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
-            confirm.setTitle("Xác nhận yêu cầu nạp tiền");
-            confirm.setHeaderText("💳 Xác nhận yêu cầu nạp tiền");
-            confirm.setContentText(
-                    "Bạn đã chuyển khoản " + String.format("%,d VND", amount) + "?\n\n" +
-                            "Nội dung CK: " + cardId + "\n\n" +
-                            "Yêu cầu sẽ được gửi đến Admin để xác nhận.");
-
-            confirm.showAndWait().ifPresent(response -> {
-                if (response == ButtonType.OK) {
-                    boolean success = cardDAO.createTopupRequest(cardId, amount);
-                    if (success) {
-                        showSuccessMessage("Yêu cầu đã gửi",
-                                "Yêu cầu nạp " + String.format("%,d VND", amount) + " đã được gửi.\n\n" +
-                                        "Vui lòng chờ Admin xác nhận (thường trong vòng 24h).");
-                        showTopup(); // Refresh
-                    } else {
-                        showAlert("Lỗi", "Không thể gửi yêu cầu. Vui lòng thử lại.");
-                    }
+                    confirmTopupRequest(amount);
                 }
-            });
+            }));
 
         } catch (NumberFormatException e) {
             showAlert("Lỗi", "Số tiền không hợp lệ!");
         }
     }
 
+    private void confirmTopupRequest(long amount) {
+        // Confirm
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Xác nhận yêu cầu nạp tiền");
+        confirm.setHeaderText("💳 Xác nhận yêu cầu nạp tiền");
+        confirm.setContentText(
+                "Bạn đã chuyển khoản " + String.format("%,d VND", amount) + "?\n\n" +
+                        "Nội dung CK: " + cardId + "\n\n" +
+                        "Yêu cầu sẽ được gửi đến Admin để xác nhận.");
+
+        confirm.showAndWait().ifPresent(response -> {
+            if (response == ButtonType.OK) {
+                boolean success = cardDAO.createTopupRequest(cardId, amount);
+                if (success) {
+                    showSuccessMessage("Yêu cầu đã gửi",
+                            "Yêu cầu nạp " + String.format("%,d VND", amount) + " đã được gửi.\n\n" +
+                                    "Vui lòng chờ Admin xác nhận (thường trong vòng 24h).");
+                    showTopup(); // Refresh
+                } else {
+                    showAlert("Lỗi", "Không thể gửi yêu cầu. Vui lòng thử lại.");
+                }
+            }
+        });
+    }
+
     private VBox createTopupHistory() {
         VBox section = new VBox(15);
 
@@ -1517,9 +1575,12 @@ public class CitizenDashboardController {
             return; // User cancelled
         }
 
-        // Step 2: Verify current PIN
-        try {
-            CardService.PinVerificationResult pinResult = cardService.verifyPin(currentPin);
+        // Step 2: Verify current PIN (card-owner thread)
+        cardService.verifyPinAsync(currentPin).whenComplete((pinResult, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Lỗi xác thực", "Không thể xác thực PIN: " + CardService.getErrorMessage(error));
+                return;
+            }
             if (!pinResult.success) {
                 String errorMsg = "PIN hiện tại không chính xác.";
                 if (pinResult.remainingTries > 0) {
@@ -1530,11 +1591,11 @@ public class CitizenDashboardController {
                 showAlert("PIN không đúng", errorMsg);
                 return;
             }
-        } catch (Exception e) {
-            showAlert("Lỗi xác thực", "Không thể xác thực PIN: " + e.getMessage());
-            return;
-        }
+            chooseNewPin(currentPin);
+        }));
+    }
 
+    private void chooseNewPin(String currentPin) {
         // Step 3: Get new PIN
         String newPin = PinInputDialog.showChangePinDialog(
                 "Chọn PIN mới",
@@ -1573,21 +1634,14 @@ public class CitizenDashboardController {
      * Change PIN on smart card - Simplified version
      */
     private void changePinOnCard(String currentPin, String newPin) {
-        // Run PIN change in background thread
-        new Thread(() -> {
-            boolean success = false;
-            String errorMsg = null;
-
-            try {
-                success = cardService.changePin(currentPin, newPin);
-            } catch (Exception e) {
-                errorMsg = e.getMessage();
-                System.err.println("[ERROR] PIN change exception: " + e.getMessage());
+        // Run PIN change on card-owner thread
+        cardService.changePinAsync(currentPin, newPin).whenComplete((success, error) -> {
+            final boolean finalSuccess = error == null && success;
+            final String finalError = error != null ? CardService.getErrorMessage(error) : null;
+            if (error != null) {
+                System.err.println("[ERROR] PIN change exception: " + finalError);
             }
 
-            final boolean finalSuccess = success;
-            final String finalError = errorMsg;
-
             // Update UI on JavaFX thread
             javafx.application.Platform.runLater(() -> {
                 if (finalSuccess) {
@@ -1609,7 +1663,7 @@ public class CitizenDashboardController {
                                     "Vui lòng thử lại sau.");
                 }
             });
-        }).start();
+        });
     }
 
     private void showEmergencyBlock() {
@@ -1637,14 +1691,15 @@ public class CitizenDashboardController {
     }
 
     private void refreshBalance() {
-        try {
-            int newBalance = cardService.getBalance();
+        cardService.getBalanceAsync().whenComplete((newBalance, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                showAlert("Làm mới thất bại", "Không thể làm mới số dư: " + CardService.getErrorMessage(error));
+                return;
+            }
             currentBalance = newBalance;
             updateBalanceDisplay();
             showSuccessMessage("Đã làm mới số dư", "Số dư đã được cập nhật thành công.");
-        } catch (Exception e) {
-            showAlert("Làm mới thất bại", "Không thể làm mới số dư: " + e.getMessage());
-        }
+        }));
     }
 
     private void updateBalanceDisplay() {
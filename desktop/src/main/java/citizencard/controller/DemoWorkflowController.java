@@ -4,11 +4,13 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
 
 import citizencard.service.CardService;
+import citizencard.service.PersonalizationJob;
+import citizencard.service.TerminalPool;
 import citizencard.dao.CardDAO;
 import citizencard.util.DataValidator;
 import citizencard.util.PhotoUtils;
@@ -719,7 +721,7 @@ public class DemoWorkflowController {
 
             confirm.showAndWait().ifPresent(response -> {
                 if (response == ButtonType.OK) {
-                    performCardCreation(info);
+                    performCardCreation(info, cardId);
                 }
             });
 
@@ -731,19 +733,28 @@ public class DemoWorkflowController {
     /**
      * Perform actual card creation - REAL CONNECTION TO JCIDE
      * 
-     * Flow:
-     * 1. Connect to JCIDE via CardService
-     * 2. Initialize card with PIN (INS_INITIALIZE_CARD)
-     * 3. Get public key from card (INS_GET_PUBLIC_KEY)
-     * 4. Save card_id + public_key to H2 database
+     * Runs a PersonalizationJob on the next idle reader of the issuance pool, so
+     * the desk can start the next card while earlier ones are still being written:
+     * 1. Initialize card with PIN and Card ID
+     * 2. Get public key from card
+     * 3. Save card_id + public_key to H2 database
+     * 4. Personal info, photo and initial balance on the card
      */
-    private void performCardCreation(CitizenInfo info) {
+    private void performCardCreation(CitizenInfo info, String cardId) {
+        TerminalPool pool;
+        try {
+            pool = TerminalPool.getIssuancePool(cardService);
+        } catch (IOException e) {
+            showErrorResult(e.getMessage());
+            return;
+        }
+
         // Show progress dialog
         Alert progressDialog = new Alert(Alert.AlertType.INFORMATION);
         progressDialog.setTitle("Dang tao the");
         progressDialog.setHeaderText("Dang khoi tao the ao...");
         progressDialog.setContentText("Vui long doi trong khi he thong dang xu ly...\n\n" +
-                "Buoc 1: Ket noi den JCIDE...");
+                "Dang cho dau doc the (" + pool.getIdleCount() + "/" + pool.size() + " dang ranh)...");
         progressDialog.getButtonTypes().clear();
         progressDialog.getDialogPane().setPrefWidth(400);
         progressDialog.getDialogPane().setMaxWidth(400);
@@ -752,7 +763,8 @@ public class DemoWorkflowController {
         progressDialog.initModality(javafx.stage.Modality.NONE);
         progressDialog.show();
 
-        // Safety timeout - force close dialog after 30 seconds
+        // Safety timeout - force close dialog 30 seconds after a reader took the card
+        // (waiting for a busy reader does not count)
         Thread timeoutThread = new Thread(() -> {
             try {
                 Thread.sleep(30000); // 30 seconds
@@ -769,297 +781,51 @@ public class DemoWorkflowController {
             }
         });
         timeoutThread.setDaemon(true);
-        timeoutThread.start();
-
-        // Run card creation in background thread
-        Thread creationThread = new Thread(() -> {
-            String cardId = null;
-            String publicKeyBase64 = null;
-            String errorMessage = null;
-
-            try {
-                // Step 1: Connect to JCIDE
-                updateProgress(progressDialog, "Buoc 1: Dang ket noi den JCIDE...");
-                Thread.sleep(500);
-
-                boolean connected = cardService.connectToCard();
-                if (!connected) {
-                    throw new Exception("Khong the ket noi den JCIDE.\n" +
-                            "Vui long kiem tra:\n" +
-                            "1. JCIDE dang chay\n" +
-                            "2. Applet da duoc load\n" +
-                            "3. Remote Card dang hoat dong");
-                }
-
-                // Generate Card ID with new format (before initializing card)
-                cardId = generateCardId(info.roomNumber);
-                System.out.println("[INFO] Generated Card ID: " + cardId);
-
-                // Step 1.5: Clear card data before initialization
-                updateProgress(progressDialog, "Buoc 1.5: Dang xoa du lieu cu tren the...");
-                Thread.sleep(500);
-
-                try {
-                    cardService.clearCard();
-                    System.out.println("[INFO] Card data cleared successfully");
-                } catch (Exception e) {
-                    // If clear fails, it might be a new card - continue anyway
-                    System.out.println("[WARN] Could not clear card (might be new card): " + e.getMessage());
-                }
-
-                // Step 2: Initialize card with PIN and Card ID
-                updateProgress(progressDialog, "Buoc 2: Dang khoi tao the voi PIN va Card ID...");
-                Thread.sleep(500);
-
-                try {
-                    // Send both PIN and complex Card ID to applet
-                    String appletCardId = cardService.initializeCard(info.pin, cardId);
-                    System.out.println("[INFO] Card initialized with ID: " + appletCardId);
-                } catch (Exception e) {
-                    // Card might already be initialized, try to verify PIN
-                    System.out.println("[WARN] Card may already be initialized: " + e.getMessage());
-
-                    // Try to verify PIN
-                    CardService.PinVerificationResult pinResult = cardService.verifyPin(info.pin);
-                    if (pinResult.success) {
-                        // Get existing card ID from applet
-                        String existingCardId = cardService.getCardId();
-                        System.out.println("[INFO] Card already initialized with ID: " + existingCardId);
-                        // Use existing card ID for database
-                        cardId = existingCardId;
-                    } else {
-                        String errorMsg = "The da duoc khoi tao voi PIN khac.\n" +
-                                "Vui long su dung PIN da dat truoc do hoac reset the.";
-                        if (pinResult.remainingTries > 0) {
-                            errorMsg += "\nSo lan thu con lai: " + pinResult.remainingTries;
-                        } else {
-                            errorMsg += "\nThe da bi khoa do nhap sai PIN qua nhieu lan.";
-                        }
-                        throw new Exception(errorMsg);
-                    }
-                }
-
-                // Step 3: Get public key (skip for simplified applet)
-                updateProgress(progressDialog, "Buoc 3: Dang lay public key...");
-                Thread.sleep(500);
-
-                try {
-                    byte[] publicKeyBytes = cardService.getPublicKey();
-                    if (publicKeyBytes != null && publicKeyBytes.length > 0) {
-                        publicKeyBase64 = Base64.getEncoder().encodeToString(publicKeyBytes);
-                        System.out.println("[INFO] Public key retrieved: "
-                                + publicKeyBase64.substring(0, Math.min(50, publicKeyBase64.length())) + "...");
-                    } else {
-                        // Simplified applet doesn't have RSA - use dummy key
-                        publicKeyBase64 = "SIMPLIFIED_APPLET_NO_RSA_KEY";
-                        System.out.println("[INFO] Using dummy public key (simplified applet)");
-                    }
-                } catch (Exception e) {
-                    // If get public key fails, use dummy key
-                    publicKeyBase64 = "SIMPLIFIED_APPLET_NO_RSA_KEY";
-                    System.out.println("[WARN] Could not get public key (simplified applet): " + e.getMessage());
-                }
-
-                // Card ID was already set in applet during Step 2
-
-                // Step 4: Save to database with full citizen info
-                updateProgress(progressDialog, "Buoc 4: Dang luu vao database...");
-                Thread.sleep(500);
 
-                // Check if card already registered
-                if (cardDAO.isCardRegistered(cardId)) {
-                    System.out.println("[INFO] Card already registered, updating...");
-                } else {
-                    // Save card_id and public_key to database
-                    boolean saved = cardDAO.registerCard(cardId, publicKeyBase64);
-                    if (!saved) {
-                        throw new Exception("Khong the luu thong tin vao database.");
+        PersonalizationJob job = new PersonalizationJob(info, cardId, info.photoData, cardDAO)
+                .onProgress(step -> {
+                    if (step == PersonalizationJob.Step.CLEAR) {
+                        timeoutThread.start();
                     }
-                    System.out.println("[DB] Card registered: " + cardId);
-                }
-
-                // Step 4.5: Save personal info to card
-                updateProgress(progressDialog, "Buoc 4.5: Dang luu thong tin ca nhan len the...");
-                Thread.sleep(500);
-
-                try {
-                    // Serialize personal info
-                    byte[] infoBytes = citizencard.util.CitizenInfoParser.serialize(info);
-                    System.out.println("[INFO] Personal info serialized: " + infoBytes.length + " bytes");
-
-                    // Save to card (encrypted by applet)
-                    boolean infoSaved = cardService.updatePersonalInfo(infoBytes);
-                    if (infoSaved) {
-                        System.out.println("[INFO] Personal info saved to card successfully");
-                    } else {
-                        System.err.println("[WARN] Failed to save personal info to card");
-                    }
-                } catch (Exception infoError) {
-                    System.err.println("[WARN] Personal info save failed: " + infoError.getMessage());
-                    // Don't fail the entire process
-                }
-
-                // Step 5: Upload photo if available (skip for simplified applet)
-                if (info.photoData != null && info.photoData.length > 0) {
-                    updateProgress(progressDialog, "Buoc 5: Dang tai anh ca nhan len the...");
-                    Thread.sleep(500);
-
-                    try {
-                        // Prepare photo for card (compress if needed)
-                        byte[] cardPhotoData = PhotoUtils.preparePhotoForCard(
-                                PhotoUtils.bytesToImage(info.photoData));
-
-                        // Upload to card
-                        boolean photoUploaded = cardService.uploadPhoto(cardPhotoData);
-                        if (photoUploaded) {
-                            System.out
-                                    .println("[INFO] Photo uploaded successfully: " + cardPhotoData.length + " bytes");
-                        }
-                    } catch (Exception photoError) {
-                        System.err.println("[WARN] Photo upload failed (simplified applet may not support): "
-                                + photoError.getMessage());
-                        // Don't fail the entire process for photo upload failure
-                    }
-                }
-
-                // Step 6: Top up initial balance if > 0 (skip for simplified applet)
-                if (info.balance > 0) {
-                    updateProgress(progressDialog, "Buoc 6: Dang nap so du ban dau...");
-                    Thread.sleep(500);
+                    updateProgress(progressDialog, getStepText(step));
+                });
 
-                    try {
-                        int newBalance = cardService.topupBalance((int) info.balance);
-                        System.out.println("[INFO] Initial balance topped up: " + newBalance);
-                    } catch (Exception balanceError) {
-                        System.err.println("[WARN] Balance top-up failed (simplified applet may not support): "
-                                + balanceError.getMessage());
-                        // Don't fail the entire process for balance top-up failure
-                    }
-                }
+        pool.submit(job).whenComplete((result, error) -> javafx.application.Platform.runLater(() -> {
+            timeoutThread.interrupt();
+            progressDialog.close();
 
-                // Log transaction (use UPDATE_INFO as closest match for card creation)
-                try {
-                    cardDAO.logTransaction(cardId, "UPDATE_INFO", true, "Card initialized successfully");
-                } catch (Exception logError) {
-                    System.err.println("[WARN] Could not log transaction: " + logError.getMessage());
-                }
-
-            } catch (Exception e) {
-                errorMessage = e.getMessage();
+            if (error != null) {
+                String errorMessage = CardService.getErrorMessage(error);
                 System.err.println("[ERROR] Card creation failed: " + errorMessage);
-
-                if (cardId != null) {
-                    try {
-                        cardDAO.logTransaction(cardId, "UPDATE_INFO", false, errorMessage);
-                    } catch (Exception logError) {
-                        System.err.println("[WARN] Could not log transaction: " + logError.getMessage());
-                    }
-                }
-            }
-
-            // Update UI on JavaFX thread
-            final String finalCardId = cardId;
-            final String finalPublicKey = publicKeyBase64;
-            final String finalError = errorMessage;
-            final CitizenInfo finalInfo = info;
-
-            System.out.println("[DEBUG] Preparing to update UI...");
-            System.out.println("[DEBUG] Card ID: " + finalCardId);
-            System.out.println("[DEBUG] Error: " + finalError);
-
-            // Small delay to ensure all operations complete
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                // Ignore
+                showErrorResult(errorMessage);
+            } else {
+                showSuccessResult(result, info);
             }
+        }));
+    }
 
-            // Backup mechanism - force close after 2 seconds if Platform.runLater doesn't
-            // work
-            final boolean[] uiUpdated = { false };
-            Thread backupCloseThread = new Thread(() -> {
-                try {
-                    Thread.sleep(2000);
-                    if (!uiUpdated[0]) {
-                        System.err.println("[WARN] UI update timeout - forcing dialog close");
-                        javafx.application.Platform.runLater(() -> {
-                            try {
-                                progressDialog.close();
-                                showAlert("Thành công", "Thẻ đã được tạo thành công!\nCard ID: " + finalCardId);
-                            } catch (Exception e) {
-                                System.err.println("[ERROR] Backup close failed: " + e.getMessage());
-                            }
-                        });
-                    }
-                } catch (InterruptedException e) {
-                    // Normal - interrupted when UI updated successfully
-                }
-            });
-            backupCloseThread.setDaemon(true);
-            backupCloseThread.start();
-
-            javafx.application.Platform.runLater(() -> {
-                uiUpdated[0] = true;
-                backupCloseThread.interrupt();
-                try {
-                    System.out.println("[DEBUG] UI update started");
-
-                    // Interrupt timeout thread
-                    try {
-                        timeoutThread.interrupt();
-                        System.out.println("[DEBUG] Timeout thread interrupted");
-                    } catch (Exception e) {
-                        System.err.println("[WARN] Could not interrupt timeout: " + e.getMessage());
-                    }
-
-                    // Force close dialog - try multiple methods
-                    try {
-                        if (progressDialog.isShowing()) {
-                            System.out.println("[DEBUG] Attempting to close dialog...");
-
-                            // Method 1: Hide
-                            progressDialog.hide();
-                            System.out.println("[DEBUG] Dialog hidden");
-
-                            // Method 2: Close
-                            progressDialog.close();
-                            System.out.println("[DEBUG] Dialog closed");
-
-                            // Method 3: Get window and close
-                            javafx.stage.Window window = progressDialog.getDialogPane().getScene().getWindow();
-                            if (window != null) {
-                                window.hide();
-                                System.out.println("[DEBUG] Window hidden");
-                            }
-                        } else {
-                            System.out.println("[DEBUG] Progress dialog already closed");
-                        }
-                    } catch (Exception e) {
-                        System.err.println("[WARN] Error closing dialog: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-
-                    // Show result
-                    if (finalError != null) {
-                        System.out.println("[DEBUG] Showing error result");
-                        showErrorResult(finalError);
-                    } else {
-                        System.out.println("[DEBUG] Showing success result");
-                        showSuccessResult(finalCardId, finalPublicKey, finalInfo);
-                    }
-
-                    System.out.println("[DEBUG] UI update completed");
-                    System.out.println("[INFO] Card creation completed successfully - connection kept open");
-
-                } catch (Exception e) {
-                    System.err.println("[ERROR] Error updating UI: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            });
-
-        });
-        creationThread.setDaemon(true);
-        creationThread.start();
+    /**
+     * Progress dialog text for a personalization step
+     */
+    private static String getStepText(PersonalizationJob.Step step) {
+        switch (step) {
+            case CLEAR:
+                return "Buoc 1: Dang xoa du lieu cu tren the...";
+            case INITIALIZE:
+                return "Buoc 2: Dang khoi tao the voi PIN va Card ID...";
+            case PUBLIC_KEY:
+                return "Buoc 3: Dang lay public key...";
+            case REGISTER:
+                return "Buoc 4: Dang luu vao database...";
+            case PERSONAL_INFO:
+                return "Buoc 4.5: Dang luu thong tin ca nhan len the...";
+            case AVATAR:
+                return "Buoc 5: Dang tai anh ca nhan len the...";
+            case BALANCE:
+                return "Buoc 6: Dang nap so du ban dau...";
+            default:
+                return step.name();
+        }
     }
 
     /**
@@ -1074,7 +840,13 @@ public class DemoWorkflowController {
     /**
      * Show success result dialog
      */
-    private void showSuccessResult(String cardId, String publicKey, CitizenInfo info) {
+    private void showSuccessResult(PersonalizationJob.Result result, CitizenInfo info) {
+        String publicKey = result.publicKeyBase64;
+        StringBuilder warnings = new StringBuilder();
+        for (String warning : result.warnings) {
+            warnings.append("[!] ").append(warning).append("\n");
+        }
+
         Alert success = new Alert(Alert.AlertType.INFORMATION);
         success.setTitle("Tao the thanh cong");
         success.setHeaderText("The cu dan moi da san sang!");
@@ -1082,7 +854,8 @@ public class DemoWorkflowController {
         success.getDialogPane().setMaxWidth(450);
         success.setContentText(
                 "TAO THE HOAN TAT:\n\n" +
-                        "ID The: " + cardId + "\n" +
+                        "ID The: " + result.cardId + "\n" +
+                        "Dau doc: " + result.reader + "\n" +
                         "Chu the: " + info.name + "\n" +
                         "Ma PIN: " + info.pin + "\n" +
                         "So du: " + DataValidator.formatBalance(info.balance) + "\n\n" +
@@ -1094,7 +867,8 @@ public class DemoWorkflowController {
                         "[OK] Ket noi JCIDE thanh cong\n" +
                         "[OK] Khoi tao the ao thanh cong\n" +
                         "[OK] Lay public key thanh cong\n" +
-                        "[OK] Luu database thanh cong\n\n" +
+                        "[OK] Luu database thanh cong\n" +
+                        warnings + "\n" +
 
                         "BUOC TIEP THEO:\n" +
                         "Chuyen sang che do Cu dan de test the moi!\n" +
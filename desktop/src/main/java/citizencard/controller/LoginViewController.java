@@ -310,9 +310,17 @@ public class LoginViewController {
     private void setCitizenMode() {
         isAdminMode = false;
 
-        // Citizen mode - need to check card and verify PIN
-        try {
-            String cardId = cardService.getCardId();
+        // Citizen mode - need to check card and verify PIN (card read on card-owner thread)
+        cardService.submit(CardService::getCardId).whenComplete((cardId, error) -> javafx.application.Platform.runLater(() -> {
+            if (error != null) {
+                // Card is connected but not initialized
+                statusLabel.setText("Thẻ chưa được khởi tạo. Vui lòng liên hệ quản trị viên.");
+                showAlert("Thẻ chưa được khởi tạo",
+                        "Thẻ này chưa được khởi tạo.\n\n" +
+                                "Vui lòng liên hệ quản trị viên hệ thống để thiết lập thẻ này.\n\n" +
+                                "Lỗi: " + CardService.getErrorMessage(error));
+                return;
+            }
 
             // Check if card is registered
             if (cardDAO.isCardRegistered(cardId)) {
@@ -325,14 +333,7 @@ public class LoginViewController {
                                 "Vui lòng liên hệ quản trị viên hệ thống để đăng ký thẻ này.\n\n" +
                                 "ID Thẻ: " + cardId);
             }
-        } catch (Exception e) {
-            // Card is connected but not initialized
-            statusLabel.setText("Thẻ chưa được khởi tạo. Vui lòng liên hệ quản trị viên.");
-            showAlert("Thẻ chưa được khởi tạo",
-                    "Thẻ này chưa được khởi tạo.\n\n" +
-                            "Vui lòng liên hệ quản trị viên hệ thống để thiết lập thẻ này.\n\n" +
-                            "Lỗi: " + e.getMessage());
-        }
+        }));
     }
 
     private void showAdminDashboard() {
@@ -378,34 +379,32 @@ public class LoginViewController {
             return;
         }
 
-        // Try to connect silently
-        new Thread(() -> {
-            try {
-                boolean connected = cardService.connectToCard();
-
-                javafx.application.Platform.runLater(() -> {
-                    if (connected) {
-                        System.out.println("[INFO] Auto-connect successful");
-                        updateConnectionStatus(true);
-                        connectButton.setText("✓ Đã kết nối");
-                        connectButton.getStyleClass().removeAll("btn-primary");
-                        connectButton.getStyleClass().add("btn-success");
-                        connectButton.setDisable(true);
-                        statusLabel.setText("✅ Thẻ đã kết nối! Vui lòng chọn chế độ đăng nhập.");
-                        showModeSelection();
-                    } else {
-                        System.out.println("[WARN] Auto-connect failed - user must connect manually");
-                        statusLabel.setText("⚠️ Không thể tự động kết nối. Vui lòng nhấn nút kết nối.");
-                    }
-                });
-
-            } catch (Exception e) {
-                System.err.println("[ERROR] Auto-connect error: " + e.getMessage());
+        // Try to connect silently (on card-owner thread)
+        cardService.connectToCardAsync().whenComplete((connected, error) -> {
+            if (error != null) {
+                System.err.println("[ERROR] Auto-connect error: " + CardService.getErrorMessage(error));
                 javafx.application.Platform.runLater(() -> {
                     statusLabel.setText("⚠️ Không thể tự động kết nối. Vui lòng nhấn nút kết nối.");
                 });
+                return;
             }
-        }).start();
+
+            javafx.application.Platform.runLater(() -> {
+                if (connected) {
+                    System.out.println("[INFO] Auto-connect successful");
+                    updateConnectionStatus(true);
+                    connectButton.setText("✓ Đã kết nối");
+                    connectButton.getStyleClass().removeAll("btn-primary");
+                    connectButton.getStyleClass().add("btn-success");
+                    connectButton.setDisable(true);
+                    statusLabel.setText("✅ Thẻ đã kết nối! Vui lòng chọn chế độ đăng nhập.");
+                    showModeSelection();
+                } else {
+                    System.out.println("[WARN] Auto-connect failed - user must connect manually");
+                    statusLabel.setText("⚠️ Không thể tự động kết nối. Vui lòng nhấn nút kết nối.");
+                }
+            });
+        });
     }
 
     private void connectToCard() {
@@ -416,46 +415,38 @@ public class LoginViewController {
         statusLabel.setText("Đang kết nối với Thẻ thông minh...");
         connectionStatusLabel.setText("Đang kết nối...");
 
-        // Run in background thread
-        new Thread(() -> {
-            try {
-                Thread.sleep(1000); // Small delay for better UX
-                boolean connected = cardService.connectToCard();
+        // Run on card-owner thread
+        cardService.connectToCardAsync().whenComplete((connected, error) -> {
+            javafx.application.Platform.runLater(() -> {
+                loadingIndicator.setVisible(false);
 
-                javafx.application.Platform.runLater(() -> {
-                    loadingIndicator.setVisible(false);
-
-                    if (connected) {
-                        // Update UI for successful connection
-                        updateConnectionStatus(true);
-                        connectButton.setText("✓ Đã kết nối");
-                        connectButton.getStyleClass().removeAll("btn-primary");
-                        connectButton.getStyleClass().add("btn-success");
-                        connectButton.setDisable(true);
-
-                        // Show mode selection after successful connection
-                        statusLabel.setText("✅ Thẻ đã kết nối thành công! Vui lòng chọn chế độ đăng nhập.");
-                        showModeSelection();
-
-                    } else {
-                        // Connection failed
-                        updateConnectionStatus(false);
-                        statusLabel.setText("Không thể kết nối với Thẻ thông minh. Vui lòng kiểm tra thẻ và thử lại.");
-                        connectButton.setText("Thử kết nối lại");
-                        connectButton.setDisable(false);
-                    }
-                });
+                if (error != null) {
+                    updateConnectionStatus(false);
+                    statusLabel.setText("Lỗi kết nối: " + CardService.getErrorMessage(error));
+                    connectButton.setText("Thử kết nối lại");
+                    connectButton.setDisable(false);
 
-            } catch (Exception e) {
-                javafx.application.Platform.runLater(() -> {
-                    loadingIndicator.setVisible(false);
+                } else if (connected) {
+                    // Update UI for successful connection
+                    updateConnectionStatus(true);
+                    connectButton.setText("✓ Đã kết nối");
+                    connectButton.getStyleClass().removeAll("btn-primary");
+                    connectButton.getStyleClass().add("btn-success");
+                    connectButton.setDisable(true);
+
+                    // Show mode selection after successful connection
+                    statusLabel.setText("✅ Thẻ đã kết nối thành công! Vui lòng chọn chế độ đăng nhập.");
+                    showModeSelection();
+
+                } else {
+                    // Connection failed
                     updateConnectionStatus(false);
-                    statusLabel.setText("Lỗi kết nối: " + e.getMessage());
+                    statusLabel.setText("Không thể kết nối với Thẻ thông minh. Vui lòng kiểm tra thẻ và thử lại.");
                     connectButton.setText("Thử kết nối lại");
                     connectButton.setDisable(false);
-                });
-            }
-        }).start();
+                }
+            });
+        });
     }
 
     private void updateConnectionStatus(boolean connected) {
@@ -507,88 +498,99 @@ public class LoginViewController {
         statusLabel.getStyleClass().removeAll("status-error", "status-success");
         statusLabel.getStyleClass().add("status-loading");
 
-        // Run in background thread
-        new Thread(() -> {
-            try {
-                Thread.sleep(800); // Small delay for better UX
-                CardService.PinVerificationResult pinResult = cardService.verifyPin(pin);
+        // VERIFY on card-owner thread, then read profile (reused by dashboard)
+        cardService.verifyPinAsync(pin).whenComplete((pinResult, error) -> {
+            if (error != null) {
+                javafx.application.Platform.runLater(() -> showCardError(error));
+                return;
+            }
 
-                javafx.application.Platform.runLater(() -> {
-                    if (pinResult.success) {
-                        statusLabel.setText("✅ Xác thực thành công! Đang tải tài khoản của bạn...");
-
-                        // Get card info and show dashboard
-                        try {
-                            // Get applet card ID (internal, not displayed)
-                            String appletCardId = cardService.getCardId();
-                            System.out.println("[DEBUG] Applet Card ID: " + appletCardId);
-
-                            // Get actual Card ID from database (most recent card)
-                            // TODO: Implement proper mapping between applet ID and desktop ID
-                            // For now, use the most recently created card
-                            String cardId = cardDAO.getMostRecentCardId();
-                            if (cardId == null) {
-                                throw new Exception(
-                                        "Không tìm thấy thẻ trong hệ thống.\nVui lòng liên hệ quản trị viên.");
-                            }
-                            System.out.println("[DEBUG] Desktop Card ID: " + cardId);
-
-                            int balance = cardService.getBalance();
-
-                            // Update database
-                            cardDAO.updateLastAccessed(cardId);
-                            cardDAO.logTransaction(cardId, "LOGIN", true, null);
-
-                            // Show success and then dashboard
-                            showSuccessMessage("Chào mừng!",
-                                    "Xác thực thành công.\n\nĐang tải bảng điều khiển của bạn...");
-
-                            // Delay before showing dashboard
-                            new Thread(() -> {
-                                try {
-                                    Thread.sleep(1500);
-                                    javafx.application.Platform.runLater(() -> {
-                                        showDashboard(cardId, balance);
-                                    });
-                                } catch (InterruptedException e) {
-                                    Thread.currentThread().interrupt();
-                                }
-                            }).start();
-
-                        } catch (Exception e) {
-                            showAlert("Lỗi hệ thống", "Xác thực thành công nhưng không thể tải thông tin tài khoản:\n\n"
-                                    + e.getMessage());
-                            resetLoginForm();
-                        }
+            if (!pinResult.success) {
+                javafx.application.Platform.runLater(() -> showPinFailure(pinResult));
+                return;
+            }
 
-                    } else {
-                        statusLabel.setText("❌ Mã PIN không đúng. Vui lòng kiểm tra và thử lại.");
-                        String errorMsg = "Mã PIN bạn nhập không chính xác.\n\n";
+            javafx.application.Platform.runLater(
+                    () -> statusLabel.setText("✅ Xác thực thành công! Đang tải tài khoản của bạn..."));
 
-                        if (pinResult.remainingTries > 0) {
-                            errorMsg += "Số lần thử còn lại: " + pinResult.remainingTries + "\n\n";
-                            errorMsg += "⚠️ Quá nhiều lần thử sai sẽ khóa thẻ của bạn.";
-                        } else {
-                            errorMsg += "🔒 Thẻ đã bị khóa do nhập sai PIN quá nhiều lần.\n\n";
-                            errorMsg += "Vui lòng liên hệ quản trị viên để mở khóa.";
+            cardService.readProfileAsync().whenComplete((profile, profileError) -> {
+                javafx.application.Platform.runLater(() -> {
+                    if (profileError != null) {
+                        showAlert("Lỗi hệ thống", "Xác thực thành công nhưng không thể tải thông tin tài khoản:\n\n"
+                                + CardService.getErrorMessage(profileError));
+                        resetLoginForm();
+                        return;
+                    }
+
+                    // Get card info and show dashboard
+                    try {
+                        // Applet card ID (internal, not displayed)
+                        String appletCardId = profile.cardId;
+                        System.out.println("[DEBUG] Applet Card ID: " + appletCardId);
+
+                        // Get actual Card ID from database (most recent card)
+                        // TODO: Implement proper mapping between applet ID and desktop ID
+                        // For now, use the most recently created card
+                        String cardId = cardDAO.getMostRecentCardId();
+                        if (cardId == null) {
+                            throw new Exception(
+                                    "Không tìm thấy thẻ trong hệ thống.\nVui lòng liên hệ quản trị viên.");
                         }
+                        System.out.println("[DEBUG] Desktop Card ID: " + cardId);
+
+                        // Update database
+                        cardDAO.updateLastAccessed(cardId);
+                        cardDAO.logTransaction(cardId, "LOGIN", true, null);
+
+                        // Show success and then dashboard
+                        showSuccessMessage("Chào mừng!",
+                                "Xác thực thành công.\n\nĐang tải bảng điều khiển của bạn...");
+
+                        // Delay before showing dashboard
+                        new Thread(() -> {
+                            try {
+                                Thread.sleep(1500);
+                                javafx.application.Platform.runLater(() -> {
+                                    showDashboard(cardId, profile);
+                                });
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }).start();
 
-                        showAlert("Xác thực thất bại", errorMsg);
+                    } catch (Exception e) {
+                        showAlert("Lỗi hệ thống", "Xác thực thành công nhưng không thể tải thông tin tài khoản:\n\n"
+                                + e.getMessage());
                         resetLoginForm();
                     }
                 });
+            });
+        });
+    }
 
-            } catch (Exception e) {
-                javafx.application.Platform.runLater(() -> {
-                    statusLabel.setText("❌ Đã xảy ra lỗi xác thực.");
-                    showAlert("Lỗi kết nối",
-                            "Có lỗi khi giao tiếp với Thẻ thông minh của bạn:\n\n" +
-                                    e.getMessage() + "\n\n" +
-                                    "Vui lòng đảm bảo thẻ được cắm đúng cách và thử lại.");
-                    resetLoginForm();
-                });
-            }
-        }).start();
+    private void showPinFailure(CardService.PinVerificationResult pinResult) {
+        statusLabel.setText("❌ Mã PIN không đúng. Vui lòng kiểm tra và thử lại.");
+        String errorMsg = "Mã PIN bạn nhập không chính xác.\n\n";
+
+        if (pinResult.remainingTries > 0) {
+            errorMsg += "Số lần thử còn lại: " + pinResult.remainingTries + "\n\n";
+            errorMsg += "⚠️ Quá nhiều lần thử sai sẽ khóa thẻ của bạn.";
+        } else {
+            errorMsg += "🔒 Thẻ đã bị khóa do nhập sai PIN quá nhiều lần.\n\n";
+            errorMsg += "Vui lòng liên hệ quản trị viên để mở khóa.";
+        }
+
+        showAlert("Xác thực thất bại", errorMsg);
+        resetLoginForm();
+    }
+
+    private void showCardError(Throwable error) {
+        statusLabel.setText("❌ Đã xảy ra lỗi xác thực.");
+        showAlert("Lỗi kết nối",
+                "Có lỗi khi giao tiếp với Thẻ thông minh của bạn:\n\n" +
+                        CardService.getErrorMessage(error) + "\n\n" +
+                        "Vui lòng đảm bảo thẻ được cắm đúng cách và thử lại.");
+        resetLoginForm();
     }
 
     private void resetLoginForm() {
@@ -596,9 +598,10 @@ public class LoginViewController {
         statusLabel.getStyleClass().removeAll("status-error", "status-success", "status-loading");
     }
 
-    private void showDashboard(String cardId, int balance) {
-        // Create new citizen dashboard window (balance will be loaded from card)
-        CitizenDashboardController citizenController = new CitizenDashboardController(cardService, cardId);
+    private void showDashboard(String cardId, CardService.CardProfile profile) {
+        // Create new citizen dashboard window (profile already read at login)
+        CitizenDashboardController citizenController = new CitizenDashboardController(cardService, cardId,
+                profile);
 
         // Replace current scene - keep same window size
         javafx.stage.Stage stage = (javafx.stage.Stage) root.getScene().getWindow();
@@ -8,6 +8,12 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.stage.FileChooser;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import citizencard.service.CardService;
 import citizencard.util.PhotoUtils;
@@ -20,6 +26,8 @@ import citizencard.util.DataValidator;
  */
 public class PhotoManagementController {
 
+    private static final long PHOTO_TIMEOUT_SECONDS = 30;
+
     private CardService cardService;
 
     public PhotoManagementController(CardService cardService) {
@@ -123,51 +131,26 @@ public class PhotoManagementController {
     }
 
     private void loadCurrentPhoto(ImageView photoView, Label statusLabel) {
-        Thread loadThread = new Thread(() -> {
-            try {
-                if (!cardService.isConnected()) {
-                    javafx.application.Platform.runLater(() -> {
-                        statusLabel.setText("❌ Chưa kết nối thẻ");
-                        statusLabel.getStyleClass().add("status-error");
-                    });
-                    return;
-                }
-
-                // Add timeout protection - max 30 seconds
-                final byte[][] photoDataHolder = { null };
-                final Exception[] exceptionHolder = { null };
-
-                Thread downloadThread = new Thread(() -> {
-                    try {
-                        photoDataHolder[0] = cardService.downloadPhoto();
-                    } catch (Exception e) {
-                        exceptionHolder[0] = e;
-                    }
-                });
-                downloadThread.setDaemon(true);
-                downloadThread.start();
-
-                // Wait with timeout
-                downloadThread.join(30000); // 30 second timeout
+        if (!cardService.isConnected()) {
+            statusLabel.setText("❌ Chưa kết nối thẻ");
+            statusLabel.getStyleClass().add("status-error");
+            return;
+        }
 
-                if (downloadThread.isAlive()) {
-                    // Timeout occurred
-                    downloadThread.interrupt();
-                    javafx.application.Platform.runLater(() -> {
+        // Cached copy unless the photo on the card changed - max 30 seconds
+        // A real download is drawn chunk by chunk while it arrives
+        ProgressivePhoto progress = new ProgressivePhoto(photoView, statusLabel);
+        cardService.downloadAvatarCachedAsync(progress)
+                .orTimeout(PHOTO_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .whenComplete((photoData, error) -> javafx.application.Platform.runLater(() -> {
+                    progress.finish();
+                    if (error instanceof TimeoutException) {
                         statusLabel.setText("⏱️ Hết thời gian chờ - thử lại sau");
                         statusLabel.getStyleClass().add("status-error");
-                    });
-                    return;
-                }
-
-                if (exceptionHolder[0] != null) {
-                    throw exceptionHolder[0];
-                }
-
-                byte[] photoData = photoDataHolder[0];
-
-                javafx.application.Platform.runLater(() -> {
-                    if (photoData != null && photoData.length > 0) {
+                    } else if (error != null) {
+                        statusLabel.setText("❌ Lỗi: " + CardService.getErrorMessage(error));
+                        statusLabel.getStyleClass().add("status-error");
+                    } else if (photoData != null && photoData.length > 0) {
                         Image image = PhotoUtils.bytesToImage(photoData);
                         if (image != null) {
                             photoView.setImage(image);
@@ -183,17 +166,66 @@ public class PhotoManagementController {
                         statusLabel.setText("📷 Chưa có ảnh trong thẻ");
                         statusLabel.getStyleClass().removeAll("status-error", "status-success");
                     }
-                });
+                }));
+    }
 
-            } catch (Exception e) {
-                javafx.application.Platform.runLater(() -> {
-                    statusLabel.setText("❌ Lỗi: " + e.getMessage());
-                    statusLabel.getStyleClass().add("status-error");
-                });
+    /**
+     * Shows a photo while it downloads
+     * 
+     * Partial JPEGs are decoded off the card thread; if chunks arrive faster than
+     * they decode, only the latest one is drawn.
+     */
+    private static class ProgressivePhoto implements CardService.AvatarListener {
+        private final ImageView photoView;
+        private final Label statusLabel;
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        private final AtomicBoolean decoding = new AtomicBoolean();
+        private volatile int totalLength;
+        private volatile boolean finished;
+
+        ProgressivePhoto(ImageView photoView, Label statusLabel) {
+            this.photoView = photoView;
+            this.statusLabel = statusLabel;
+        }
+
+        @Override
+        public void onChunk(byte[] received, int length, int totalLength) {
+            if (length >= totalLength) {
+                return; // complete photo is shown from the download result
             }
-        });
-        loadThread.setDaemon(true); // Allow app to exit even if thread is running
-        loadThread.start();
+            this.totalLength = totalLength;
+            pending.set(java.util.Arrays.copyOf(received, length));
+            if (decoding.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                byte[] partial;
+                while (!finished && (partial = pending.getAndSet(null)) != null) {
+                    Image image = PhotoUtils.bytesToImage(partial, partial.length);
+                    int percent = partial.length * 100 / Math.max(1, totalLength);
+                    if (image != null) {
+                        javafx.application.Platform.runLater(() -> {
+                            if (!finished) {
+                                photoView.setImage(image);
+                                statusLabel.setText("⏳ Đang tải ảnh... " + percent + "%");
+                            }
+                        });
+                    }
+                }
+                decoding.set(false);
+                // A chunk may have arrived after the loop ended but before the flag was cleared
+            } while (!finished && pending.get() != null && decoding.compareAndSet(false, true));
+        }
+
+        /**
+         * Download over - ignore any partial image still being decoded (FX thread)
+         */
+        void finish() {
+            finished = true;
+        }
     }
 
     private void uploadPhotoToCard(VBox photoSection) {
@@ -231,32 +263,21 @@ public class PhotoManagementController {
         ButtonType cancelButton = new ButtonType("Hủy", ButtonBar.ButtonData.CANCEL_CLOSE);
         progressDialog.getDialogPane().getButtonTypes().add(cancelButton);
 
-        // Track if operation was cancelled
+        // Track if operation was cancelled (card I/O itself is not interrupted)
         final boolean[] cancelled = { false };
-        final Thread[] uploadThread = { null };
 
         // Handle cancel button
-        progressDialog.setOnCloseRequest(event -> {
-            cancelled[0] = true;
-            if (uploadThread[0] != null) {
-                uploadThread[0].interrupt();
-            }
-        });
+        progressDialog.setOnCloseRequest(event -> cancelled[0] = true);
 
         // Show dialog non-blocking
         progressDialog.show();
 
-        uploadThread[0] = new Thread(() -> {
+        // Compress off the card thread, then upload on card-owner thread
+        CompletableFuture.supplyAsync(() -> {
             try {
-                if (cancelled[0])
-                    return;
-
                 // Validate file
                 PhotoUtils.validatePhotoFile(selectedFile);
 
-                if (cancelled[0])
-                    return;
-
                 // Prepare photo for card
                 javafx.application.Platform.runLater(() -> {
                     if (!cancelled[0]) {
@@ -264,56 +285,42 @@ public class PhotoManagementController {
                     }
                 });
 
-                byte[] photoData = PhotoUtils.preparePhotoForCard(selectedFile);
-
-                if (cancelled[0])
-                    return;
-
-                // Upload to card
-                javafx.application.Platform.runLater(() -> {
-                    if (!cancelled[0]) {
-                        statusLabel.setText("Đang tải lên thẻ thông minh...");
-                    }
-                });
-
-                boolean success = cardService.uploadPhoto(photoData);
-
-                if (cancelled[0])
-                    return;
-
-                final byte[] finalPhotoData = photoData;
-                javafx.application.Platform.runLater(() -> {
-                    progressDialog.close();
+                return PhotoUtils.preparePhotoForCard(selectedFile);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }).thenCompose(photoData -> {
+            if (cancelled[0]) {
+                return CompletableFuture.completedFuture((byte[]) null);
+            }
 
-                    if (success) {
-                        showSuccessAlert("Tải ảnh thành công",
-                                "Ảnh đã được tải lên thẻ thành công!\n\n" +
-                                        "Kích thước: " + PhotoUtils.getPhotoInfo(finalPhotoData));
+            // Upload to card
+            javafx.application.Platform.runLater(() -> {
+                if (!cancelled[0]) {
+                    statusLabel.setText("Đang tải lên thẻ thông minh...");
+                }
+            });
 
-                        // Refresh display
-                        refreshPhotoDisplay(photoSection);
-                    } else {
-                        showErrorAlert("Tải ảnh thất bại", "Không thể tải ảnh lên thẻ.");
-                    }
-                });
+            return cardService.uploadAvatarAsync(photoData)
+                    .thenApply(success -> success ? photoData : new byte[0]);
+        }).whenComplete((photoData, error) -> javafx.application.Platform.runLater(() -> {
+            progressDialog.close();
 
-            } catch (InterruptedException e) {
-                // Thread was interrupted (cancelled)
+            if (cancelled[0]) {
                 System.out.println("[PHOTO] Upload cancelled by user");
-                javafx.application.Platform.runLater(() -> {
-                    progressDialog.close();
-                });
-            } catch (Exception e) {
-                if (!cancelled[0]) {
-                    javafx.application.Platform.runLater(() -> {
-                        progressDialog.close();
-                        showErrorAlert("Lỗi tải ảnh", "Không thể tải ảnh: " + e.getMessage());
-                    });
-                }
+            } else if (error != null) {
+                showErrorAlert("Lỗi tải ảnh", "Không thể tải ảnh: " + CardService.getErrorMessage(error));
+            } else if (photoData != null && photoData.length > 0) {
+                showSuccessAlert("Tải ảnh thành công",
+                        "Ảnh đã được tải lên thẻ thành công!\n\n" +
+                                "Kích thước: " + PhotoUtils.getPhotoInfo(photoData));
+
+                // Refresh display
+                refreshPhotoDisplay(photoSection);
+            } else {
+                showErrorAlert("Tải ảnh thất bại", "Không thể tải ảnh lên thẻ.");
             }
-        });
-        uploadThread[0].setDaemon(true); // Allow app to exit even if thread is running
-        uploadThread[0].start();
+        }));
     }
 
     private void downloadPhotoFromCard() {
@@ -347,61 +354,36 @@ public class PhotoManagementController {
         progressDialog.getDialogPane().getButtonTypes().add(cancelButton);
 
         final boolean[] cancelled = { false };
-        final Thread[] downloadThread = { null };
 
-        progressDialog.setOnCloseRequest(event -> {
-            cancelled[0] = true;
-            if (downloadThread[0] != null) {
-                downloadThread[0].interrupt();
-            }
-        });
+        progressDialog.setOnCloseRequest(event -> cancelled[0] = true);
 
         progressDialog.show();
 
-        downloadThread[0] = new Thread(() -> {
-            try {
-                if (cancelled[0])
-                    return;
-
-                byte[] photoData = cardService.downloadPhoto();
-
-                if (cancelled[0])
-                    return;
-
-                if (photoData == null || photoData.length == 0) {
-                    javafx.application.Platform.runLater(() -> {
-                        progressDialog.close();
-                        showErrorAlert("Không có ảnh", "Thẻ chưa có ảnh để tải xuống.");
-                    });
-                    return;
-                }
-
-                PhotoUtils.savePhotoToFile(photoData, saveFile);
-
-                if (cancelled[0])
-                    return;
-
-                javafx.application.Platform.runLater(() -> {
-                    progressDialog.close();
-                    showSuccessAlert("Tải xuống thành công",
-                            "Ảnh đã được lưu vào:\n" + saveFile.getPath() + "\n\n" +
-                                    "Kích thước: " + PhotoUtils.getPhotoInfo(photoData));
-                });
-
-            } catch (Exception e) {
-                if (!cancelled[0]) {
-                    javafx.application.Platform.runLater(() -> {
-                        progressDialog.close();
-                        showErrorAlert("Lỗi tải xuống", "Không thể tải ảnh: " + e.getMessage());
-                    });
-                } else {
-                    System.out.println("[PHOTO] Download cancelled by user");
-                    javafx.application.Platform.runLater(() -> progressDialog.close());
+        // Download on card-owner thread, save file off it
+        cardService.downloadAvatarAsync().thenApplyAsync(photoData -> {
+            if (!cancelled[0] && photoData != null && photoData.length > 0) {
+                try {
+                    PhotoUtils.savePhotoToFile(photoData, saveFile);
+                } catch (java.io.IOException e) {
+                    throw new CompletionException(e);
                 }
             }
-        });
-        downloadThread[0].setDaemon(true);
-        downloadThread[0].start();
+            return photoData;
+        }).whenComplete((photoData, error) -> javafx.application.Platform.runLater(() -> {
+            progressDialog.close();
+
+            if (cancelled[0]) {
+                System.out.println("[PHOTO] Download cancelled by user");
+            } else if (error != null) {
+                showErrorAlert("Lỗi tải xuống", "Không thể tải ảnh: " + CardService.getErrorMessage(error));
+            } else if (photoData == null || photoData.length == 0) {
+                showErrorAlert("Không có ảnh", "Thẻ chưa có ảnh để tải xuống.");
+            } else {
+                showSuccessAlert("Tải xuống thành công",
+                        "Ảnh đã được lưu vào:\n" + saveFile.getPath() + "\n\n" +
+                                "Kích thước: " + PhotoUtils.getPhotoInfo(photoData));
+            }
+        }));
     }
 
     private void refreshPhotoDisplay(VBox photoSection) {
@@ -1,5 +1,8 @@
 package citizencard.dao;
 
+import citizencard.util.PublicKeyCache;
+import citizencard.util.RSAUtils;
+
 import java.sql.*;
 import java.io.File;
 
@@ -15,9 +18,23 @@ public class CardDAO {
             + ";AUTO_SERVER=FALSE;DB_CLOSE_DELAY=-1";
     private static CardDAO instance;
 
+    private final ConnectionPool pool;
+    private final TransactionLogWriter logWriter;
+    private final CardSearchIndex searchIndex = new CardSearchIndex();
+    private final CardStats cardStats = new CardStats();
+    private final PublicKeyCache publicKeys = PublicKeyCache.getInstance();
+
     private CardDAO() {
         ensureDataDirectory();
+        pool = new ConnectionPool(ConnectionPool.Config.fromSystemProperties(DB_URL));
         initializeDatabase();
+        logWriter = new TransactionLogWriter(this::getConnection,
+                Integer.getInteger("citizencard.txlog.capacity", 4096),
+                Integer.getInteger("citizencard.txlog.batchSize", 64),
+                Long.getLong("citizencard.txlog.flushIntervalMillis", 200));
+        loadSearchIndex();
+        reloadCardStats();
+        publicKeys.setLoader(this::loadPublicKey);
     }
 
     public static synchronized CardDAO getInstance() {
@@ -36,7 +53,22 @@ public class CardDAO {
     }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL);
+        return pool.getConnection();
+    }
+
+    /**
+     * Connection pool counters (active/idle/created/evicted, acquire latency)
+     */
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * Flush queued transaction logs and close pooled connections - call once on application exit
+     */
+    public void shutdown() {
+        logWriter.shutdown();
+        pool.shutdown();
     }
 
     private void initializeDatabase() {
@@ -49,12 +81,77 @@ public class CardDAO {
             } else {
                 System.out.println("[INFO] Database already exists");
             }
+            createListingIndexes(conn);
+            createChallengeTable(conn);
         } catch (SQLException e) {
             System.err.println("❌ Error initializing database: " + e.getMessage());
             throw new RuntimeException("Failed to initialize database", e);
         }
     }
 
+    /**
+     * Indexes for keyset card/invoice listing (also added to databases created before paging)
+     */
+    private void createListingIndexes(Connection conn) throws SQLException {
+        String[] indexStatements = {
+                "CREATE INDEX IF NOT EXISTS idx_cards_registered ON registered_cards(registered_at DESC, id DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_cards_status_registered "
+                        + "ON registered_cards(card_status, registered_at DESC, id DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_invoices_card_created "
+                        + "ON invoices(card_id, created_at DESC, id DESC)"
+        };
+        for (String sql : indexStatements) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Challenge-response audit trail (also added to databases created before it existed)
+     */
+    private void createChallengeTable(Connection conn) throws SQLException {
+        String[] statements = {
+                "CREATE TABLE IF NOT EXISTS card_challenges (" +
+                        "id INTEGER PRIMARY KEY AUTO_INCREMENT," +
+                        "card_id TEXT NOT NULL," +
+                        "challenge TEXT NOT NULL," +
+                        "signature TEXT NOT NULL," +
+                        "verified BOOLEAN DEFAULT FALSE," +
+                        "created_at DATETIME DEFAULT CURRENT_TIMESTAMP," +
+                        "FOREIGN KEY (card_id) REFERENCES registered_cards(card_id) ON DELETE CASCADE" +
+                        ")",
+                "CREATE INDEX IF NOT EXISTS idx_challenges_card_id ON card_challenges(card_id)"
+        };
+        for (String sql : statements) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Build the card-ID search index (oldest first, so index order = registration order)
+     */
+    private void loadSearchIndex() {
+        String sql = "SELECT card_id, card_status FROM registered_cards ORDER BY registered_at, id";
+        long start = System.nanoTime();
+
+        try (Connection conn = getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                searchIndex.add(rs.getString("card_id"), rs.getString("card_status"));
+            }
+            System.out.println("[INFO] Card search index: " + searchIndex.size() + " cards in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        } catch (SQLException e) {
+            System.err.println("Error building card search index: " + e.getMessage());
+        }
+    }
+
     private boolean checkTablesExist(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
             ResultSet rs = stmt.executeQuery(
@@ -143,6 +240,9 @@ public class CardDAO {
 
             boolean result = stmt.executeUpdate() > 0;
             if (result) {
+                searchIndex.add(cardId, "ACTIVE");
+                cardStats.onRegistered("ACTIVE");
+                publicKeys.putEncoded(cardId, publicKey);
                 logTransaction(cardId, "CREATE_CARD", true, null);
                 System.out.println("[DB] Registered card: " + cardId);
             }
@@ -154,21 +254,107 @@ public class CardDAO {
         }
     }
 
+    // =====================================================
+    // CARD LISTING (keyset pagination)
+    // =====================================================
+
+    /**
+     * Card listing filter - null fields are not applied
+     */
+    public static class CardFilter {
+        public String status;
+        public String cardIdPrefix;
+        public java.time.LocalDateTime registeredFrom; // inclusive
+        public java.time.LocalDateTime registeredTo; // exclusive
+        public int pageSize = 50;
+    }
+
+    /**
+     * Position after the last row of a page: newest-first order is (timestamp, id) DESC
+     */
+    public static class PageCursor {
+        final Timestamp timestamp;
+        final int id;
+
+        PageCursor(Timestamp timestamp, int id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+    }
+
     /**
-     * Get all registered cards for admin dashboard
+     * One page of cards; next is null on the last page
+     */
+    public static class CardPage {
+        public final java.util.List<CardRecord> cards;
+        public final PageCursor next;
+
+        CardPage(java.util.List<CardRecord> cards, PageCursor next) {
+            this.cards = java.util.Collections.unmodifiableList(cards);
+            this.next = next;
+        }
+
+        public boolean hasMore() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Get one page of registered cards, newest first
      * Note: Personal info (name, phone) is stored encrypted on card, not in DB
+     *
+     * @param after Cursor from the previous page, or null for the first page
      */
-    public java.util.List<CardRecord> getAllCards() {
-        java.util.List<CardRecord> cards = new java.util.ArrayList<>();
-        String sql = "SELECT card_id, public_key, card_status, registered_at, last_accessed "
-                +
-                "FROM registered_cards ORDER BY registered_at DESC";
+    public CardPage getCardsPage(CardFilter filter, PageCursor after) {
+        int pageSize = Math.max(1, filter.pageSize);
+        StringBuilder sql = new StringBuilder("SELECT id, card_id, public_key, card_status, registered_at, last_accessed "
+                + "FROM registered_cards WHERE 1=1");
+        java.util.List<Object> params = new java.util.ArrayList<>();
+
+        if (filter.status != null) {
+            sql.append(" AND card_status = ?");
+            params.add(filter.status);
+        }
+        if (filter.cardIdPrefix != null && !filter.cardIdPrefix.isEmpty()) {
+            sql.append(" AND card_id LIKE ? ESCAPE '\\'");
+            params.add(escapeLike(filter.cardIdPrefix) + "%");
+        }
+        if (filter.registeredFrom != null) {
+            sql.append(" AND registered_at >= ?");
+            params.add(Timestamp.valueOf(filter.registeredFrom));
+        }
+        if (filter.registeredTo != null) {
+            sql.append(" AND registered_at < ?");
+            params.add(Timestamp.valueOf(filter.registeredTo));
+        }
+        if (after != null) {
+            sql.append(" AND (registered_at < ? OR (registered_at = ? AND id < ?))");
+            params.add(after.timestamp);
+            params.add(after.timestamp);
+            params.add(after.id);
+        }
+        // One extra row tells whether another page exists
+        sql.append(" ORDER BY registered_at DESC, id DESC LIMIT ?");
+        params.add(pageSize + 1);
+
+        java.util.List<CardRecord> cards = new java.util.ArrayList<>(pageSize);
+        PageCursor next = null;
 
         try (Connection conn = getConnection();
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
+                PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = stmt.executeQuery();
 
+            Timestamp lastRegisteredAt = null;
+            int lastId = 0;
             while (rs.next()) {
+                if (cards.size() == pageSize) {
+                    next = new PageCursor(lastRegisteredAt, lastId);
+                    break;
+                }
                 CardRecord record = new CardRecord();
                 record.cardId = rs.getString("card_id");
                 record.publicKey = rs.getString("public_key");
@@ -176,13 +362,55 @@ public class CardDAO {
                 record.registeredAt = rs.getString("registered_at");
                 record.lastAccessed = rs.getString("last_accessed");
                 cards.add(record);
+
+                lastRegisteredAt = rs.getTimestamp("registered_at");
+                lastId = rs.getInt("id");
             }
 
         } catch (SQLException e) {
             System.err.println("Error getting cards: " + e.getMessage());
         }
 
-        return cards;
+        return new CardPage(cards, next);
+    }
+
+    /**
+     * Find a registered card by exact ID (any status)
+     */
+    public CardRecord findCard(String cardId) {
+        String sql = "SELECT card_id, public_key, card_status, registered_at, last_accessed "
+                + "FROM registered_cards WHERE card_id = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, cardId);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                CardRecord record = new CardRecord();
+                record.cardId = rs.getString("card_id");
+                record.publicKey = rs.getString("public_key");
+                record.status = rs.getString("card_status");
+                record.registeredAt = rs.getString("registered_at");
+                record.lastAccessed = rs.getString("last_accessed");
+                return record;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding card: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Ranked card-ID search (exact, then prefix, then substring) from the in-memory index
+     *
+     * @param status Only cards with this status, or null for all
+     */
+    public java.util.List<CardSearchIndex.Match> searchCards(String query, String status, int limit) {
+        return searchIndex.search(query, status, limit);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     public boolean createInvoice(String cardId, long amount, String description) {
@@ -244,6 +472,109 @@ public class CardDAO {
         return invoices;
     }
 
+    /**
+     * One page of invoices; next is null on the last page
+     */
+    public static class InvoicePage {
+        public final java.util.List<InvoiceRecord> invoices;
+        public final PageCursor next;
+
+        InvoicePage(java.util.List<InvoiceRecord> invoices, PageCursor next) {
+            this.invoices = java.util.Collections.unmodifiableList(invoices);
+            this.next = next;
+        }
+
+        public boolean hasMore() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Get one page of a card's invoices, newest first
+     *
+     * @param after Cursor from the previous page, or null for the first page
+     */
+    public InvoicePage getInvoicesPage(String cardId, PageCursor after, int pageSize) {
+        pageSize = Math.max(1, pageSize);
+        String sql = "SELECT id, card_id, amount, description, status, created_at FROM invoices WHERE card_id = ?"
+                + (after != null ? " AND (created_at < ? OR (created_at = ? AND id < ?))" : "")
+                + " ORDER BY created_at DESC, id DESC LIMIT ?";
+
+        java.util.List<InvoiceRecord> invoices = new java.util.ArrayList<>(pageSize);
+        PageCursor next = null;
+
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int param = 1;
+            stmt.setString(param++, cardId);
+            if (after != null) {
+                stmt.setTimestamp(param++, after.timestamp);
+                stmt.setTimestamp(param++, after.timestamp);
+                stmt.setInt(param++, after.id);
+            }
+            // One extra row tells whether another page exists
+            stmt.setInt(param, pageSize + 1);
+            ResultSet rs = stmt.executeQuery();
+
+            Timestamp lastCreatedAt = null;
+            int lastId = 0;
+            while (rs.next()) {
+                if (invoices.size() == pageSize) {
+                    next = new PageCursor(lastCreatedAt, lastId);
+                    break;
+                }
+                InvoiceRecord record = new InvoiceRecord();
+                record.id = rs.getInt("id");
+                record.cardId = rs.getString("card_id");
+                record.amount = rs.getLong("amount");
+                record.description = rs.getString("description");
+                record.status = rs.getString("status");
+                record.createdAt = rs.getString("created_at");
+                invoices.add(record);
+
+                lastCreatedAt = rs.getTimestamp("created_at");
+                lastId = record.id;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting invoices: " + e.getMessage());
+        }
+        return new InvoicePage(invoices, next);
+    }
+
+    /**
+     * Invoice count and amount per status for one card
+     */
+    public static class InvoiceTotals {
+        public long pendingCount;
+        public long pendingAmount;
+        public long paidCount;
+        public long paidAmount;
+    }
+
+    public InvoiceTotals getInvoiceTotals(String cardId) {
+        InvoiceTotals totals = new InvoiceTotals();
+        String sql = "SELECT status, COUNT(*), COALESCE(SUM(amount), 0) FROM invoices WHERE card_id = ? GROUP BY status";
+
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, cardId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                if ("PENDING".equals(rs.getString(1))) {
+                    totals.pendingCount = rs.getLong(2);
+                    totals.pendingAmount = rs.getLong(3);
+                } else if ("PAID".equals(rs.getString(1))) {
+                    totals.paidCount = rs.getLong(2);
+                    totals.paidAmount = rs.getLong(3);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting invoice totals: " + e.getMessage());
+        }
+        return totals;
+    }
+
     /**
      * Pay an invoice (update status to PAID)
      */
@@ -442,25 +773,28 @@ public class CardDAO {
     }
 
     /**
-     * Get card count by status
+     * Get card count by status (from the maintained counters, no query)
      */
     public int getCardCountByStatus(String status) {
-        String sql = status == null ? "SELECT COUNT(*) FROM registered_cards"
-                : "SELECT COUNT(*) FROM registered_cards WHERE card_status = ?";
+        return (int) cardStats.snapshot().count(status);
+    }
 
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-            if (status != null) {
-                stmt.setString(1, status);
-            }
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
+    /**
+     * Immutable card counts per status for dashboards
+     */
+    public CardStats.Snapshot getCardStats() {
+        return cardStats.snapshot();
+    }
+
+    /**
+     * Recount cards with one GROUP BY (e.g. after editing the database outside the app)
+     */
+    public void reloadCardStats() {
+        try (Connection conn = getConnection()) {
+            cardStats.load(conn);
         } catch (SQLException e) {
             System.err.println("Error counting cards: " + e.getMessage());
         }
-        return 0;
     }
 
     /**
@@ -475,6 +809,73 @@ public class CardDAO {
         public String lastAccessed;
     }
 
+    // =====================================================
+    // CHALLENGE AUDIT
+    // =====================================================
+
+    /**
+     * Stored challenge-response with the card's registered public key
+     */
+    public static class ChallengeRecord {
+        public long id;
+        public String cardId;
+        public String challenge;
+        public String signature; // Base64
+        public String publicKey; // Base64 card blob, null if the card is no longer registered
+        public boolean verified; // result at the time of the challenge
+    }
+
+    /**
+     * Keep a challenge-response for later audits (signature stored as Base64)
+     */
+    public boolean recordChallenge(String cardId, String challenge, byte[] signature, boolean verified) {
+        String sql = "INSERT INTO card_challenges (card_id, challenge, signature, verified) VALUES (?, ?, ?, ?)";
+
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, cardId);
+            stmt.setString(2, challenge);
+            stmt.setString(3, java.util.Base64.getEncoder().encodeToString(signature));
+            stmt.setBoolean(4, verified);
+            return stmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            System.err.println("Error recording challenge: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Hand every stored challenge to the consumer, in id order, without building a list
+     * 
+     * @return Number of records visited
+     */
+    public long forEachChallenge(java.util.function.Consumer<ChallengeRecord> consumer) throws SQLException {
+        String sql = "SELECT c.id, c.card_id, c.challenge, c.signature, c.verified, r.public_key "
+                + "FROM card_challenges c LEFT JOIN registered_cards r ON r.card_id = c.card_id ORDER BY c.id";
+        long count = 0;
+
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(500);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ChallengeRecord record = new ChallengeRecord();
+                    record.id = rs.getLong(1);
+                    record.cardId = rs.getString(2);
+                    record.challenge = rs.getString(3);
+                    record.signature = rs.getString(4);
+                    record.verified = rs.getBoolean(5);
+                    record.publicKey = rs.getString(6);
+                    consumer.accept(record);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
     public static class TransactionRecord {
         public String cardId;
         public String type;
@@ -486,6 +887,9 @@ public class CardDAO {
         java.util.List<TransactionRecord> logs = new java.util.ArrayList<>();
         String sql = "SELECT card_id, operation_type, timestamp, success FROM transaction_logs ORDER BY timestamp DESC LIMIT ?";
 
+        // Include records still waiting in the async writer
+        logWriter.flush();
+
         try (Connection conn = getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
@@ -572,6 +976,28 @@ public class CardDAO {
         return null;
     }
 
+    /**
+     * Parsed public key of an ACTIVE card (shared PublicKeyCache - DB only on first use)
+     */
+    public java.security.PublicKey getParsedPublicKey(String cardId) {
+        return publicKeys.get(cardId);
+    }
+
+    /**
+     * PublicKeyCache loader: registered key of an ACTIVE card, or null
+     */
+    private java.security.PublicKey loadPublicKey(String cardId) {
+        String encoded = getPublicKey(cardId);
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            return RSAUtils.generatePublicKeyFromBytes(java.util.Base64.getDecoder().decode(encoded));
+        } catch (IllegalArgumentException e) {
+            return null; // placeholder key (simplified applet without RSA)
+        }
+    }
+
     /**
      * Update last accessed time
      */
@@ -593,39 +1019,60 @@ public class CardDAO {
      * Block a card
      */
     public boolean blockCard(String cardId) {
-        String sql = "UPDATE registered_cards SET card_status = 'BLOCKED' WHERE card_id = ?";
+        return updateCardStatus(cardId, "BLOCKED");
+    }
 
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Change card status (ACTIVE / BLOCKED / EXPIRED), keeping search index and stats in step
+     */
+    public boolean updateCardStatus(String cardId, String status) {
+        String selectSql = "SELECT card_status FROM registered_cards WHERE card_id = ? FOR UPDATE";
+        String updateSql = "UPDATE registered_cards SET card_status = ? WHERE card_id = ?";
 
-            stmt.setString(1, cardId);
-            return stmt.executeUpdate() > 0;
+        try (Connection conn = getConnection();
+                PreparedStatement select = conn.prepareStatement(selectSql);
+                PreparedStatement update = conn.prepareStatement(updateSql)) {
+
+            // Read old status under a row lock so concurrent changes count once
+            conn.setAutoCommit(false);
+            select.setString(1, cardId);
+            ResultSet rs = select.executeQuery();
+            if (!rs.next()) {
+                conn.rollback();
+                return false;
+            }
+            String oldStatus = rs.getString(1);
+
+            update.setString(1, status);
+            update.setString(2, cardId);
+            update.executeUpdate();
+            conn.commit();
+
+            searchIndex.updateStatus(cardId, status);
+            cardStats.onStatusChanged(oldStatus, status);
+            if (!"ACTIVE".equals(status)) {
+                // Blocked/expired cards must not authenticate with a cached key
+                publicKeys.invalidate(cardId);
+            }
+            return true;
 
         } catch (SQLException e) {
-            System.err.println("Error blocking card: " + e.getMessage());
+            System.err.println("Error updating card status: " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * Log transaction for audit
+     * Log transaction for audit (queued, written in batches by TransactionLogWriter)
      */
     public void logTransaction(String cardId, String operationType, boolean success, String errorMessage) {
-        String sql = "INSERT INTO transaction_logs (card_id, operation_type, timestamp, success, error_message) " +
-                "VALUES (?, ?, CURRENT_TIMESTAMP, ?, ?)";
-
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, cardId);
-            stmt.setString(2, operationType);
-            stmt.setBoolean(3, success);
-            stmt.setString(4, errorMessage);
-
-            stmt.executeUpdate();
+        logWriter.append(cardId, operationType, success, errorMessage);
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Error logging transaction: " + e.getMessage());
-        }
+    /**
+     * Write all queued transaction logs now
+     */
+    public void flushTransactionLogs() {
+        logWriter.flush();
     }
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package citizencard.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Card Search Index - in-memory n-gram index over registered card IDs
+ *
+ * Every card ID is split into 2- and 3-grams; each gram maps to a sorted posting
+ * list of internal ids (assigned in insertion order, so higher = newer).
+ * A query intersects the postings of its own grams and verifies the survivors.
+ *
+ * Ranking: exact match, then prefix matches, then substring matches by match
+ * position; ties go to the most recently registered card.
+ */
+public class CardSearchIndex {
+
+    private static final int MIN_GRAM = 2;
+    private static final int MAX_GRAM = 3;
+
+    public enum MatchType {
+        EXACT, PREFIX, SUBSTRING
+    }
+
+    /**
+     * One ranked search hit
+     */
+    public static class Match {
+        public final String cardId;
+        public final String status;
+        public final MatchType type;
+        public final int position;
+
+        Match(String cardId, String status, MatchType type, int position) {
+            this.cardId = cardId;
+            this.status = status;
+            this.type = type;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Growable sorted int list (ids are only ever appended in increasing order)
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<String> cardIds = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> statuses = new ArrayList<>();
+    private final Map<String, Integer> idByKey = new HashMap<>();
+    private final Map<String, Postings> grams = new HashMap<>();
+
+    // =====================================================
+    // UPDATES
+    // =====================================================
+
+    /**
+     * Add a card (or update its status if already indexed)
+     */
+    public void add(String cardId, String status) {
+        String key = normalize(cardId);
+        lock.writeLock().lock();
+        try {
+            Integer existing = idByKey.get(key);
+            if (existing != null) {
+                statuses.set(existing, status);
+                return;
+            }
+            int id = cardIds.size();
+            cardIds.add(cardId);
+            keys.add(key);
+            statuses.add(status);
+            idByKey.put(key, id);
+
+            for (String gram : gramsOf(key)) {
+                grams.computeIfAbsent(gram, g -> new Postings()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Change the status of an indexed card (no-op for unknown IDs)
+     */
+    public void updateStatus(String cardId, String status) {
+        lock.writeLock().lock();
+        try {
+            Integer id = idByKey.get(normalize(cardId));
+            if (id != null) {
+                statuses.set(id, status);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return cardIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // =====================================================
+    // SEARCH
+    // =====================================================
+
+    /**
+     * Ranked prefix/substring search (case-insensitive)
+     *
+     * @param status Only cards with this status, or null for all
+     * @param limit  Maximum number of results
+     */
+    public List<Match> search(String query, String status, int limit) {
+        List<Match> results = new ArrayList<>();
+        if (query == null || limit <= 0) {
+            return results;
+        }
+        String q = normalize(query.trim());
+        if (q.isEmpty()) {
+            return results;
+        }
+
+        lock.readLock().lock();
+        try {
+            Integer exact = idByKey.get(q);
+            if (exact != null && matchesStatus(exact, status)) {
+                results.add(new Match(cardIds.get(exact), statuses.get(exact), MatchType.EXACT, 0));
+            }
+
+            int wanted = limit - results.size();
+            if (wanted <= 0) {
+                return results; // limit filled by the exact match
+            }
+            List<Match> prefix = new ArrayList<>();
+            // Best substring hits so far, sorted by (position, arrival); arrival order = newest first
+            long[] bestKeys = new long[wanted];
+            int[] bestIds = new int[wanted];
+            int bestCount = 0;
+            int arrival = 0;
+
+            CandidateScan scan = candidates(q);
+            for (int id = scan.next(); id >= 0; id = scan.next()) {
+                if ((exact != null && id == exact) || !matchesStatus(id, status)) {
+                    continue;
+                }
+                int position = keys.get(id).indexOf(q);
+                if (position == 0) {
+                    prefix.add(new Match(cardIds.get(id), statuses.get(id), MatchType.PREFIX, 0));
+                    // Candidates come newest first: nothing later can outrank these
+                    if (prefix.size() >= wanted) {
+                        break;
+                    }
+                } else if (position > 0) {
+                    long key = ((long) position << 32) | arrival++;
+                    if (bestCount == wanted && key >= bestKeys[wanted - 1]) {
+                        continue;
+                    }
+                    int i = bestCount < wanted ? bestCount++ : wanted - 1;
+                    while (i > 0 && bestKeys[i - 1] > key) {
+                        bestKeys[i] = bestKeys[i - 1];
+                        bestIds[i] = bestIds[i - 1];
+                        i--;
+                    }
+                    bestKeys[i] = key;
+                    bestIds[i] = id;
+                }
+            }
+
+            for (Match m : prefix) {
+                results.add(m);
+            }
+            for (int i = 0; i < bestCount && results.size() < limit; i++) {
+                int id = bestIds[i];
+                results.add(new Match(cardIds.get(id), statuses.get(id), MatchType.SUBSTRING,
+                        (int) (bestKeys[i] >>> 32)));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean matchesStatus(int id, String status) {
+        return status == null || status.equals(statuses.get(id));
+    }
+
+    /**
+     * Ids containing every gram of q, newest first (all ids for 1-char queries)
+     */
+    private interface CandidateScan {
+        int next();
+    }
+
+    private CandidateScan candidates(String q) {
+        if (q.length() < MIN_GRAM) {
+            int[] cursor = { cardIds.size() };
+            return () -> --cursor[0];
+        }
+
+        // Longest gram size the query allows gives the shortest posting lists
+        Set<String> queryGrams = new HashSet<>();
+        addGrams(q, Math.min(MAX_GRAM, q.length()), queryGrams);
+        Postings[] lists = new Postings[queryGrams.size()];
+        int n = 0;
+        for (String gram : queryGrams) {
+            Postings postings = grams.get(gram);
+            if (postings == null) {
+                return () -> -1;
+            }
+            lists[n++] = postings;
+        }
+        // Walk the shortest list backwards; the others follow with their own cursors (merge intersection)
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        Postings driver = lists[0];
+        int[] cursors = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            cursors[i] = lists[i].size;
+        }
+        return () -> {
+            outer: while (--cursors[0] >= 0) {
+                int id = driver.ids[cursors[0]];
+                for (int i = 1; i < lists.length; i++) {
+                    int[] ids = lists[i].ids;
+                    int c = cursors[i];
+                    while (c > 0 && ids[c - 1] > id) {
+                        c--;
+                    }
+                    cursors[i] = c;
+                    if (c == 0 || ids[c - 1] != id) {
+                        continue outer;
+                    }
+                }
+                return id;
+            }
+            return -1;
+        };
+    }
+
+    private static Set<String> gramsOf(String key) {
+        Set<String> result = new HashSet<>();
+        for (int n = MIN_GRAM; n <= MAX_GRAM; n++) {
+            addGrams(key, n, result);
+        }
+        return result;
+    }
+
+    private static void addGrams(String key, int n, Set<String> out) {
+        for (int i = 0; i + n <= key.length(); i++) {
+            out.add(key.substring(i, i + n));
+        }
+    }
+
+    private static String normalize(String cardId) {
+        return cardId.toUpperCase(Locale.ROOT);
+    }
+}
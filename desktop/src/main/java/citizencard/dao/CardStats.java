@@ -0,0 +1,111 @@
+package citizencard.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Card Stats - card counts per status for dashboards
+ *
+ * Loaded once with a single GROUP BY, then kept current by CardDAO on every
+ * registration and status change. Readers get an immutable Snapshot, so a
+ * dashboard render costs the same regardless of table size.
+ */
+public class CardStats {
+
+    /**
+     * Immutable card counts
+     */
+    public static class Snapshot {
+        public final Map<String, Long> byStatus;
+        public final long total;
+        public final long takenAtMillis;
+
+        Snapshot(Map<String, Long> byStatus) {
+            this.byStatus = Collections.unmodifiableMap(byStatus);
+            long sum = 0;
+            for (long n : byStatus.values()) {
+                sum += n;
+            }
+            this.total = sum;
+            this.takenAtMillis = System.currentTimeMillis();
+        }
+
+        /**
+         * Count for one status (null = all cards)
+         */
+        public long count(String status) {
+            return status == null ? total : byStatus.getOrDefault(status, 0L);
+        }
+
+        public long getActive() {
+            return count("ACTIVE");
+        }
+
+        public long getBlocked() {
+            return count("BLOCKED");
+        }
+
+        public long getExpired() {
+            return count("EXPIRED");
+        }
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(new Snapshot(new TreeMap<>()));
+
+    /**
+     * (Re)load all counts from the database
+     */
+    public void load(Connection conn) throws SQLException {
+        Map<String, Long> counts = new TreeMap<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SELECT card_status, COUNT(*) FROM registered_cards GROUP BY card_status")) {
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        current.set(new Snapshot(counts));
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * A new card was registered
+     */
+    void onRegistered(String status) {
+        adjust(null, status);
+    }
+
+    /**
+     * A card moved from oldStatus to newStatus
+     */
+    void onStatusChanged(String oldStatus, String newStatus) {
+        if (oldStatus != null && !oldStatus.equals(newStatus)) {
+            adjust(oldStatus, newStatus);
+        }
+    }
+
+    private void adjust(String decrement, String increment) {
+        current.updateAndGet(snapshot -> {
+            Map<String, Long> counts = new TreeMap<>(snapshot.byStatus);
+            if (decrement != null) {
+                counts.merge(decrement, -1L, Long::sum);
+                if (counts.get(decrement) <= 0) {
+                    counts.remove(decrement);
+                }
+            }
+            if (increment != null) {
+                counts.merge(increment, 1L, Long::sum);
+            }
+            return new Snapshot(counts);
+        });
+    }
+}
@@ -0,0 +1,331 @@
+package citizencard.dao;
+
+import citizencard.util.LatencyHistogram;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection Pool - bounded JDBC pool for the embedded H2 database
+ *
+ * Connections handed out are proxies: close() returns the physical connection
+ * to the pool, so DAO code keeps using try-with-resources unchanged.
+ * Idle connections are validated before reuse and evicted after idleTimeout.
+ */
+public class ConnectionPool {
+
+    /**
+     * Pool settings (defaults overridable with -Dcitizencard.db.pool.* properties)
+     */
+    public static class Config {
+        public final String url;
+        public int maxSize = 8;
+        public int minIdle = 1;
+        public long acquireTimeoutMillis = 5000;
+        public long validateAfterIdleMillis = 5000;
+        public int validationTimeoutSeconds = 2;
+        public long idleTimeoutMillis = 300_000;
+        public long evictionIntervalMillis = 60_000;
+
+        public Config(String url) {
+            this.url = url;
+        }
+
+        public static Config fromSystemProperties(String url) {
+            Config config = new Config(url);
+            config.maxSize = Math.max(1, Integer.getInteger("citizencard.db.pool.size", config.maxSize));
+            config.minIdle = Math.max(0, Math.min(config.maxSize,
+                    Integer.getInteger("citizencard.db.pool.minIdle", config.minIdle)));
+            config.acquireTimeoutMillis = Long.getLong("citizencard.db.pool.acquireTimeoutMillis",
+                    config.acquireTimeoutMillis);
+            config.validateAfterIdleMillis = Long.getLong("citizencard.db.pool.validateAfterIdleMillis",
+                    config.validateAfterIdleMillis);
+            config.idleTimeoutMillis = Long.getLong("citizencard.db.pool.idleTimeoutMillis",
+                    config.idleTimeoutMillis);
+            config.evictionIntervalMillis = Math.max(1000, Long.getLong("citizencard.db.pool.evictionIntervalMillis",
+                    config.evictionIntervalMillis));
+            return config;
+        }
+    }
+
+    private static class PooledConnection {
+        final Connection physical;
+        volatile long lastUsedNanos = System.nanoTime();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    private final Config config;
+    private final Semaphore permits;
+    // Most recently returned first, so hot connections stay hot and old ones age out at the tail
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+
+    public ConnectionPool(Config config) {
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize, true);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, config.evictionIntervalMillis,
+                config.evictionIntervalMillis, TimeUnit.MILLISECONDS);
+
+        System.out.println("[DB-POOL] max=" + config.maxSize + ", minIdle=" + config.minIdle
+                + ", idleTimeout=" + config.idleTimeoutMillis + " ms");
+    }
+
+    // =====================================================
+    // BORROW / RETURN
+    // =====================================================
+
+    /**
+     * Borrow a connection (waits up to acquireTimeoutMillis when all are in use)
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLException("Connection pool exhausted (" + config.maxSize + " in use for "
+                        + config.acquireTimeoutMillis + " ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeIdleOrCreate();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        active.incrementAndGet();
+        borrowed.increment();
+        acquireLatency.recordNanos(System.nanoTime() - start);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new Handle(pooled));
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pooled.lastUsedNanos);
+            if (idleMillis < config.validateAfterIdleMillis || isValid(pooled)) {
+                return pooled;
+            }
+            validationFailures.increment();
+            destroy(pooled);
+        }
+        Connection physical = DriverManager.getConnection(config.url);
+        created.increment();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(config.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        active.decrementAndGet();
+        try {
+            if (closed || broken || pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            // Hand the next borrower a clean session
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsedNanos = System.nanoTime();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        destroyed.increment();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.err.println("[DB-POOL] Error closing connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Logical connection given to callers; close() returns it to the pool once
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+        private boolean broken;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection already returned to pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // SQLSTATE class 08 = connection exception, don't recycle this one
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+                        broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+
+    // =====================================================
+    // EVICTION / SHUTDOWN
+    // =====================================================
+
+    /**
+     * Close connections idle longer than idleTimeout, keeping minIdle warm
+     */
+    void evictIdle() {
+        long now = System.nanoTime();
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && idle.size() > config.minIdle) {
+            PooledConnection pooled = oldestFirst.next();
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - pooled.lastUsedNanos);
+            if (idleMillis >= config.idleTimeoutMillis && idle.remove(pooled)) {
+                evicted.increment();
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * Close idle connections and stop eviction; borrowed ones close when returned
+     */
+    public void shutdown() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+        System.out.println("[DB-POOL] Shut down: " + getStats());
+    }
+
+    // =====================================================
+    // METRICS
+    // =====================================================
+
+    /**
+     * Immutable pool counters
+     */
+    public static class Stats {
+        public final int maxSize;
+        public final int active;
+        public final int idle;
+        public final long created;
+        public final long destroyed;
+        public final long borrowed;
+        public final long timeouts;
+        public final long validationFailures;
+        public final long evicted;
+        public final long acquireP50Micros;
+        public final long acquireP99Micros;
+        public final long acquireMaxMicros;
+
+        Stats(ConnectionPool pool) {
+            maxSize = pool.config.maxSize;
+            active = pool.active.get();
+            idle = pool.idle.size();
+            created = pool.created.sum();
+            destroyed = pool.destroyed.sum();
+            borrowed = pool.borrowed.sum();
+            timeouts = pool.timeouts.sum();
+            validationFailures = pool.validationFailures.sum();
+            evicted = pool.evicted.sum();
+            acquireP50Micros = pool.acquireLatency.getPercentileMicros(50);
+            acquireP99Micros = pool.acquireLatency.getPercentileMicros(99);
+            acquireMaxMicros = pool.acquireLatency.getMaxMicros();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("active=%d/%d idle=%d created=%d destroyed=%d borrowed=%d timeouts=%d "
+                    + "invalid=%d evicted=%d acquire p50=%dus p99=%dus max=%dus",
+                    active, maxSize, idle, created, destroyed, borrowed, timeouts, validationFailures, evicted,
+                    acquireP50Micros, acquireP99Micros, acquireMaxMicros);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(this);
+    }
+}
@@ -0,0 +1,237 @@
+package citizencard.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transaction Log Writer - append-only audit pipeline for transaction_logs
+ *
+ * Callers enqueue events without touching the database; a background thread
+ * writes them in JDBC batches when batchSize events are waiting or every
+ * flushIntervalMillis. When the queue is full the caller writes its own event
+ * synchronously, so audit records are never dropped for lack of space.
+ */
+public class TransactionLogWriter {
+
+    /**
+     * Source of database connections (CardDAO's pool)
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    private static final String INSERT_SQL = "INSERT INTO transaction_logs "
+            + "(card_id, operation_type, timestamp, success, error_message) VALUES (?, ?, ?, ?, ?)";
+
+    private static class LogEvent {
+        final String cardId;
+        final String operationType;
+        final Timestamp timestamp;
+        final boolean success;
+        final String errorMessage;
+
+        LogEvent(String cardId, String operationType, boolean success, String errorMessage) {
+            this.cardId = cardId;
+            this.operationType = operationType;
+            this.timestamp = new Timestamp(System.currentTimeMillis());
+            this.success = success;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private final ConnectionSource connections;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    // Lock-free queue; size is tracked separately to enforce the bound without locking
+    private final ConcurrentLinkedQueue<LogEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger appending = new AtomicInteger(); // appends between running check and offer
+    private final Object writeLock = new Object();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public TransactionLogWriter(ConnectionSource connections, int capacity, int batchSize, long flushIntervalMillis) {
+        this.connections = connections;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, Math.min(batchSize, this.capacity));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+
+        writer = new Thread(this::runWriter, "txlog-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue one audit record (returns immediately unless the queue is full)
+     */
+    public void append(String cardId, String operationType, boolean success, String errorMessage) {
+        LogEvent event = new LogEvent(cardId, operationType, success, errorMessage);
+        enqueued.increment();
+
+        // Counted before the running check, so shutdown() can wait for this offer
+        appending.incrementAndGet();
+        try {
+            if (running && tryReserve()) {
+                queue.offer(event);
+                if (size.get() >= batchSize) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+        } finally {
+            appending.decrementAndGet();
+        }
+
+        // Full or shutting down: back-pressure the caller instead of losing the record
+        overflowed.increment();
+        List<LogEvent> single = new ArrayList<>(1);
+        single.add(event);
+        synchronized (writeLock) {
+            writeBatch(single);
+        }
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // =====================================================
+    // WRITER
+    // =====================================================
+
+    private void runWriter() {
+        while (running) {
+            if (size.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Write everything queued so far (blocks until done)
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            List<LogEvent> batch = new ArrayList<>(batchSize);
+            LogEvent event;
+            while ((event = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(event);
+                if (batch.size() == batchSize) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        }
+    }
+
+    private void writeBatch(List<LogEvent> batch) {
+        try (Connection conn = connections.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+            try {
+                for (LogEvent e : batch) {
+                    bind(stmt, e);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                written.add(batch.size());
+                batches.increment();
+                return;
+            } catch (SQLException e) {
+                conn.rollback();
+                stmt.clearBatch();
+            }
+
+            // One bad row (e.g. unknown card_id) must not take the rest of the batch with it
+            conn.setAutoCommit(true);
+            for (LogEvent e : batch) {
+                try {
+                    bind(stmt, e);
+                    stmt.executeUpdate();
+                    written.increment();
+                } catch (SQLException rowError) {
+                    failed.increment();
+                    System.err.println("Error logging transaction: " + rowError.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            failed.add(batch.size());
+            System.err.println("Error logging " + batch.size() + " transaction(s): " + e.getMessage());
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, LogEvent e) throws SQLException {
+        stmt.setString(1, e.cardId);
+        stmt.setString(2, e.operationType);
+        stmt.setTimestamp(3, e.timestamp);
+        stmt.setBoolean(4, e.success);
+        stmt.setString(5, e.errorMessage);
+    }
+
+    /**
+     * Stop the writer thread and flush remaining events
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Appends that saw running == true may still be about to offer
+        while (appending.get() > 0) {
+            Thread.onSpinWait();
+        }
+        flush();
+        System.out.println("[TXLOG] Shut down: " + getStats());
+    }
+
+    // =====================================================
+    // METRICS
+    // =====================================================
+
+    public int getPendingCount() {
+        return size.get();
+    }
+
+    public String getStats() {
+        return String.format("enqueued=%d written=%d batches=%d pending=%d overflowed=%d failed=%d",
+                enqueued.sum(), written.sum(), batches.sum(), size.get(), overflowed.sum(), failed.sum());
+    }
+}
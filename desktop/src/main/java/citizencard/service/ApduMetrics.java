@@ -0,0 +1,259 @@
+package citizencard.service;
+
+import citizencard.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * APDU Metrics - latency histograms and status word counters per (INS, P1, P2)
+ *
+ * Recording is lock-free; snapshot() returns an immutable copy for UI / reports.
+ * startPeriodicDump() writes the report to a local file at a fixed rate.
+ */
+public class ApduMetrics {
+
+    /**
+     * Label for a command key in reports (e.g. CardService function description)
+     */
+    @FunctionalInterface
+    public interface CommandLabeler {
+        String label(byte ins, byte p1, byte p2);
+    }
+
+    private static class CommandStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final ConcurrentHashMap<Integer, LongAdder> statusWords = new ConcurrentHashMap<>();
+    }
+
+    private final ConcurrentHashMap<Integer, CommandStats> stats = new ConcurrentHashMap<>();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final AtomicLong startedAtMillis = new AtomicLong(System.currentTimeMillis());
+
+    private ScheduledExecutorService dumpScheduler;
+
+    /**
+     * Record one APDU exchange
+     *
+     * @param sw            Status word (ApduTrace.SW_NO_RESPONSE if transmit failed)
+     * @param durationNanos Round trip time
+     */
+    public void record(byte ins, byte p1, byte p2, int sw, int commandLength, int responseLength,
+            long durationNanos) {
+        int key = ((ins & 0xFF) << 16) | ((p1 & 0xFF) << 8) | (p2 & 0xFF);
+        CommandStats command = stats.computeIfAbsent(key, k -> new CommandStats());
+        command.latency.recordNanos(durationNanos);
+        command.statusWords.computeIfAbsent(sw, k -> new LongAdder()).increment();
+        bytesSent.add(commandLength);
+        bytesReceived.add(responseLength);
+    }
+
+    /**
+     * Clear all counters and restart throughput window
+     */
+    public void reset() {
+        stats.clear();
+        bytesSent.reset();
+        bytesReceived.reset();
+        startedAtMillis.set(System.currentTimeMillis());
+    }
+
+    // =====================================================
+    // SNAPSHOT
+    // =====================================================
+
+    /**
+     * Immutable stats of one (INS, P1, P2)
+     */
+    public static class CommandSnapshot {
+        public final byte ins;
+        public final byte p1;
+        public final byte p2;
+        public final long count;
+        public final long successCount;
+        public final long failureCount;
+        public final Map<Integer, Long> statusWords;
+        public final long minMicros;
+        public final double meanMicros;
+        public final long p50Micros;
+        public final long p90Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+
+        CommandSnapshot(int key, CommandStats stats) {
+            ins = (byte) (key >> 16);
+            p1 = (byte) (key >> 8);
+            p2 = (byte) key;
+
+            Map<Integer, Long> sw = new TreeMap<>();
+            long success = 0;
+            long total = 0;
+            for (Map.Entry<Integer, LongAdder> e : stats.statusWords.entrySet()) {
+                long n = e.getValue().sum();
+                sw.put(e.getKey(), n);
+                total += n;
+                if (e.getKey() == 0x9000) {
+                    success = n;
+                }
+            }
+            statusWords = Collections.unmodifiableMap(sw);
+            count = total;
+            successCount = success;
+            failureCount = total - success;
+
+            minMicros = stats.latency.getMinMicros();
+            meanMicros = stats.latency.getMeanMicros();
+            p50Micros = stats.latency.getPercentileMicros(50);
+            p90Micros = stats.latency.getPercentileMicros(90);
+            p99Micros = stats.latency.getPercentileMicros(99);
+            maxMicros = stats.latency.getMaxMicros();
+        }
+    }
+
+    /**
+     * Immutable view of all metrics
+     */
+    public static class Snapshot {
+        public final long takenAtMillis;
+        public final long windowMillis;
+        public final long totalCommands;
+        public final long totalFailures;
+        public final long bytesSent;
+        public final long bytesReceived;
+        public final List<CommandSnapshot> commands;
+
+        Snapshot(long takenAtMillis, long windowMillis, long bytesSent, long bytesReceived,
+                List<CommandSnapshot> commands) {
+            this.takenAtMillis = takenAtMillis;
+            this.windowMillis = windowMillis;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.commands = Collections.unmodifiableList(commands);
+
+            long total = 0;
+            long failures = 0;
+            for (CommandSnapshot c : commands) {
+                total += c.count;
+                failures += c.failureCount;
+            }
+            this.totalCommands = total;
+            this.totalFailures = failures;
+        }
+
+        /**
+         * Average APDUs per second over the window
+         */
+        public double getCommandsPerSecond() {
+            return windowMillis <= 0 ? 0 : totalCommands * 1000.0 / windowMillis;
+        }
+    }
+
+    /**
+     * Take an immutable snapshot (commands sorted by INS, P1, P2)
+     */
+    public Snapshot snapshot() {
+        List<CommandSnapshot> commands = new ArrayList<>();
+        new TreeMap<>(stats).forEach((key, value) -> commands.add(new CommandSnapshot(key, value)));
+
+        long now = System.currentTimeMillis();
+        return new Snapshot(now, now - startedAtMillis.get(), bytesSent.sum(), bytesReceived.sum(), commands);
+    }
+
+    // =====================================================
+    // REPORTS
+    // =====================================================
+
+    /**
+     * Render snapshot as text report
+     */
+    public static String formatReport(Snapshot snapshot, CommandLabeler labeler) {
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        String line = "=".repeat(100);
+
+        out.println(line);
+        out.println("APDU METRICS @ " + Instant.ofEpochMilli(snapshot.takenAtMillis));
+        out.println(String.format("Window: %.1f s | Commands: %d (%.2f/s) | Failures: %d | Sent: %d B | Received: %d B",
+                snapshot.windowMillis / 1000.0, snapshot.totalCommands, snapshot.getCommandsPerSecond(),
+                snapshot.totalFailures, snapshot.bytesSent, snapshot.bytesReceived));
+        out.println(line);
+        out.println(String.format("%-14s %8s %8s %10s %10s %10s %10s %10s  %s",
+                "INS P1 P2", "count", "fail", "min(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)", "function"));
+        out.println("-".repeat(100));
+
+        for (CommandSnapshot c : snapshot.commands) {
+            out.println(String.format("%02X %02X %02X       %8d %8d %10d %10d %10d %10d %10d  %s",
+                    c.ins, c.p1, c.p2, c.count, c.failureCount, c.minMicros, c.p50Micros, c.p90Micros,
+                    c.p99Micros, c.maxMicros, labeler != null ? labeler.label(c.ins, c.p1, c.p2) : ""));
+
+            if (c.failureCount > 0) {
+                StringBuilder sw = new StringBuilder("               SW:");
+                c.statusWords.forEach((code, n) -> sw.append(String.format(" %04X=%d", code, n)));
+                out.println(sw);
+            }
+        }
+        out.println(line);
+        out.flush();
+        return buffer.toString();
+    }
+
+    /**
+     * Write current report to file (written to temp file then moved into place)
+     */
+    public void writeReport(Path file, CommandLabeler labeler) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, formatReport(snapshot(), labeler).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write report to file every periodSeconds (replaces previous schedule)
+     */
+    public synchronized void startPeriodicDump(Path file, long periodSeconds, CommandLabeler labeler) {
+        stopPeriodicDump();
+        dumpScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "apdu-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumpScheduler.scheduleAtFixedRate(() -> {
+            try {
+                writeReport(file, labeler);
+            } catch (IOException e) {
+                System.err.println("[METRICS] Failed to write " + file + ": " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop periodic dump (no final write)
+     */
+    public synchronized void stopPeriodicDump() {
+        if (dumpScheduler != null) {
+            dumpScheduler.shutdownNow();
+            dumpScheduler = null;
+        }
+    }
+}
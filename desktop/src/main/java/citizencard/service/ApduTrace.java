@@ -0,0 +1,201 @@
+package citizencard.service;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * APDU Trace - fixed-size ring buffer of APDU headers and timings
+ *
+ * record() is lock-free and allocation-free: fields go into preallocated primitive
+ * arrays, a per-slot sequence number marks complete entries (seqlock style).
+ * Payload bytes are never stored (no PINs / personal data in the trace).
+ * Human-readable rendering happens only when somebody asks (CardService.dumpApduTrace).
+ */
+public class ApduTrace {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** SW value recorded when transmit failed without a response */
+    public static final int SW_NO_RESPONSE = 0;
+
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLongArray published;
+
+    private final byte[] cla;
+    private final byte[] ins;
+    private final byte[] p1;
+    private final byte[] p2;
+    private final int[] lc;
+    private final int[] sw;
+    private final int[] responseLength;
+    private final long[] startNanos;
+    private final long[] durationNanos;
+
+    // Wall clock reference for rendering nanoTime stamps
+    private final long baseEpochMillis = System.currentTimeMillis();
+    private final long baseNanos = System.nanoTime();
+
+    /**
+     * One decoded entry (reused by forEach, copy fields if you keep them)
+     */
+    public static class Entry {
+        public long sequence;
+        public byte cla;
+        public byte ins;
+        public byte p1;
+        public byte p2;
+        public int lc;
+        public int sw;
+        public int responseLength;
+        public long startNanos;
+        public long durationNanos;
+        public long epochMillis;
+    }
+
+    /**
+     * Callback for forEach
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(Entry entry);
+    }
+
+    public ApduTrace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of entries kept (rounded up to a power of two)
+     */
+    public ApduTrace(int capacity) {
+        int size = capacity <= 16 ? 16 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        cla = new byte[size];
+        ins = new byte[size];
+        p1 = new byte[size];
+        p2 = new byte[size];
+        lc = new int[size];
+        sw = new int[size];
+        responseLength = new int[size];
+        startNanos = new long[size];
+        durationNanos = new long[size];
+    }
+
+    /**
+     * Record one APDU exchange
+     *
+     * @param command  Command APDU bytes
+     * @param response Response bytes (data + SW) or null if transmit failed
+     * @param start    System.nanoTime() before transmit
+     * @param end      System.nanoTime() after transmit
+     */
+    public void record(byte[] command, byte[] response, long start, long end) {
+        long seq = nextSequence.getAndIncrement();
+        int idx = (int) (seq & mask);
+
+        // Mark slot as being written before touching its fields
+        published.set(idx, -1);
+        VarHandle.releaseFence();
+
+        cla[idx] = command.length > 0 ? command[0] : 0;
+        ins[idx] = command.length > 1 ? command[1] : 0;
+        p1[idx] = command.length > 2 ? command[2] : 0;
+        p2[idx] = command.length > 3 ? command[3] : 0;
+        lc[idx] = commandDataLength(command);
+
+        if (response != null && response.length >= 2) {
+            sw[idx] = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+            responseLength[idx] = response.length - 2;
+        } else {
+            sw[idx] = SW_NO_RESPONSE;
+            responseLength[idx] = 0;
+        }
+        startNanos[idx] = start;
+        durationNanos[idx] = end - start;
+
+        published.setRelease(idx, seq);
+    }
+
+    /**
+     * Total APDUs recorded since creation (including overwritten ones)
+     */
+    public long getRecordedCount() {
+        return nextSequence.get();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Visit the most recent entries, oldest first
+     *
+     * @param maxEntries Max entries to visit (<= 0 = whole buffer)
+     */
+    public void forEach(int maxEntries, EntryVisitor visitor) {
+        long end = nextSequence.get();
+        long window = getCapacity();
+        if (maxEntries > 0 && maxEntries < window) {
+            window = maxEntries;
+        }
+        long begin = Math.max(0, end - window);
+
+        Entry entry = new Entry();
+        for (long seq = begin; seq < end; seq++) {
+            if (read(seq, entry)) {
+                visitor.visit(entry);
+            }
+        }
+    }
+
+    /**
+     * Clear all entries
+     */
+    public void clear() {
+        for (int i = 0; i <= mask; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    private boolean read(long seq, Entry entry) {
+        int idx = (int) (seq & mask);
+        if (published.getAcquire(idx) != seq) {
+            return false; // overwritten or still being written
+        }
+
+        entry.sequence = seq;
+        entry.cla = cla[idx];
+        entry.ins = ins[idx];
+        entry.p1 = p1[idx];
+        entry.p2 = p2[idx];
+        entry.lc = lc[idx];
+        entry.sw = sw[idx];
+        entry.responseLength = responseLength[idx];
+        entry.startNanos = startNanos[idx];
+        entry.durationNanos = durationNanos[idx];
+        entry.epochMillis = baseEpochMillis + (entry.startNanos - baseNanos) / 1_000_000L;
+
+        VarHandle.acquireFence();
+        return published.get(idx) == seq;
+    }
+
+    /**
+     * Lc of short or extended command APDU
+     */
+    private static int commandDataLength(byte[] command) {
+        if (command.length <= 5) {
+            return 0;
+        }
+        // 7 bytes with a 00 byte 5 is case 2E (CLA INS P1 P2 00 Le1 Le2): no data
+        if (command[4] == 0 && command.length > 7) {
+            return ((command[5] & 0xFF) << 8) | (command[6] & 0xFF);
+        }
+        return command[4] & 0xFF;
+    }
+}
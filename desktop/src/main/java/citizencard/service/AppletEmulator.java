@@ -0,0 +1,872 @@
+package citizencard.service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.smartcardio.CommandAPDU;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+
+/**
+ * In-memory emulator of citizen_applet v3.0
+ *
+ * Implements the same INS/P1/P2 protocol, status words and on-card state
+ * (PIN Key + Master Key, AES-128 ECB storage, RSA-1024 signature, try counter)
+ * so CardService can run without a physical reader or JCIDE.
+ *
+ * One instance = one card. Persistent state survives close/open of the transport,
+ * exactly like EEPROM on the real card.
+ */
+public class AppletEmulator {
+
+    // INS codes (must match applet)
+    private static final byte INS_SELECT = (byte) 0xA4;
+    private static final byte INS_VERIFY = (byte) 0x00;
+    private static final byte INS_CREATE = (byte) 0x01;
+    private static final byte INS_GET = (byte) 0x02;
+    private static final byte INS_UPDATE = (byte) 0x03;
+    private static final byte INS_GET_AVATAR_CHUNK = (byte) 0x04;
+    private static final byte INS_RESET_TRY_PIN = (byte) 0x10;
+    private static final byte INS_CLEAR_CARD = (byte) 0x11;
+
+    // P1 codes
+    private static final byte P1_PIN = (byte) 0x04;
+    private static final byte P1_CITIZEN_INFO = (byte) 0x05;
+    private static final byte P1_SIGNATURE = (byte) 0x06;
+    private static final byte P1_FORGET_PIN = (byte) 0x0A;
+    private static final byte P1_ACTIVATE_CARD = (byte) 0x0B;
+    private static final byte P1_DEACTIVATE_CARD = (byte) 0x0C;
+
+    // P2 codes
+    private static final byte P2_INFORMATION = (byte) 0x07;
+    private static final byte P2_TRY_REMAINING = (byte) 0x08;
+    private static final byte P2_AVATAR = (byte) 0x09;
+    private static final byte P2_CARD_ID = (byte) 0x0A;
+    private static final byte P2_PUBLIC_KEY = (byte) 0x0B;
+    private static final byte P2_BALANCE = (byte) 0x0C;
+    private static final byte P2_TRANSFER_LIMITS = (byte) 0x0D;
+    private static final byte P2_PROFILE = (byte) 0x0E;
+    private static final byte P2_AVATAR_VERSION = (byte) 0x0F;
+    private static final byte P2_INFO_FIELD = (byte) 0x10;
+
+    // Profile TLV tags: [tag:1][len:2][value:N]
+    private static final byte TAG_CARD_ID = (byte) 0x01;
+    private static final byte TAG_TRY_REMAINING = (byte) 0x02;
+    private static final byte TAG_BALANCE = (byte) 0x03;
+    private static final byte TAG_INFO = (byte) 0x04;
+
+    // Info record v1: [0xC1] then [tag:1][len:1][value:N] per field, tag 0x00 = end
+    private static final byte INFO_FORMAT_V1 = (byte) 0xC1;
+    private static final byte INFO_TAG_END = (byte) 0x00;
+
+    // ISO 7816 status words
+    private static final int SW_NO_ERROR = 0x9000;
+    private static final int SW_WRONG_LENGTH = 0x6700;
+    private static final int SW_SECURITY_STATUS_NOT_SATISFIED = 0x6982;
+    private static final int SW_DATA_INVALID = 0x6984;
+    private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+    private static final int SW_WRONG_DATA = 0x6A80;
+    private static final int SW_FILE_NOT_FOUND = 0x6A82;
+    private static final int SW_WRONG_P1P2 = 0x6A86;
+    private static final int SW_INS_NOT_SUPPORTED = 0x6D00;
+    private static final int SW_UNKNOWN = 0x6F00;
+
+    private static final byte[] APPLET_AID = {
+            (byte) 0x11, (byte) 0x22, (byte) 0x33, (byte) 0x44, (byte) 0x55, (byte) 0x00
+    };
+
+    // Configuration (same as applet)
+    private static final int PIN_LENGTH = 4;
+    private static final byte MAX_PIN_TRIES = 5;
+    private static final int MAX_INFO_LENGTH = 512;
+    private static final int MAX_READABLE_INFO_LENGTH = 255;
+    private static final int MAX_AVATAR_SIZE = 15360;
+    private static final int AVATAR_CHUNK_SIZE = 200;
+    private static final int AVATAR_HEADER_SIZE = 4;
+    private static final int AVATAR_DIGEST_SIZE = 8;
+    private static final int PBKDF2_ITERATIONS = 1000;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    // Card state
+    private final byte[] pin = new byte[16];
+    private byte[] cardId = new byte[0];
+    private byte pinTryCounter = MAX_PIN_TRIES;
+    private boolean pinVerified;
+    private boolean cardInitialized;
+    private boolean cardActive = true;
+    private boolean selected;
+
+    // Keys
+    private byte[] masterKey;
+    private final byte[] encryptedMasterKey = new byte[16];
+    private final PrivateKey rsaPrivateKey;
+    private final RSAPublicKey rsaPublicKey;
+
+    // Encrypted data storage
+    private final byte[] encryptedBalance = new byte[16];
+    private final byte[] encryptedInfo = new byte[MAX_INFO_LENGTH + 16];
+    private int encryptedInfoLength; // padded (multiple of 16)
+    private int infoLength; // actual info length before padding
+    private final byte[] avatar = new byte[MAX_AVATAR_SIZE + 16];
+    private final byte[] avatarBuffer = new byte[MAX_AVATAR_SIZE + 16];
+    private int avatarSize;
+    private int avatarLength;
+    private int avatarVersion;
+    private final byte[] avatarDigest = new byte[AVATAR_DIGEST_SIZE];
+
+    /**
+     * Thrown to abort command processing with a status word (like ISOException)
+     */
+    private static class StatusWordException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int sw;
+
+        StatusWordException(int sw) {
+            super(null, null, false, false);
+            this.sw = sw;
+        }
+    }
+
+    /**
+     * Create a blank (uninitialized) card with a fresh RSA-1024 key pair
+     */
+    public AppletEmulator() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024, secureRandom);
+            KeyPair keyPair = generator.generateKeyPair();
+            rsaPrivateKey = keyPair.getPrivate();
+            rsaPublicKey = (RSAPublicKey) keyPair.getPublic();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot generate emulator RSA key pair", e);
+        }
+    }
+
+    /**
+     * Card reset (power cycle / new connection) - applet must be selected again
+     */
+    public synchronized void reset() {
+        selected = false;
+    }
+
+    /**
+     * Process one command APDU
+     *
+     * @return Full response (data + SW1 SW2)
+     */
+    public synchronized byte[] process(byte[] command) {
+        try {
+            CommandAPDU apdu = new CommandAPDU(command);
+
+            if (apdu.getINS() == (INS_SELECT & 0xFF) && apdu.getP1() == 0x04) {
+                return select(apdu);
+            }
+            if (!selected) {
+                throwIt(SW_INS_NOT_SUPPORTED);
+            }
+
+            byte ins = (byte) apdu.getINS();
+            byte p1 = (byte) apdu.getP1();
+            byte p2 = (byte) apdu.getP2();
+            byte[] data = apdu.getData();
+
+            switch (ins) {
+                case INS_VERIFY:
+                    if (p1 != P1_PIN) {
+                        throwIt(SW_WRONG_P1P2);
+                    }
+                    return verifyPin(data);
+                case INS_CREATE:
+                    return processCreate(p1, p2, data);
+                case INS_GET:
+                    return processGet(p1, p2, apdu.getNe());
+                case INS_UPDATE:
+                    return processUpdate(p1, p2, data);
+                case INS_GET_AVATAR_CHUNK:
+                    return getAvatarChunk(p1, p2, apdu.getNe());
+                case INS_RESET_TRY_PIN:
+                    return resetPinTries();
+                case INS_CLEAR_CARD:
+                    return clearCard();
+                default:
+                    throwIt(SW_INS_NOT_SUPPORTED);
+                    return null;
+            }
+        } catch (StatusWordException e) {
+            return respond(null, 0, e.sw);
+        } catch (IllegalArgumentException e) {
+            return respond(null, 0, SW_WRONG_LENGTH);
+        } catch (GeneralSecurityException e) {
+            return respond(null, 0, SW_UNKNOWN);
+        }
+    }
+
+    private byte[] select(CommandAPDU apdu) {
+        if (!Arrays.equals(apdu.getData(), APPLET_AID)) {
+            selected = false;
+            throwIt(SW_FILE_NOT_FOUND);
+        }
+        selected = true;
+        return respond(null, 0, SW_NO_ERROR);
+    }
+
+    // =====================================================
+    // VERIFY COMMANDS
+    // =====================================================
+
+    private byte[] verifyPin(byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+        if (!cardActive || pinTryCounter == 0) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length != PIN_LENGTH) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        byte[] derived = derivePinKey(data);
+        if (Arrays.equals(pin, derived)) {
+            pinVerified = true;
+            pinTryCounter = MAX_PIN_TRIES;
+            masterKey = aes(derived, Cipher.DECRYPT_MODE, encryptedMasterKey, 16);
+            return respond(new byte[] { 0x01, pinTryCounter }, 2, SW_NO_ERROR);
+        }
+
+        pinTryCounter--;
+        pinVerified = false;
+        return respond(new byte[] { 0x00, pinTryCounter }, 2, SW_NO_ERROR);
+    }
+
+    // =====================================================
+    // CREATE COMMANDS
+    // =====================================================
+
+    private byte[] processCreate(byte p1, byte p2, byte[] data) throws GeneralSecurityException {
+        switch (p1) {
+            case P1_PIN:
+                return initializeCard(data);
+            case P1_SIGNATURE:
+                return createSignature(data);
+            case P1_CITIZEN_INFO:
+                if ((p2 & 0x7F) == P2_AVATAR) {
+                    return createAvatar(p2, data);
+                }
+                throwIt(SW_WRONG_P1P2);
+                return null;
+            default:
+                throwIt(SW_WRONG_P1P2);
+                return null;
+        }
+    }
+
+    private byte[] initializeCard(byte[] data) throws GeneralSecurityException {
+        if (cardInitialized) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+        if (data.length < PIN_LENGTH + 1) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        int idLen = data[PIN_LENGTH] & 0xFF;
+        if (idLen > 50 || idLen < 1 || data.length < PIN_LENGTH + 1 + idLen) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+        cardId = Arrays.copyOfRange(data, PIN_LENGTH + 1, PIN_LENGTH + 1 + idLen);
+
+        // PIN Key from PBKDF2(PIN, cardId)
+        System.arraycopy(derivePinKey(Arrays.copyOf(data, PIN_LENGTH)), 0, pin, 0, 16);
+
+        // Random Master Key wrapped with PIN Key
+        masterKey = new byte[16];
+        secureRandom.nextBytes(masterKey);
+        System.arraycopy(aes(pin, Cipher.ENCRYPT_MODE, masterKey, 16), 0, encryptedMasterKey, 0, 16);
+
+        // Balance = 0
+        System.arraycopy(aes(masterKey, Cipher.ENCRYPT_MODE, new byte[16], 16), 0, encryptedBalance, 0, 16);
+
+        cardInitialized = true;
+        pinVerified = true;
+        cardActive = true;
+        pinTryCounter = MAX_PIN_TRIES;
+
+        byte[] publicKey = serializePublicKey();
+        byte[] response = new byte[cardId.length + publicKey.length];
+        System.arraycopy(cardId, 0, response, 0, cardId.length);
+        System.arraycopy(publicKey, 0, response, cardId.length, publicKey.length);
+        return respond(response, response.length, SW_NO_ERROR);
+    }
+
+    private byte[] createSignature(byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length == 0) {
+            throwIt(SW_DATA_INVALID);
+        }
+
+        Signature signer = Signature.getInstance("SHA1withRSA");
+        signer.initSign(rsaPrivateKey);
+        signer.update(data);
+        byte[] signature = signer.sign();
+        return respond(signature, signature.length, SW_NO_ERROR);
+    }
+
+    private byte[] createAvatar(byte p2, byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length < 4) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        boolean moreChunks = (p2 & 0x80) != 0;
+        int totalLen = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+        int chunkOffset = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+        int chunkLen = data.length - 4;
+
+        if (totalLen > MAX_AVATAR_SIZE || chunkOffset + chunkLen > totalLen) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        System.arraycopy(data, AVATAR_HEADER_SIZE, avatarBuffer, chunkOffset, chunkLen);
+
+        if (moreChunks) {
+            return respond(new byte[] { 0x01 }, 1, SW_NO_ERROR);
+        }
+
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(Arrays.copyOf(avatarBuffer, totalLen));
+        System.arraycopy(digest, 0, avatarDigest, 0, AVATAR_DIGEST_SIZE);
+        avatarVersion = (avatarVersion + 1) & 0xFFFF;
+
+        int paddedLen = totalLen + (16 - (totalLen % 16));
+        Arrays.fill(avatarBuffer, totalLen, paddedLen, (byte) 0x00);
+        System.arraycopy(aes(masterKey, Cipher.ENCRYPT_MODE, avatarBuffer, paddedLen), 0, avatar, 0, paddedLen);
+        avatarSize = paddedLen;
+        avatarLength = totalLen;
+        Arrays.fill(avatarBuffer, 0, paddedLen, (byte) 0x00);
+
+        return respond(new byte[] { (byte) (avatarSize >> 8), (byte) avatarSize }, 2, SW_NO_ERROR);
+    }
+
+    // =====================================================
+    // GET COMMANDS
+    // =====================================================
+
+    private byte[] processGet(byte p1, byte p2, int ne) throws GeneralSecurityException {
+        switch (p2) {
+            case P2_CARD_ID:
+                if (!cardInitialized) {
+                    throwIt(SW_CONDITIONS_NOT_SATISFIED);
+                }
+                return respond(cardId, cardId.length, SW_NO_ERROR);
+            case P2_PUBLIC_KEY:
+                byte[] publicKey = serializePublicKey();
+                return respond(publicKey, publicKey.length, SW_NO_ERROR);
+            case P2_BALANCE:
+                return getBalance();
+            case P2_TRY_REMAINING:
+                return respond(new byte[] { pinTryCounter }, 1, SW_NO_ERROR);
+            case P2_PROFILE:
+                return getProfile(ne);
+            case P2_AVATAR_VERSION:
+                if (!cardInitialized || !pinVerified) {
+                    throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+                }
+                if (avatarSize == 0) {
+                    throwIt(SW_CONDITIONS_NOT_SATISFIED);
+                }
+                byte[] version = new byte[2 + AVATAR_DIGEST_SIZE];
+                version[0] = (byte) (avatarVersion >> 8);
+                version[1] = (byte) avatarVersion;
+                System.arraycopy(avatarDigest, 0, version, 2, AVATAR_DIGEST_SIZE);
+                return respond(version, version.length, SW_NO_ERROR);
+            case P2_TRANSFER_LIMITS:
+                int limit = MAX_AVATAR_SIZE + AVATAR_HEADER_SIZE;
+                byte[] limits = { (byte) (limit >> 8), (byte) limit, (byte) (limit >> 8), (byte) limit };
+                return respond(limits, limits.length, SW_NO_ERROR);
+            case P2_INFORMATION:
+                if (p1 != P1_CITIZEN_INFO) {
+                    throwIt(SW_WRONG_P1P2);
+                }
+                return getInfo();
+            case P2_AVATAR:
+                if (p1 != P1_CITIZEN_INFO) {
+                    throwIt(SW_WRONG_P1P2);
+                }
+                return getAvatar();
+            default:
+                throwIt(SW_WRONG_P1P2);
+                return null;
+        }
+    }
+
+    private byte[] getBalance() throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        return respond(aes(masterKey, Cipher.DECRYPT_MODE, encryptedBalance, 16), 4, SW_NO_ERROR);
+    }
+
+    private byte[] getInfo() throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (encryptedInfoLength == 0) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] plain = aes(masterKey, Cipher.DECRYPT_MODE, encryptedInfo, encryptedInfoLength);
+        return respond(plain, infoLength, SW_NO_ERROR);
+    }
+
+    /**
+     * Profile TLV bundle (same rules as applet: BALANCE / INFO only after PIN,
+     * INFO left out if it does not fit Ne)
+     */
+    private byte[] getProfile(int ne) throws GeneralSecurityException {
+        if (!cardInitialized) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        putTlv(out, TAG_CARD_ID, cardId, cardId.length);
+        putTlv(out, TAG_TRY_REMAINING, new byte[] { pinTryCounter }, 1);
+
+        if (pinVerified) {
+            putTlv(out, TAG_BALANCE, aes(masterKey, Cipher.DECRYPT_MODE, encryptedBalance, 16), 4);
+
+            byte[] info = new byte[0];
+            int infoLen = 0;
+            if (encryptedInfoLength > 0) {
+                info = aes(masterKey, Cipher.DECRYPT_MODE, encryptedInfo, encryptedInfoLength);
+                infoLen = infoLength;
+            }
+            if (out.size() + 3 + infoLen <= ne) {
+                putTlv(out, TAG_INFO, info, infoLen);
+            }
+        }
+
+        byte[] profile = out.toByteArray();
+        return respond(profile, profile.length, SW_NO_ERROR);
+    }
+
+    private static void putTlv(ByteArrayOutputStream out, byte tag, byte[] value, int length) {
+        out.write(tag);
+        out.write(length >> 8);
+        out.write(length);
+        out.write(value, 0, length);
+    }
+
+    private byte[] getAvatar() throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (avatarSize == 0) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] plain = aes(masterKey, Cipher.DECRYPT_MODE, avatar, avatarSize);
+        return respond(plain, removePadding(plain, avatarSize), SW_NO_ERROR);
+    }
+
+    /**
+     * Chunk size follows Ne like the applet: short APDU = 200 bytes, extended = Ne - 4
+     */
+    private byte[] getAvatarChunk(byte p1, byte p2, int ne) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (avatarSize == 0) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        int actualLen = avatarLength;
+        int offset = ((p1 & 0xFF) << 8) | (p2 & 0xFF);
+
+        int maxChunk = ne > 256 ? ne - AVATAR_HEADER_SIZE : Math.min(AVATAR_CHUNK_SIZE, ne - AVATAR_HEADER_SIZE);
+        if (offset < actualLen && maxChunk <= 0) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+        int chunkLen = offset >= actualLen ? 0 : Math.min(maxChunk, actualLen - offset);
+
+        // [totalLen:2][chunkLen:2][data:N]
+        byte[] response = new byte[4 + chunkLen];
+        response[0] = (byte) (actualLen >> 8);
+        response[1] = (byte) actualLen;
+        response[2] = (byte) (chunkLen >> 8);
+        response[3] = (byte) chunkLen;
+        if (chunkLen > 0) {
+            // Decrypt only the ECB blocks covering the chunk (as the applet does)
+            int blockStart = offset & ~0x0F;
+            int blockEnd = (offset + chunkLen + 15) & ~0x0F;
+            byte[] blocks = aes(masterKey, Cipher.DECRYPT_MODE,
+                    Arrays.copyOfRange(avatar, blockStart, blockEnd), blockEnd - blockStart);
+            System.arraycopy(blocks, offset - blockStart, response, 4, chunkLen);
+        }
+        return respond(response, response.length, SW_NO_ERROR);
+    }
+
+    // =====================================================
+    // UPDATE COMMANDS
+    // =====================================================
+
+    private byte[] processUpdate(byte p1, byte p2, byte[] data) throws GeneralSecurityException {
+        switch (p1) {
+            case P1_PIN:
+                return updatePin(data);
+            case P1_CITIZEN_INFO:
+                if (p2 == P2_INFORMATION) {
+                    return updateInfo(data);
+                } else if (p2 == P2_INFO_FIELD) {
+                    return updateInfoField(data);
+                } else if (p2 == P2_BALANCE) {
+                    return updateBalance(data);
+                } else if (p2 == P2_AVATAR) {
+                    return createAvatar(p2, data);
+                }
+                throwIt(SW_WRONG_P1P2);
+                return null;
+            case P1_FORGET_PIN:
+                return forgetPin(data);
+            case P1_ACTIVATE_CARD:
+                pinTryCounter = MAX_PIN_TRIES;
+                cardActive = true;
+                return respond(new byte[] { pinTryCounter }, 1, SW_NO_ERROR);
+            case P1_DEACTIVATE_CARD:
+                pinTryCounter = 0;
+                cardActive = false;
+                pinVerified = false;
+                return respond(new byte[] { 0x00 }, 1, SW_NO_ERROR);
+            default:
+                throwIt(SW_WRONG_P1P2);
+                return null;
+        }
+    }
+
+    private byte[] updatePin(byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length != PIN_LENGTH * 2) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        byte[] oldKey = derivePinKey(Arrays.copyOf(data, PIN_LENGTH));
+        if (!Arrays.equals(pin, oldKey)) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+
+        // Only re-wrap Master Key with new PIN Key
+        byte[] plainMasterKey = aes(oldKey, Cipher.DECRYPT_MODE, encryptedMasterKey, 16);
+        byte[] newKey = derivePinKey(Arrays.copyOfRange(data, PIN_LENGTH, PIN_LENGTH * 2));
+        System.arraycopy(newKey, 0, pin, 0, 16);
+        System.arraycopy(aes(newKey, Cipher.ENCRYPT_MODE, plainMasterKey, 16), 0, encryptedMasterKey, 0, 16);
+
+        pinTryCounter = MAX_PIN_TRIES;
+        return respond(new byte[] { 0x01 }, 1, SW_NO_ERROR);
+    }
+
+    private byte[] updateInfo(byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length == 0 || data.length > MAX_READABLE_INFO_LENGTH) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        int paddedLen = (data.length + 15) & ~15;
+        byte[] padded = Arrays.copyOf(data, paddedLen);
+        System.arraycopy(aes(masterKey, Cipher.ENCRYPT_MODE, padded, paddedLen), 0, encryptedInfo, 0, paddedLen);
+        encryptedInfoLength = paddedLen;
+        infoLength = data.length;
+
+        return respond(new byte[] { 0x01 }, 1, SW_NO_ERROR);
+    }
+
+    /**
+     * Patch one field of the v1 info record (same rules as applet): only the
+     * AES blocks from the first changed byte on are re-encrypted; a card
+     * without info yet starts a new record
+     */
+    private byte[] updateInfoField(byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length < 2 || 2 + (data[1] & 0xFF) != data.length) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+        byte tag = data[0];
+        int newSize = data[1] == 0 ? 0 : 2 + (data[1] & 0xFF);
+        if (tag == INFO_TAG_END) {
+            throwIt(SW_WRONG_DATA);
+        }
+        boolean newRecord = infoLength == 0;
+        byte[] plain;
+        if (newRecord) {
+            // No info stored yet: start an empty v1 record [C1]
+            plain = new byte[MAX_INFO_LENGTH + 16];
+            plain[0] = INFO_FORMAT_V1;
+        } else {
+            plain = Arrays.copyOf(aes(masterKey, Cipher.DECRYPT_MODE, encryptedInfo, encryptedInfoLength),
+                    MAX_INFO_LENGTH + 16);
+            if (plain[0] != INFO_FORMAT_V1) {
+                throwIt(SW_CONDITIONS_NOT_SATISFIED);
+            }
+        }
+
+        // Locate the field (or the end of the record)
+        int recordEnd = newRecord ? 1 : infoLength;
+        int fieldOff = -1;
+        int oldSize = 0;
+        int off = 1;
+        while (off < recordEnd) {
+            if (plain[off] == INFO_TAG_END) {
+                recordEnd = off;
+                break;
+            }
+            if (off + 2 > recordEnd || off + 2 + (plain[off + 1] & 0xFF) > recordEnd) {
+                throwIt(SW_DATA_INVALID);
+            }
+            int size = 2 + (plain[off + 1] & 0xFF);
+            if (plain[off] == tag) {
+                fieldOff = off;
+                oldSize = size;
+                break;
+            }
+            off += size;
+        }
+        if (fieldOff < 0) {
+            fieldOff = recordEnd;
+        }
+
+        int newInfoLength = recordEnd - oldSize + newSize;
+        if (newInfoLength > MAX_READABLE_INFO_LENGTH) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        int changeStart;
+        int changeEnd;
+        int newPaddedLen = (newInfoLength + 15) & ~15;
+        if (newSize == oldSize) {
+            changeStart = fieldOff + 2;
+            changeEnd = fieldOff + newSize;
+        } else {
+            int tailOff = fieldOff + oldSize;
+            System.arraycopy(plain, tailOff, plain, fieldOff + newSize, recordEnd - tailOff);
+            Arrays.fill(plain, newInfoLength, newPaddedLen, (byte) 0x00);
+            changeStart = fieldOff;
+            changeEnd = newPaddedLen;
+        }
+        if (newSize > 0) {
+            System.arraycopy(data, 0, plain, fieldOff, newSize);
+        }
+        if (newRecord) {
+            // Header block has never been encrypted
+            changeStart = 0;
+            changeEnd = newPaddedLen;
+        }
+
+        if (changeEnd > changeStart) {
+            changeStart &= ~15;
+            changeEnd = (changeEnd + 15) & ~15;
+            byte[] blocks = Arrays.copyOfRange(plain, changeStart, changeEnd);
+            System.arraycopy(aes(masterKey, Cipher.ENCRYPT_MODE, blocks, blocks.length), 0,
+                    encryptedInfo, changeStart, blocks.length);
+        }
+        if (newPaddedLen < encryptedInfoLength) {
+            Arrays.fill(encryptedInfo, newPaddedLen, encryptedInfoLength, (byte) 0x00);
+        }
+        encryptedInfoLength = newPaddedLen;
+        infoLength = newInfoLength;
+
+        return respond(new byte[] { 0x01 }, 1, SW_NO_ERROR);
+    }
+
+    private byte[] updateBalance(byte[] data) throws GeneralSecurityException {
+        if (!cardInitialized || !pinVerified) {
+            throwIt(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        if (data.length < 5) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        byte type = data[0];
+        int amount = getInt(data, 1);
+        int currentBalance = getInt(aes(masterKey, Cipher.DECRYPT_MODE, encryptedBalance, 16), 0);
+
+        int newBalance;
+        if (type == 0x01) {
+            newBalance = currentBalance + amount;
+        } else if (type == 0x02) {
+            if (currentBalance < amount) {
+                throwIt(SW_CONDITIONS_NOT_SATISFIED);
+            }
+            newBalance = currentBalance - amount;
+        } else {
+            throwIt(SW_WRONG_DATA);
+            return null;
+        }
+
+        byte[] plain = new byte[16];
+        putInt(plain, 0, newBalance);
+        System.arraycopy(aes(masterKey, Cipher.ENCRYPT_MODE, plain, 16), 0, encryptedBalance, 0, 16);
+
+        return respond(plain, 4, SW_NO_ERROR);
+    }
+
+    /**
+     * Admin function: Reset PIN without knowing old PIN
+     * Re-wraps the Master Key still loaded from the last successful session
+     */
+    private byte[] forgetPin(byte[] data) throws GeneralSecurityException {
+        if (data.length != PIN_LENGTH) {
+            throwIt(SW_WRONG_LENGTH);
+        }
+
+        System.arraycopy(derivePinKey(data), 0, pin, 0, 16);
+        if (masterKey != null) {
+            System.arraycopy(aes(pin, Cipher.ENCRYPT_MODE, masterKey, 16), 0, encryptedMasterKey, 0, 16);
+        }
+        pinTryCounter = MAX_PIN_TRIES;
+        cardActive = true;
+
+        return respond(new byte[] { 0x01 }, 1, SW_NO_ERROR);
+    }
+
+    // =====================================================
+    // ADMIN COMMANDS
+    // =====================================================
+
+    private byte[] clearCard() {
+        cardInitialized = false;
+        pinVerified = false;
+        cardActive = true;
+        pinTryCounter = MAX_PIN_TRIES;
+        encryptedInfoLength = 0;
+        infoLength = 0;
+        avatarSize = 0;
+        avatarLength = 0;
+        avatarVersion = 0;
+        masterKey = null;
+        cardId = new byte[0];
+
+        Arrays.fill(pin, (byte) 0x00);
+        Arrays.fill(encryptedBalance, (byte) 0x00);
+        Arrays.fill(encryptedInfo, (byte) 0x00);
+        Arrays.fill(avatar, (byte) 0x00);
+        Arrays.fill(avatarDigest, (byte) 0x00);
+
+        return respond(new byte[] { 0x01 }, 1, SW_NO_ERROR);
+    }
+
+    private byte[] resetPinTries() {
+        pinTryCounter = MAX_PIN_TRIES;
+        cardActive = true;
+        return respond(new byte[] { pinTryCounter }, 1, SW_NO_ERROR);
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private static void throwIt(int sw) {
+        throw new StatusWordException(sw);
+    }
+
+    private static byte[] respond(byte[] data, int length, int sw) {
+        byte[] response = new byte[length + 2];
+        if (length > 0) {
+            System.arraycopy(data, 0, response, 0, length);
+        }
+        response[length] = (byte) (sw >> 8);
+        response[length + 1] = (byte) sw;
+        return response;
+    }
+
+    /**
+     * Serialize RSA public key
+     * Format: [expLen:2][exp][modLen:2][mod:128]
+     */
+    private byte[] serializePublicKey() {
+        byte[] exp = unsigned(rsaPublicKey.getPublicExponent());
+        byte[] mod = unsigned(rsaPublicKey.getModulus());
+
+        byte[] out = new byte[4 + exp.length + mod.length];
+        out[0] = (byte) (exp.length >> 8);
+        out[1] = (byte) exp.length;
+        System.arraycopy(exp, 0, out, 2, exp.length);
+        out[2 + exp.length] = (byte) (mod.length >> 8);
+        out[3 + exp.length] = (byte) mod.length;
+        System.arraycopy(mod, 0, out, 4 + exp.length, mod.length);
+        return out;
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA1(PIN, cardId, 1000) -> 16-byte PIN Key
+     */
+    private byte[] derivePinKey(byte[] pinBytes) throws GeneralSecurityException {
+        char[] password = new char[pinBytes.length];
+        for (int i = 0; i < pinBytes.length; i++) {
+            password[i] = (char) (pinBytes[i] & 0xFF);
+        }
+        byte[] salt = cardId.length > 0 ? cardId : new byte[1];
+        PBEKeySpec spec = new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, 128);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] aes(byte[] key, int mode, byte[] input, int length) throws GeneralSecurityException {
+        if (key == null) {
+            throwIt(SW_CONDITIONS_NOT_SATISFIED);
+        }
+        Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"));
+        return cipher.doFinal(input, 0, length);
+    }
+
+    private static int removePadding(byte[] data, int length) {
+        int end = length;
+        while (end > 0 && data[end - 1] == 0x00) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) |
+                ((buffer[offset + 1] & 0xFF) << 16) |
+                ((buffer[offset + 2] & 0xFF) << 8) |
+                (buffer[offset + 3] & 0xFF);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,162 @@
+package citizencard.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Avatar Cache - host-side copy of card photos
+ *
+ * Entries are keyed by card ID and an avatar version read from the card, so a
+ * photo is only downloaded again when it changed on the card. Memory only:
+ * on the card a photo is readable only after PIN verification, and a copy on
+ * disk could not keep that promise without a key the host would also have to
+ * store. Photos therefore never outlive the process.
+ */
+public class AvatarCache {
+
+    private static final int MEMORY_ENTRIES = 16;
+
+    // Disk tier of earlier versions (photos + key side by side) - removed on startup
+    private static final String LEGACY_CACHE_DIR = "./data/avatar_cache";
+
+    private static AvatarCache instance;
+
+    private static class Entry {
+        final String version;
+        final byte[] photo;
+
+        Entry(String version, byte[] photo) {
+            this.version = version;
+            this.photo = photo;
+        }
+    }
+
+    // Access-ordered: iteration starts at the least recently used card
+    private final Map<String, Entry> memory = new LinkedHashMap<>(MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public static synchronized AvatarCache getInstance() {
+        if (instance == null) {
+            instance = new AvatarCache();
+            deleteLegacyCache(Paths.get(LEGACY_CACHE_DIR));
+        }
+        return instance;
+    }
+
+    // =====================================================
+    // LOOKUP / STORE
+    // =====================================================
+
+    /**
+     * Cached photo for this card and version, or null
+     */
+    public byte[] get(String cardId, String version) {
+        if (cardId == null || version == null) {
+            return null;
+        }
+
+        synchronized (memory) {
+            Entry entry = memory.get(cardId);
+            if (entry != null && entry.version.equals(version)) {
+                hits.increment();
+                return entry.photo;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Remember the photo currently on a card (replaces any older version)
+     */
+    public void put(String cardId, String version, byte[] photo) {
+        if (cardId == null || version == null || photo == null || photo.length == 0) {
+            return;
+        }
+        synchronized (memory) {
+            memory.put(cardId, new Entry(version, photo));
+        }
+    }
+
+    /**
+     * Forget a card's photo (card cleared / photo removed)
+     */
+    public void invalidate(String cardId) {
+        if (cardId == null) {
+            return;
+        }
+        synchronized (memory) {
+            memory.remove(cardId);
+        }
+    }
+
+    public String getStats() {
+        synchronized (memory) {
+            return String.format("hits=%d misses=%d inMemory=%d", hits.sum(), misses.sum(), memory.size());
+        }
+    }
+
+    private static void deleteLegacyCache(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+            System.out.println("[AVATAR CACHE] Removed on-disk photo cache " + directory);
+        } catch (IOException e) {
+            System.err.println("[AVATAR CACHE] Could not remove " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // =====================================================
+    // VERSION FINGERPRINT
+    // =====================================================
+
+    /**
+     * Bytes sampled from each end of the photo for fingerprint()
+     */
+    public static final int FINGERPRINT_SAMPLE = 64;
+
+    /**
+     * Version string from the photo length and its first/last FINGERPRINT_SAMPLE bytes,
+     * for applets without GET AVATAR_VERSION (the tail of a JPEG is entropy-coded
+     * data, so any re-encode changes it)
+     */
+    public static String fingerprint(int totalLength, byte[] head, byte[] tail) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(new byte[] { (byte) (totalLength >> 8), (byte) totalLength });
+            digest.update(head);
+            digest.update(tail);
+            return "fp:" + toHex(digest.digest(), 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes, int length) {
+        StringBuilder sb = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            sb.append(String.format("%02x", bytes[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package citizencard.service;
+
+import citizencard.dao.CardDAO;
+import citizencard.util.RSAUtils;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batch Signature Verifier - nightly audit of stored challenge-responses
+ *
+ * Streams (cardId, challenge, signature) rows from card_challenges together with
+ * the card's registered public key and re-verifies them on a work-stealing pool.
+ * Rows are handed out in batches; the reader blocks when too many batches are
+ * waiting, so memory stays flat however large the table is.
+ *
+ * Standalone: java -cp ... citizencard.service.BatchSignatureVerifier [threads]
+ */
+public class BatchSignatureVerifier {
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    /**
+     * Audit result
+     */
+    public static class Report {
+        public final long total;
+        public final long valid;
+        public final long invalid;
+        public final long missingKey;
+        public final long errors;
+        public final long elapsedNanos;
+        public final List<String> failures; // first MAX_REPORTED_FAILURES problems
+
+        Report(long total, long valid, long invalid, long missingKey, long errors, long elapsedNanos,
+                List<String> failures) {
+            this.total = total;
+            this.valid = valid;
+            this.invalid = invalid;
+            this.missingKey = missingKey;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = failures;
+        }
+
+        public double getThroughput() {
+            return elapsedNanos > 0 ? total * 1e9 / elapsedNanos : 0;
+        }
+
+        public boolean isClean() {
+            return invalid == 0 && missingKey == 0 && errors == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[AUDIT] %d signatures in %d ms (%.0f/s): valid=%d invalid=%d missingKey=%d errors=%d",
+                    total, elapsedNanos / 1_000_000, getThroughput(), valid, invalid, missingKey, errors);
+        }
+    }
+
+    private final CardDAO cardDAO;
+    private final int parallelism;
+    private final int batchSize;
+
+    // Per-run counters
+    private final LongAdder valid = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder missingKey = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private List<CardDAO.ChallengeRecord> pending; // batch being filled by the DB reader
+
+    public BatchSignatureVerifier(CardDAO cardDAO) {
+        this(cardDAO, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    public BatchSignatureVerifier(CardDAO cardDAO, int parallelism, int batchSize) {
+        this.cardDAO = cardDAO;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Verify every stored challenge (blocks until done)
+     */
+    public synchronized Report run() throws java.sql.SQLException {
+        valid.reset();
+        invalid.reset();
+        missingKey.reset();
+        errors.reset();
+        failures.clear();
+        failureCount.set(0);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        // A few batches per worker keep everyone busy; more would only buffer rows
+        int maxQueuedBatches = parallelism * 4;
+        Semaphore queuedBatches = new Semaphore(maxQueuedBatches);
+        pending = new ArrayList<>(batchSize);
+        long start = System.nanoTime();
+        long total;
+
+        try {
+            total = cardDAO.forEachChallenge(record -> {
+                pending.add(record);
+                if (pending.size() == batchSize) {
+                    submit(pool, queuedBatches, pending);
+                    pending = new ArrayList<>(batchSize);
+                }
+            });
+            if (!pending.isEmpty()) {
+                submit(pool, queuedBatches, pending);
+            }
+            // Every permit back = every batch verified (finished batches are not referenced from here)
+            queuedBatches.acquireUninterruptibly(maxQueuedBatches);
+            queuedBatches.release(maxQueuedBatches);
+        } finally {
+            pool.shutdown();
+        }
+
+        Report report = new Report(total, valid.sum(), invalid.sum(), missingKey.sum(), errors.sum(),
+                System.nanoTime() - start, new ArrayList<>(failures));
+        System.out.println(report);
+        return report;
+    }
+
+    private void submit(ForkJoinPool pool, Semaphore queuedBatches, List<CardDAO.ChallengeRecord> rows) {
+        queuedBatches.acquireUninterruptibly();
+        pool.execute(() -> {
+            try {
+                for (CardDAO.ChallengeRecord row : rows) {
+                    verify(row);
+                }
+            } finally {
+                queuedBatches.release();
+            }
+        });
+    }
+
+    private void verify(CardDAO.ChallengeRecord row) {
+        if (row.publicKey == null) {
+            missingKey.increment();
+            fail(row, "card not registered");
+            return;
+        }
+
+        try {
+            PublicKey key = RSAUtils.generatePublicKeyFromBytes(Base64.getDecoder().decode(row.publicKey));
+            if (key == null) {
+                missingKey.increment();
+                fail(row, "unusable public key");
+                return;
+            }
+
+            byte[] signature = Base64.getDecoder().decode(row.signature);
+            if (RSAUtils.verify(signature, key, row.challenge.getBytes())) {
+                valid.increment();
+            } else {
+                invalid.increment();
+                fail(row, "invalid signature");
+            }
+        } catch (Exception e) {
+            errors.increment();
+            fail(row, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private void fail(CardDAO.ChallengeRecord row, String reason) {
+        if (failureCount.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+            failures.add("#" + row.id + " " + row.cardId + ": " + reason);
+        }
+    }
+
+    /**
+     * Nightly audit entry point - exit code 1 if any signature did not verify
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        CardDAO cardDAO = CardDAO.getInstance();
+        Report report;
+        try {
+            report = new BatchSignatureVerifier(cardDAO, threads, DEFAULT_BATCH_SIZE).run();
+            for (String failure : report.failures) {
+                System.err.println("[AUDIT] " + failure);
+            }
+        } finally {
+            cardDAO.shutdown();
+        }
+        System.exit(report.isClean() ? 0 : 1);
+    }
+}
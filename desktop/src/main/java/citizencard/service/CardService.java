@@ -1,12 +1,21 @@
 package citizencard.service;
 
+import citizencard.dao.CardDAO;
+import citizencard.model.CitizenInfo;
+import citizencard.util.CitizenInfoParser;
+import citizencard.util.PublicKeyCache;
 import citizencard.util.RSAUtils;
 import javax.smartcardio.*;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.PublicKey;
 import java.security.SecureRandom;
-import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Smart Card Communication Service v2.0
@@ -44,6 +53,17 @@ public class CardService {
     private static final byte P2_CARD_ID = (byte) 0x0A;
     private static final byte P2_PUBLIC_KEY = (byte) 0x0B;
     private static final byte P2_BALANCE = (byte) 0x0C;
+    private static final byte P2_TRANSFER_LIMITS = (byte) 0x0D;
+    private static final byte P2_PROFILE = (byte) 0x0E;
+    private static final byte P2_AVATAR_VERSION = (byte) 0x0F;
+    private static final byte P2_INFO_FIELD = (byte) 0x10;
+
+    // PROFILE TLV TAGS: [tag:1][len:2][value:N]
+    private static final byte TAG_CARD_ID = (byte) 0x01;
+    private static final byte TAG_TRY_REMAINING = (byte) 0x02;
+    private static final byte TAG_BALANCE = (byte) 0x03;
+    private static final byte TAG_INFO = (byte) 0x04;
+    private static final int PROFILE_MAX_LENGTH = 3 + 50 + 3 + 1 + 3 + 4 + 3 + 512;
 
     // BALANCE UPDATE TYPES
     private static final byte BALANCE_TYPE_TOPUP = (byte) 0x01;
@@ -57,8 +77,23 @@ public class CardService {
     // Singleton instance
     private static CardService instance;
 
-    private CardChannel channel;
-    private boolean connected = false;
+    // Transport selection: -Dcitizencard.transport=emulator (or CITIZENCARD_TRANSPORT=emulator)
+    private static final String TRANSPORT_PROPERTY = "citizencard.transport";
+    private static final String TRANSPORT_ENV = "CITIZENCARD_TRANSPORT";
+
+    private CardTransport transport;
+    private volatile boolean connected = false; // written on the card-owner thread, read from the FX thread
+    private int avatarChunkSize = 0; // negotiated per connection (0 = not yet)
+    private String connectedCardId; // learned from GET CARD_ID / PROFILE on this connection
+    private final AvatarCache avatarCache = AvatarCache.getInstance();
+    private final ApduTrace apduTrace = new ApduTrace();
+    private final ApduMetrics apduMetrics = new ApduMetrics();
+    private final Object transmitLock = new Object();
+
+    // Card-owner thread: one thread, bounded queue (thread only exists while there is work)
+    private static final int CARD_QUEUE_CAPACITY = 32;
+    private volatile Thread cardThread;
+    private final ThreadPoolExecutor cardExecutor = createCardExecutor();
 
     /**
      * Get singleton instance
@@ -72,39 +107,58 @@ public class CardService {
 
     /**
      * Constructor - use getInstance() instead
+     * Transport chosen from system property (default: PC/SC reader)
      */
     public CardService() {
-        // Allow direct construction for backward compatibility
+        this(createDefaultTransport());
     }
 
     /**
-     * Connect to smart card and select applet
+     * Constructor with explicit transport (emulator, specific reader, ...)
      */
-    public boolean connectToCard() {
-        try {
-            TerminalFactory factory = TerminalFactory.getDefault();
-            List<CardTerminal> terminals = factory.terminals().list();
+    public CardService(CardTransport transport) {
+        this.transport = transport;
+    }
 
-            if (terminals.isEmpty()) {
-                System.out.println("❌ No card terminals found");
-                return false;
-            }
+    private static CardTransport createDefaultTransport() {
+        String mode = System.getProperty(TRANSPORT_PROPERTY, System.getenv(TRANSPORT_ENV));
+        if ("emulator".equalsIgnoreCase(mode)) {
+            System.out.println("[CARD] Using in-process applet emulator");
+            return new EmulatedCardTransport();
+        }
+        return new PcscCardTransport();
+    }
 
-            CardTerminal terminal = terminals.get(0);
-            if (!terminal.isCardPresent()) {
-                System.out.println("❌ No card present in terminal");
-                return false;
-            }
+    /**
+     * Get current transport
+     */
+    public CardTransport getTransport() {
+        return transport;
+    }
 
-            Card card = terminal.connect("T=1");
-            channel = card.getBasicChannel();
+    /**
+     * Replace transport (disconnects current card)
+     */
+    public void setTransport(CardTransport transport) {
+        disconnect();
+        this.transport = transport;
+    }
+
+    /**
+     * Connect to smart card and select applet
+     */
+    public boolean connectToCard() {
+        try {
+            transport.open();
 
             // Select Citizen Card Applet
             byte[] selectCommand = buildSelectCommand(APPLET_AID);
-            ResponseAPDU response = channel.transmit(new CommandAPDU(selectCommand));
+            ResponseAPDU response = new ResponseAPDU(transport.transmit(selectCommand));
 
             if (response.getSW() == 0x9000) {
                 connected = true;
+                avatarChunkSize = 0;
+                connectedCardId = null;
                 System.out.println("✅ Connected to Citizen Card successfully");
                 return true;
             } else {
@@ -120,79 +174,155 @@ public class CardService {
 
     /**
      * Send APDU command to card (v2.0 format)
+     * Every exchange is recorded in the APDU trace (see dumpApduTrace)
      */
     public byte[] sendCommand(byte ins, byte p1, byte p2, byte[] data) {
-        if (!connected || channel == null) {
+        return sendCommand(ins, p1, p2, data, 0);
+    }
+
+    /**
+     * Send APDU command with expected response length
+     *
+     * @param ne Expected response data length (0 = default short Le; > 256 = extended APDU)
+     */
+    private byte[] sendCommand(byte ins, byte p1, byte p2, byte[] data, int ne) {
+        if (!isConnected()) {
             throw new RuntimeException("Not connected to card");
         }
 
+        byte[] command = buildCommandV2(ins, p1, p2, data, ne);
+        byte[] response = null;
+        long start = System.nanoTime();
         try {
-            byte[] command = buildCommandV2(ins, p1, p2, data);
-
-            // LOG APDU COMMAND BEFORE SENDING
-            System.out.println("\n" + "=".repeat(60));
-            System.out.println("📤 SENDING APDU COMMAND TO JCIDE:");
-            System.out.println("=".repeat(60));
-            System.out.println("🎯 FUNCTION: " + getFunctionDescription(command[1], command[2], command[3]));
-            System.out.println("-".repeat(60));
-            System.out.println("CLA: " + String.format("0x%02X", command[0]));
-            System.out.println("INS: " + String.format("0x%02X", command[1]) + " (" + getInsName(command[1]) + ")");
-            System.out.println("P1:  " + String.format("0x%02X", command[2]) + " (" + getP1Name(command[2]) + ")");
-            System.out.println("P2:  " + String.format("0x%02X", command[3]) + " (" + getP2Name(command[3]) + ")");
-            System.out.println("Lc:  " + String.format("0x%02X", command[4]) + " (" + (command.length - 5) + " bytes)");
-
-            if (command.length > 5) {
-                System.out.print("Data: ");
-                for (int i = 5; i < command.length; i++) {
-                    System.out.print(String.format("%02X ", command[i]));
-                    if ((i - 4) % 16 == 0 && i < command.length - 1) {
-                        System.out.print("\n      ");
-                    }
-                }
-                System.out.println();
+            synchronized (transmitLock) {
+                response = transport.transmit(command);
             }
-
-            System.out.print("Full APDU: ");
-            for (byte b : command) {
-                System.out.print(String.format("%02X ", b));
-            }
-            System.out.println("\n" + "=".repeat(60));
-
-            CommandAPDU commandAPDU = new CommandAPDU(command);
-            ResponseAPDU response = channel.transmit(commandAPDU);
-
-            // LOG RESPONSE
-            System.out.println("📥 RECEIVED RESPONSE FROM JCIDE:");
-            System.out.println("=".repeat(60));
-            System.out.println("SW:   " + String.format("0x%04X", response.getSW()) + " ("
-                    + getSwDescription(response.getSW()) + ")");
-            System.out.println("SW1:  " + String.format("0x%02X", response.getSW1()));
-            System.out.println("SW2:  " + String.format("0x%02X", response.getSW2()));
-
-            byte[] responseData = response.getData();
-            if (responseData.length > 0) {
-                System.out.println("Data Length: " + responseData.length + " bytes");
-                System.out.print("Data: ");
-                for (int i = 0; i < responseData.length; i++) {
-                    System.out.print(String.format("%02X ", responseData[i]));
-                    if ((i + 1) % 16 == 0 && i < responseData.length - 1) {
-                        System.out.print("\n      ");
-                    }
-                }
-                System.out.println();
-            } else {
-                System.out.println("Data: (empty)");
-            }
-            System.out.println("=".repeat(60) + "\n");
-
             // Return full response (data + SW)
-            return response.getBytes();
+            return response;
 
         } catch (Exception e) {
             System.err.println("❌ ERROR sending command: " + e.getMessage());
-            e.printStackTrace();
             throw new RuntimeException("Error sending command to card: " + e.getMessage(), e);
+        } finally {
+            long end = System.nanoTime();
+            apduTrace.record(command, response, start, end);
+            recordMetrics(ins, p1, p2, command, response, end - start);
+        }
+    }
+
+    private void recordMetrics(byte ins, byte p1, byte p2, byte[] command, byte[] response, long durationNanos) {
+        // GET_AVATAR_CHUNK carries the offset in P1|P2 - keep one key for all chunks
+        if (ins == INS_GET_AVATAR_CHUNK) {
+            p1 = 0;
+            p2 = 0;
+        }
+        int sw = ApduTrace.SW_NO_RESPONSE;
+        int responseLength = 0;
+        if (response != null && response.length >= 2) {
+            sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+            responseLength = response.length;
         }
+        apduMetrics.record(ins, p1, p2, sw, command.length, responseLength, durationNanos);
+    }
+
+    /**
+     * Get APDU trace of this service (last ApduTrace.DEFAULT_CAPACITY exchanges)
+     */
+    public ApduTrace getApduTrace() {
+        return apduTrace;
+    }
+
+    /**
+     * Get APDU latency / status word metrics of this service
+     */
+    public ApduMetrics getApduMetrics() {
+        return apduMetrics;
+    }
+
+    /**
+     * Immutable snapshot of APDU metrics
+     */
+    public ApduMetrics.Snapshot getMetricsSnapshot() {
+        return apduMetrics.snapshot();
+    }
+
+    /**
+     * Human-readable metrics report (per INS/P1/P2 latency percentiles and SW counts)
+     */
+    public String formatMetricsReport() {
+        return ApduMetrics.formatReport(apduMetrics.snapshot(), this::getFunctionDescription);
+    }
+
+    /**
+     * Write metrics report to file every periodSeconds
+     */
+    public void startMetricsDump(java.nio.file.Path file, long periodSeconds) {
+        apduMetrics.startPeriodicDump(file, periodSeconds, this::getFunctionDescription);
+    }
+
+    /**
+     * Stop periodic metrics dump and write a final report
+     */
+    public void stopMetricsDump(java.nio.file.Path file) {
+        apduMetrics.stopPeriodicDump();
+        try {
+            apduMetrics.writeReport(file, this::getFunctionDescription);
+        } catch (IOException e) {
+            System.err.println("[METRICS] Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the whole APDU trace to file (replaces previous dump)
+     */
+    public void writeApduTrace(java.nio.file.Path file) {
+        try {
+            java.nio.file.Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                java.nio.file.Files.createDirectories(parent);
+            }
+            try (java.io.PrintStream out = new java.io.PrintStream(java.nio.file.Files.newOutputStream(file), false,
+                    java.nio.charset.StandardCharsets.UTF_8)) {
+                dumpApduTrace(out, 0);
+            }
+        } catch (IOException e) {
+            System.err.println("[TRACE] Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Render recent APDU exchanges in human-readable form
+     *
+     * @param out        Destination (e.g. System.out)
+     * @param maxEntries Max entries to print (<= 0 = whole buffer)
+     */
+    public void dumpApduTrace(java.io.PrintStream out, int maxEntries) {
+        java.time.format.DateTimeFormatter timeFormat = java.time.format.DateTimeFormatter
+                .ofPattern("HH:mm:ss.SSS").withZone(java.time.ZoneId.systemDefault());
+        String line = "=".repeat(60);
+
+        out.println(line);
+        out.println("APDU TRACE (" + apduTrace.getRecordedCount() + " recorded, showing up to "
+                + (maxEntries > 0 ? maxEntries : apduTrace.getCapacity()) + ")");
+        out.println(line);
+
+        apduTrace.forEach(maxEntries, e -> {
+            out.println("#" + e.sequence + " " + timeFormat.format(java.time.Instant.ofEpochMilli(e.epochMillis))
+                    + " (" + String.format("%.3f", e.durationNanos / 1_000_000.0) + " ms)");
+            out.println("🎯 FUNCTION: " + getFunctionDescription(e.ins, e.p1, e.p2));
+            out.println("CLA: " + String.format("0x%02X", e.cla));
+            out.println("INS: " + String.format("0x%02X", e.ins) + " (" + getInsName(e.ins) + ")");
+            out.println("P1:  " + String.format("0x%02X", e.p1) + " (" + getP1Name(e.p1) + ")");
+            out.println("P2:  " + String.format("0x%02X", e.p2) + " (" + getP2Name(e.p2) + ")");
+            out.println("Lc:  " + e.lc + " bytes");
+            if (e.sw == ApduTrace.SW_NO_RESPONSE) {
+                out.println("SW:   (no response)");
+            } else {
+                out.println("SW:   " + String.format("0x%04X", e.sw) + " (" + getSwDescription(e.sw) + ")");
+                out.println("Data Length: " + e.responseLength + " bytes");
+            }
+            out.println("-".repeat(60));
+        });
     }
 
     /**
@@ -208,6 +338,8 @@ public class CardService {
                 return "GET";
             case INS_UPDATE:
                 return "UPDATE";
+            case INS_GET_AVATAR_CHUNK:
+                return "GET_AVATAR_CHUNK";
             case INS_RESET_TRY_PIN:
                 return "RESET_TRY_PIN";
             case INS_CLEAR_CARD:
@@ -256,6 +388,14 @@ public class CardService {
                 return "PUBLIC_KEY";
             case P2_BALANCE:
                 return "BALANCE";
+            case P2_TRANSFER_LIMITS:
+                return "TRANSFER_LIMITS";
+            case P2_PROFILE:
+                return "PROFILE";
+            case P2_AVATAR_VERSION:
+                return "AVATAR_VERSION";
+            case P2_INFO_FIELD:
+                return "INFO_FIELD";
             default:
                 return "UNKNOWN";
         }
@@ -270,6 +410,10 @@ public class CardService {
                 return "SUCCESS";
             case 0x6300:
                 return "VERIFICATION_FAILED";
+            case 0x6700:
+                return "WRONG_LENGTH";
+            case 0x6982:
+                return "SECURITY_STATUS_NOT_SATISFIED";
             case 0x6983:
                 return "AUTHENTICATION_BLOCKED";
             case 0x6985:
@@ -302,7 +446,7 @@ public class CardService {
         if (ins == INS_CREATE && p1 == P1_PIN) {
             return "Initialize Card - Create new card with PIN";
         }
-        if (ins == INS_CREATE && p1 == P1_CITIZEN_INFO && p2 == P2_AVATAR) {
+        if (ins == INS_CREATE && p1 == P1_CITIZEN_INFO && (p2 & 0x7F) == P2_AVATAR) {
             return "Upload Avatar - Store encrypted photo";
         }
 
@@ -319,6 +463,15 @@ public class CardService {
         if (ins == INS_GET && p2 == P2_TRY_REMAINING) {
             return "Get Remaining Tries - Check PIN attempts left";
         }
+        if (ins == INS_GET && p2 == P2_PROFILE) {
+            return "Get Profile - Card ID, tries, balance and info in one response";
+        }
+        if (ins == INS_GET && p2 == P2_TRANSFER_LIMITS) {
+            return "Get Transfer Limits - Negotiate avatar chunk size";
+        }
+        if (ins == INS_GET && p2 == P2_AVATAR_VERSION) {
+            return "Get Avatar Version - Upload counter and photo digest for caching";
+        }
         if (ins == INS_GET && p1 == P1_CITIZEN_INFO && p2 == P2_INFORMATION) {
             return "Get Personal Info - Retrieve decrypted citizen data";
         }
@@ -333,6 +486,9 @@ public class CardService {
         if (ins == INS_UPDATE && p1 == P1_CITIZEN_INFO && p2 == P2_INFORMATION) {
             return "Update Personal Info - Store encrypted citizen data";
         }
+        if (ins == INS_UPDATE && p1 == P1_CITIZEN_INFO && p2 == P2_INFO_FIELD) {
+            return "Update Info Field - Patch one field of the encrypted citizen data";
+        }
         if (ins == INS_UPDATE && p1 == P1_CITIZEN_INFO && p2 == P2_AVATAR) {
             return "Update Avatar - Replace encrypted photo";
         }
@@ -349,6 +505,11 @@ public class CardService {
             return "Forget PIN - Admin reset PIN";
         }
 
+        // INS_GET_AVATAR_CHUNK (0x04)
+        if (ins == INS_GET_AVATAR_CHUNK) {
+            return "Get Avatar Chunk - Download photo chunk at offset P1|P2";
+        }
+
         // INS_RESET_TRY_PIN (0x10)
         if (ins == INS_RESET_TRY_PIN) {
             return "Reset PIN Tries - Admin unlock blocked card";
@@ -362,13 +523,140 @@ public class CardService {
         return "Unknown Function";
     }
 
+    // =====================================================
+    // ASYNC API (card-owner thread)
+    // =====================================================
+
+    /**
+     * Card operation run on the card-owner thread
+     */
+    @FunctionalInterface
+    public interface CardTask<T> {
+        T run(CardService card) throws Exception;
+    }
+
+    private ThreadPoolExecutor createCardExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CARD_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(() -> {
+                        cardThread = Thread.currentThread();
+                        r.run();
+                    }, "card-owner");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Run task on the card-owner thread
+     * 
+     * All tasks run one after another, so a multi-APDU operation (verify + read,
+     * chunked avatar transfer) is never interleaved with another one.
+     * Called from a card task, the task runs inline (no deadlock on join).
+     * 
+     * @return Future completed with the task result; fails immediately if
+     *         CARD_QUEUE_CAPACITY operations are already waiting
+     */
+    public <T> CompletableFuture<T> submit(CardTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (Thread.currentThread() == cardThread) {
+            runTask(task, future);
+            return future;
+        }
+
+        try {
+            cardExecutor.execute(() -> runTask(task, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(
+                    new RuntimeException("Card busy - too many pending card operations", e));
+        }
+        return future;
+    }
+
+    private <T> void runTask(CardTask<T> task, CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return; // cancelled or timed out while queued
+        }
+        try {
+            future.complete(task.run(this));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Number of card operations waiting for the card-owner thread
+     */
+    public int getPendingTaskCount() {
+        return cardExecutor.getQueue().size();
+    }
+
+    /**
+     * Error message of a failed future (unwraps CompletionException)
+     */
+    public static String getErrorMessage(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getMessage();
+    }
+
+    public CompletableFuture<Boolean> connectToCardAsync() {
+        return submit(CardService::connectToCard);
+    }
+
+    public CompletableFuture<PinVerificationResult> verifyPinAsync(String pin) {
+        return submit(card -> card.verifyPin(pin));
+    }
+
+    public CompletableFuture<CardProfile> readProfileAsync() {
+        return submit(CardService::readProfile);
+    }
+
+    public CompletableFuture<Integer> getBalanceAsync() {
+        return submit(CardService::getBalance);
+    }
+
+    public CompletableFuture<Integer> makePaymentAsync(int amount) {
+        return submit(card -> card.makePayment(amount));
+    }
+
+    public CompletableFuture<Boolean> changePinAsync(String oldPin, String newPin) {
+        return submit(card -> card.changePin(oldPin, newPin));
+    }
+
+    public CompletableFuture<Boolean> uploadAvatarAsync(byte[] avatarData) {
+        return submit(card -> card.uploadAvatar(avatarData));
+    }
+
+    public CompletableFuture<byte[]> downloadAvatarAsync() {
+        return submit(CardService::downloadAvatar);
+    }
+
+    public CompletableFuture<byte[]> downloadAvatarCachedAsync() {
+        return submit(CardService::downloadAvatarCached);
+    }
+
+    public CompletableFuture<byte[]> downloadAvatarCachedAsync(AvatarListener listener) {
+        return submit(card -> card.downloadAvatarCached(listener));
+    }
+
     // =====================================================
     // APDU BUILDERS v2.0
     // =====================================================
 
-    private byte[] buildCommandV2(byte ins, byte p1, byte p2, byte[] data) {
+    private byte[] buildCommandV2(byte ins, byte p1, byte p2, byte[] data, int ne) {
+        int dataLength = data == null ? 0 : data.length;
+        if (dataLength > CardTransport.SHORT_APDU_MAX_DATA || ne > 256) {
+            // Extended APDU (avatar transfer) - let CommandAPDU encode Lc/Le
+            return new CommandAPDU(0x00, ins & 0xFF, p1 & 0xFF, p2 & 0xFF,
+                    data == null ? new byte[0] : data, ne).getBytes();
+        }
         if (data == null || data.length == 0) {
-            return new byte[] { (byte) 0x00, ins, p1, p2, (byte) 0x00 };
+            return new byte[] { (byte) 0x00, ins, p1, p2, (byte) ne }; // Le 0x00 = 256
         } else {
             byte[] command = new byte[5 + data.length];
             command[0] = (byte) 0x00; // CLA
@@ -446,7 +734,8 @@ public class CardService {
             // Response contains Card ID + Public Key, extract Card ID
             String returnedId = new String(responseData, 0, Math.min(cardIdBytes.length, responseData.length));
             System.out.println("[CARD] Card initialized with ID: " + returnedId);
-            return returnedId.trim();
+            connectedCardId = returnedId.trim();
+            return connectedCardId;
         } else {
             throw new RuntimeException("Failed to initialize card");
         }
@@ -503,6 +792,101 @@ public class CardService {
         }
     }
 
+    /**
+     * Card profile read in one round trip (see readProfile)
+     */
+    public static class CardProfile {
+        public final String cardId;
+        public final int remainingTries;
+        public final int balance;
+        public final byte[] personalInfo; // null if not stored on card
+
+        public CardProfile(String cardId, int remainingTries, int balance, byte[] personalInfo) {
+            this.cardId = cardId;
+            this.remainingTries = remainingTries;
+            this.balance = balance;
+            this.personalInfo = personalInfo;
+        }
+    }
+
+    /**
+     * Read Card ID, remaining tries, balance and personal info (requires PIN verification)
+     * 
+     * One GET PROFILE APDU returning a TLV bundle. Falls back to separate GETs
+     * for info that did not fit a short response, or for applets without PROFILE.
+     */
+    public CardProfile readProfile() {
+        int ne = transport.getMaxApduDataLength() > CardTransport.SHORT_APDU_MAX_DATA ? PROFILE_MAX_LENGTH : 0;
+        byte[] response;
+        try {
+            response = sendCommand(INS_GET, (byte) 0x00, P2_PROFILE, null, ne);
+        } catch (RuntimeException e) {
+            if (ne == 0) {
+                throw e;
+            }
+            response = sendCommand(INS_GET, (byte) 0x00, P2_PROFILE, null, 0); // reader without extended APDU
+        }
+
+        if (!isSuccess(response)) {
+            return new CardProfile(getCardId(), getRemainingPinTries(), getBalance(), readPersonalInfoOrNull());
+        }
+
+        byte[] data = getResponseData(response);
+        String cardId = null;
+        int remainingTries = 0;
+        Integer balance = null;
+        byte[] info = null;
+        boolean hasInfo = false;
+
+        int off = 0;
+        while (off + 3 <= data.length) {
+            byte tag = data[off];
+            int len = ((data[off + 1] & 0xFF) << 8) | (data[off + 2] & 0xFF);
+            off += 3;
+            if (off + len > data.length) {
+                throw new RuntimeException("Invalid profile response - truncated TLV");
+            }
+
+            switch (tag) {
+                case TAG_CARD_ID:
+                    cardId = new String(data, off, len, java.nio.charset.StandardCharsets.UTF_8).trim();
+                    break;
+                case TAG_TRY_REMAINING:
+                    if (len < 1) {
+                        throw new RuntimeException("Invalid profile response - empty TRY_REMAINING");
+                    }
+                    remainingTries = data[off] & 0xFF;
+                    break;
+                case TAG_BALANCE:
+                    balance = parseAmount(java.util.Arrays.copyOfRange(data, off, off + len));
+                    break;
+                case TAG_INFO:
+                    hasInfo = true;
+                    info = len > 0 ? java.util.Arrays.copyOfRange(data, off, off + len) : null;
+                    break;
+                default:
+                    break; // unknown tag from newer applet
+            }
+            off += len;
+        }
+
+        if (balance == null) {
+            throw new RuntimeException("Failed to read profile - PIN verification required");
+        }
+        if (!hasInfo) {
+            info = readPersonalInfoOrNull(); // did not fit short response
+        }
+        if (cardId != null) {
+            connectedCardId = cardId;
+        }
+        return new CardProfile(cardId, remainingTries, balance, info);
+    }
+
+    private byte[] readPersonalInfoOrNull() {
+        byte[] response = sendCommand(INS_GET, P1_CITIZEN_INFO, P2_INFORMATION, null);
+        return isSuccess(response) ? getResponseData(response) : null;
+    }
+
     /**
      * Get Card ID (v2.0)
      */
@@ -511,7 +895,8 @@ public class CardService {
 
         if (isSuccess(response)) {
             byte[] cardIdData = getResponseData(response);
-            return new String(cardIdData).trim();
+            connectedCardId = new String(cardIdData).trim();
+            return connectedCardId;
         } else {
             throw new RuntimeException("Failed to get card ID");
         }
@@ -596,15 +981,12 @@ public class CardService {
      * Disconnect from card
      */
     public void disconnect() {
-        if (channel != null) {
-            try {
-                channel.getCard().disconnect(false);
-                connected = false;
-                channel = null;
-                System.out.println("✅ Disconnected from card");
-            } catch (Exception e) {
-                System.out.println("⚠️ Error disconnecting from card: " + e.getMessage());
-            }
+        if (transport != null && transport.isOpen()) {
+            transport.close();
+            connected = false;
+            avatarChunkSize = 0;
+            connectedCardId = null;
+            System.out.println("✅ Disconnected from card");
         }
     }
 
@@ -612,7 +994,7 @@ public class CardService {
      * Check if connected to card
      */
     public boolean isConnected() {
-        return connected && channel != null;
+        return connected && transport != null && transport.isOpen();
     }
 
     // =====================================================
@@ -660,7 +1042,12 @@ public class CardService {
 
         if (isSuccess(response)) {
             byte[] data = getResponseData(response);
-            return data.length > 0 && data[0] == 0x01;
+            boolean cleared = data.length > 0 && data[0] == 0x01;
+            if (cleared) {
+                avatarCache.invalidate(connectedCardId);
+                publicKeys.invalidate(connectedCardId);
+            }
+            return cleared;
         }
 
         return false;
@@ -710,8 +1097,9 @@ public class CardService {
             throw new IllegalArgumentException("Info data is empty");
         }
 
-        if (infoData.length > 256) {
-            throw new IllegalArgumentException("Info data too large (max 256 bytes)");
+        if (infoData.length > CitizenInfoParser.MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Info data too large (max " + CitizenInfoParser.MAX_RECORD_LENGTH + " bytes)");
         }
 
         byte[] response = sendCommand(INS_UPDATE, P1_CITIZEN_INFO, P2_INFORMATION, infoData);
@@ -732,6 +1120,40 @@ public class CardService {
         }
     }
 
+    /**
+     * Update one personal info field - Requires PIN verification
+     *
+     * Sends only [tag][len][value] (tag = CitizenInfoParser.TAG_*); the applet
+     * patches the field in place and re-encrypts just the blocks it touches.
+     * Empty value removes the field; a card without info gets a new record.
+     * Returns false if the record would outgrow MAX_RECORD_LENGTH.
+     * Legacy pipe-format records (6985) and applets without UPDATE INFO_FIELD
+     * (6A86) get the whole record rewritten in the v1 format instead.
+     */
+    public boolean updateInfoField(byte tag, String value) {
+        byte[] field = CitizenInfoParser.encodeField(tag, value);
+        byte[] response = sendCommand(INS_UPDATE, P1_CITIZEN_INFO, P2_INFO_FIELD, field);
+        if (isSuccess(response)) {
+            return true;
+        }
+
+        int sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+        if (sw != SW_CONDITIONS_NOT_SATISFIED && sw != 0x6A86) {
+            return false;
+        }
+
+        System.out.println("[CARD] Field update not possible in place, rewriting info record");
+        byte[] current = getPersonalInfo();
+        CitizenInfo info = CitizenInfoParser.withField(CitizenInfoParser.parse(current), tag, value);
+        byte[] record = CitizenInfoParser.serialize(info);
+        if (record.length > CitizenInfoParser.MAX_RECORD_LENGTH) {
+            System.err.println("[CARD] Info record would be " + record.length + " bytes, card returns at most "
+                    + CitizenInfoParser.MAX_RECORD_LENGTH);
+            return false;
+        }
+        return updatePersonalInfo(record);
+    }
+
     /**
      * Forget PIN (v2.0) - Admin function to reset PIN
      */
@@ -747,7 +1169,22 @@ public class CardService {
     // =====================================================
 
     private static final SecureRandom secureRandom = new SecureRandom();
-    private PublicKey cachedPublicKey = null;
+    private final PublicKeyCache publicKeys = PublicKeyCache.getInstance();
+
+    /**
+     * Challenge sent to the card and its signature (see CardDAO.recordChallenge for audits)
+     */
+    public static class ChallengeResponse {
+        public final String challenge;
+        public final byte[] signature;
+        public final boolean valid;
+
+        public ChallengeResponse(String challenge, byte[] signature, boolean valid) {
+            this.challenge = challenge;
+            this.signature = signature;
+            this.valid = valid;
+        }
+    }
 
     /**
      * Challenge card with random data and verify signature
@@ -756,6 +1193,16 @@ public class CardService {
      * @return true if card is authentic
      */
     public boolean challengeCard() {
+        ChallengeResponse response = authenticateCard();
+        return response != null && response.valid;
+    }
+
+    /**
+     * challengeCard() keeping the challenge and signature
+     * 
+     * @return Challenge, signature and verification result, or null if the card did not sign
+     */
+    public ChallengeResponse authenticateCard() {
         try {
             // Generate random challenge
             byte[] challenge = new byte[16];
@@ -764,14 +1211,18 @@ public class CardService {
 
             System.out.println("[AUTH] Challenge: " + challengeStr);
 
-            // Get public key if not cached
-            if (cachedPublicKey == null) {
-                byte[] pubKeyData = getPublicKey();
-                cachedPublicKey = RSAUtils.generatePublicKeyFromBytes(pubKeyData);
+            // Known card: registered key from the shared cache / database, no APDU.
+            // Otherwise the key the card reports - used for this check only and never
+            // cached, or a card could plant a key for any card ID it claims
+            String cardId = connectedCardId != null ? connectedCardId : getCardId();
+            PublicKey publicKey = publicKeys.get(cardId);
+            boolean registered = publicKey != null;
+            if (!registered) {
+                publicKey = RSAUtils.generatePublicKeyFromBytes(getPublicKey());
 
-                if (cachedPublicKey == null) {
+                if (publicKey == null) {
                     System.err.println("[AUTH] Failed to parse public key");
-                    return false;
+                    return null;
                 }
             }
 
@@ -780,14 +1231,14 @@ public class CardService {
 
             if (!isSuccess(response)) {
                 System.err.println("[AUTH] Card did not sign challenge");
-                return false;
+                return null;
             }
 
             byte[] signature = getResponseData(response);
             System.out.println("[AUTH] Received signature: " + signature.length + " bytes");
 
             // Verify signature
-            boolean valid = RSAUtils.verifySignature(signature, cachedPublicKey, challengeStr);
+            boolean valid = RSAUtils.verifySignature(signature, publicKey, challengeStr);
 
             if (valid) {
                 System.out.println("[AUTH] Card authentication SUCCESSFUL");
@@ -795,19 +1246,35 @@ public class CardService {
                 System.err.println("[AUTH] Card authentication FAILED - Invalid signature");
             }
 
-            return valid;
+            if (registered) {
+                recordChallenge(cardId, challengeStr, signature, valid);
+            }
+            return new ChallengeResponse(challengeStr, signature, valid);
 
         } catch (Exception e) {
             System.err.println("[AUTH] Challenge failed: " + e.getMessage());
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Keep the challenge for the nightly audit (BatchSignatureVerifier) - a database
+     * problem must not fail the authentication itself
+     */
+    private void recordChallenge(String cardId, String challenge, byte[] signature, boolean valid) {
+        try {
+            CardDAO.getInstance().recordChallenge(cardId, challenge, signature, valid);
+        } catch (Exception e) {
+            System.err.println("[AUTH] Could not record challenge: " + e.getMessage());
         }
     }
 
     /**
-     * Clear cached public key (call when switching cards)
+     * Forget the connected card's cached public key
+     * (not needed when switching cards - keys are cached per card ID)
      */
     public void clearPublicKeyCache() {
-        cachedPublicKey = null;
+        publicKeys.invalidate(connectedCardId);
     }
 
     private String bytesToHex(byte[] bytes) {
@@ -824,14 +1291,68 @@ public class CardService {
 
     private static final int MAX_AVATAR_SIZE = 15360; // 15KB
 
+    private static final int SHORT_AVATAR_CHUNK = 200; // fits a short APDU on any reader
+    private static final int STREAMING_AVATAR_CHUNK = 2048; // chunk cap when a listener renders progress
+    private static final int AVATAR_HEADER_SIZE = 4; // [totalLen:2][offset|chunkLen:2]
+    private static final int SW_WRONG_LENGTH = 0x6700;
+
+    /**
+     * Avatar chunk size for this connection
+     * 
+     * Negotiated once per connection: min(reader APDU limit, card limits from
+     * GET TRANSFER_LIMITS) minus the 4-byte header. With an extended-length reader
+     * the whole avatar moves in one APDU; old applets / short-only readers get 200.
+     */
+    public int getAvatarChunkSize() {
+        if (avatarChunkSize == 0) {
+            avatarChunkSize = negotiateAvatarChunkSize();
+            System.out.println("[AVATAR] Chunk size: " + avatarChunkSize + " bytes");
+        }
+        return avatarChunkSize;
+    }
+
+    private int negotiateAvatarChunkSize() {
+        int readerLimit = transport.getMaxApduDataLength();
+        if (readerLimit <= CardTransport.SHORT_APDU_MAX_DATA) {
+            return SHORT_AVATAR_CHUNK;
+        }
+
+        byte[] response = sendCommand(INS_GET, (byte) 0x00, P2_TRANSFER_LIMITS, null);
+        byte[] data = getResponseData(response);
+        if (!isSuccess(response) || data.length < 4) {
+            return SHORT_AVATAR_CHUNK; // applet without negotiation support
+        }
+
+        int cardCommandLimit = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+        int cardResponseLimit = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+        int limit = Math.min(readerLimit, Math.min(cardCommandLimit, cardResponseLimit));
+        return Math.max(SHORT_AVATAR_CHUNK, limit - AVATAR_HEADER_SIZE);
+    }
+
+    /**
+     * Drop back to short APDUs after the reader rejected an extended one
+     * 
+     * @return true if there was an extended chunk size to fall back from
+     */
+    private boolean fallBackToShortChunks(String reason) {
+        if (avatarChunkSize <= SHORT_AVATAR_CHUNK) {
+            return false;
+        }
+        System.err.println("[AVATAR] Extended APDU failed (" + reason + "), falling back to "
+                + SHORT_AVATAR_CHUNK + "-byte chunks");
+        avatarChunkSize = SHORT_AVATAR_CHUNK;
+        return true;
+    }
+
     /**
      * Upload avatar to card using Extended APDU (supports up to 15KB)
+     * Chunk size negotiated by getAvatarChunkSize()
      * 
      * @param avatarData Avatar bytes (max 15KB)
      * @return true if successful
      */
     public boolean uploadAvatar(byte[] avatarData) {
-        if (!connected || channel == null) {
+        if (!isConnected()) {
             throw new RuntimeException("Not connected to card");
         }
 
@@ -844,24 +1365,17 @@ public class CardService {
         }
 
         try {
-            System.out.println("============================================================");
-            System.out.println("[AVATAR UPLOAD] Starting chunked transfer...");
-            System.out.println("  Total size: " + avatarData.length + " bytes");
-            System.out.println("============================================================");
-
-            // Use chunked transfer (max 200 bytes per chunk)
-            final int CHUNK_SIZE = 200;
+            int chunkSize = getAvatarChunkSize();
             int offset = 0;
             int chunkNum = 0;
-            int totalChunks = (avatarData.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
 
             while (offset < avatarData.length) {
                 int remaining = avatarData.length - offset;
-                int chunkLen = Math.min(CHUNK_SIZE, remaining);
+                int chunkLen = Math.min(chunkSize, remaining);
                 boolean isLastChunk = (offset + chunkLen >= avatarData.length);
 
                 // Build chunk: [totalLen:2][offset:2][data:N]
-                byte[] chunk = new byte[chunkLen + 4];
+                byte[] chunk = new byte[chunkLen + AVATAR_HEADER_SIZE];
 
                 // Header
                 chunk[0] = (byte) ((avatarData.length >> 8) & 0xFF);
@@ -870,49 +1384,40 @@ public class CardService {
                 chunk[3] = (byte) (offset & 0xFF);
 
                 // Copy chunk data
-                System.arraycopy(avatarData, offset, chunk, 4, chunkLen);
+                System.arraycopy(avatarData, offset, chunk, AVATAR_HEADER_SIZE, chunkLen);
 
                 // P2: bit 7 = 1 if more chunks coming
                 byte p2 = isLastChunk ? P2_AVATAR : (byte) (P2_AVATAR | 0x80);
 
-                System.out.println("------------------------------------------------------------");
-                System.out.println("[AVATAR] Sending chunk #" + (chunkNum + 1) + "/" + totalChunks);
-                System.out.println("[AVATAR] -> INS: 0x01 (CREATE)");
-                System.out.println("[AVATAR] -> P1: 0x05 (CITIZEN_INFO)");
-                System.out.println("[AVATAR] -> P2: 0x" + String.format("%02X", p2 & 0xFF) +
-                        (isLastChunk ? " (AVATAR - LAST CHUNK)" : " (AVATAR | 0x80 - MORE CHUNKS)"));
-                System.out.println("[AVATAR] -> Chunk header: totalLen=" + avatarData.length + ", offset=" + offset);
-                System.out.println("[AVATAR] -> Chunk data size: " + chunkLen + " bytes");
-
-                byte[] response = sendCommand(INS_CREATE, P1_CITIZEN_INFO, p2, chunk);
+                byte[] response;
+                try {
+                    response = sendCommand(INS_CREATE, P1_CITIZEN_INFO, p2, chunk);
+                } catch (RuntimeException e) {
+                    if (chunkNum == 0 && fallBackToShortChunks(e.getMessage())) {
+                        return uploadAvatar(avatarData);
+                    }
+                    throw e;
+                }
 
                 if (!isSuccess(response)) {
                     int sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
-                    System.err.println("[AVATAR] <- SW: 0x" + String.format("%04X", sw) + " (FAILED)");
-                    System.err.println("[AVATAR] Chunk " + (chunkNum + 1) + " upload failed!");
+                    if (chunkNum == 0 && sw == SW_WRONG_LENGTH
+                            && fallBackToShortChunks("SW=0x" + String.format("%04X", sw))) {
+                        return uploadAvatar(avatarData);
+                    }
+                    System.err.println("[AVATAR] Chunk " + (chunkNum + 1) + " upload failed at offset " + offset
+                            + ": SW=0x" + String.format("%04X", sw));
                     return false;
                 }
 
-                byte[] responseData = getResponseData(response);
-                System.out.println("[AVATAR] <- SW: 0x9000 (SUCCESS)");
-                if (responseData.length > 0) {
-                    System.out.println("[AVATAR] <- Response data: " + responseData.length + " bytes");
-                }
-
                 offset += chunkLen;
                 chunkNum++;
-
-                int progress = (offset * 100) / avatarData.length;
-                System.out.println(
-                        "[AVATAR] Progress: " + offset + "/" + avatarData.length + " bytes (" + progress + "%)");
             }
 
-            System.out.println("============================================================");
-            System.out.println("[AVATAR UPLOAD] Summary:");
-            System.out.println("  Total chunks sent: " + chunkNum);
-            System.out.println("  Total bytes uploaded: " + avatarData.length);
-            System.out.println("  Status: SUCCESS");
-            System.out.println("============================================================");
+            System.out.println("[AVATAR UPLOAD] " + avatarData.length + " bytes in " + chunkNum + " chunks");
+            if (connectedCardId != null) {
+                avatarCache.put(connectedCardId, getAvatarVersion(), avatarData);
+            }
             return true;
 
         } catch (Exception e) {
@@ -922,26 +1427,53 @@ public class CardService {
         }
     }
 
+    /**
+     * Receives the avatar while it downloads (called on the card-owner thread)
+     */
+    @FunctionalInterface
+    public interface AvatarListener {
+        /**
+         * @param received    Download buffer - bytes [0, length) are valid; copy what you keep
+         * @param length      Bytes received so far
+         * @param totalLength Size of the whole avatar
+         */
+        void onChunk(byte[] received, int length, int totalLength);
+    }
+
     /**
      * Download avatar from card using chunked transfer
-     * Uses INS_GET_AVATAR_CHUNK (0x04) with P1|P2 = offset
+     * Uses INS_GET_AVATAR_CHUNK (0x04) with P1|P2 = offset and Le = chunk size + 4
      * Response format: [totalLen:2][chunkLen:2][data:N]
      * 
      * @return Avatar bytes or null if no avatar
      */
     public byte[] downloadAvatar() {
-        if (!connected || channel == null) {
+        return downloadAvatar(null);
+    }
+
+    /**
+     * Download avatar, reporting every chunk to the listener as it arrives
+     * 
+     * With a listener the chunk size is capped at STREAMING_AVATAR_CHUNK so the
+     * photo can be drawn progressively even on extended-length readers.
+     * 
+     * @return Avatar bytes or null if no avatar
+     */
+    public byte[] downloadAvatar(AvatarListener listener) {
+        if (!isConnected()) {
             throw new RuntimeException("Not connected to card");
         }
 
         try {
-            System.out.println("============================================================");
-            System.out.println("[AVATAR DOWNLOAD] Starting chunked transfer...");
-            System.out.println("============================================================");
-
-            ByteArrayOutputStream fullAvatar = new ByteArrayOutputStream();
+            byte[] fullAvatar = new byte[0];
+            int chunkSize = getAvatarChunkSize();
+            if (listener != null) {
+                chunkSize = Math.min(chunkSize, STREAMING_AVATAR_CHUNK);
+            }
+            int ne = chunkSize > SHORT_AVATAR_CHUNK ? chunkSize + AVATAR_HEADER_SIZE : 0;
             int offset = 0;
             int totalExpectedSize = 0;
+            int chunkCount = 0;
             final int MAX_CHUNKS = 100; // Safety limit
 
             for (int chunkNum = 0; chunkNum < MAX_CHUNKS; chunkNum++) {
@@ -949,30 +1481,36 @@ public class CardService {
                 byte p1 = (byte) ((offset >> 8) & 0xFF);
                 byte p2 = (byte) (offset & 0xFF);
 
-                System.out.println("------------------------------------------------------------");
-                System.out.println("[AVATAR] Requesting chunk #" + chunkNum);
-                System.out.println("[AVATAR] -> INS: 0x04 (GET_AVATAR_CHUNK)");
-                System.out.println("[AVATAR] -> P1|P2 offset: " + offset + " (P1=0x" + String.format("%02X", p1 & 0xFF)
-                        + ", P2=0x" + String.format("%02X", p2 & 0xFF) + ")");
-
                 // Send GET_AVATAR_CHUNK command with offset in P1|P2
-                byte[] response = sendCommand(INS_GET_AVATAR_CHUNK, p1, p2, null);
+                byte[] response;
+                try {
+                    response = sendCommand(INS_GET_AVATAR_CHUNK, p1, p2, null, ne);
+                } catch (RuntimeException e) {
+                    if (chunkNum == 0 && fallBackToShortChunks(e.getMessage())) {
+                        return downloadAvatar(listener);
+                    }
+                    throw e;
+                }
 
                 if (!isSuccess(response)) {
                     int sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
-                    System.err.println("[AVATAR] <- SW: 0x" + String.format("%04X", sw) + " (FAILED)");
+                    if (chunkNum == 0 && sw == SW_WRONG_LENGTH
+                            && fallBackToShortChunks("SW=0x" + String.format("%04X", sw))) {
+                        return downloadAvatar(listener);
+                    }
                     if (offset == 0) {
                         System.out.println("[AVATAR] No avatar stored on card");
                         return null;
                     }
+                    System.err.println("[AVATAR] Chunk request failed at offset " + offset
+                            + ": SW=0x" + String.format("%04X", sw));
                     break;
                 }
 
                 byte[] data = getResponseData(response);
-                System.out.println("[AVATAR] <- Response length: " + data.length + " bytes");
 
                 // Parse response: [totalLen:2][chunkLen:2][data:N]
-                if (data.length < 4) {
+                if (data.length < AVATAR_HEADER_SIZE) {
                     System.err.println("[AVATAR] Invalid response - too short");
                     break;
                 }
@@ -980,71 +1518,59 @@ public class CardService {
                 int totalLen = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
                 int chunkLen = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
 
-                System.out.println("[AVATAR] <- totalLen: " + totalLen + " bytes");
-                System.out.println("[AVATAR] <- chunkLen: " + chunkLen + " bytes");
-
                 // Store expected size on first chunk
                 if (chunkNum == 0) {
                     totalExpectedSize = totalLen;
-                    System.out.println("[AVATAR] Total avatar size: " + totalExpectedSize + " bytes");
+                    fullAvatar = new byte[totalLen];
                 }
 
                 // Check if we're done (chunkLen == 0)
                 if (chunkLen == 0) {
-                    System.out.println("[AVATAR] End of data reached");
                     break;
                 }
 
                 // Validate chunk data
-                if (data.length < 4 + chunkLen) {
+                if (data.length < AVATAR_HEADER_SIZE + chunkLen) {
                     System.err.println(
                             "[AVATAR] Chunk data incomplete: expected " + chunkLen + ", got " + (data.length - 4));
                     break;
                 }
 
+                if (offset + chunkLen > totalExpectedSize) {
+                    System.err.println("[AVATAR] Chunk past end of avatar at offset " + offset);
+                    break;
+                }
+
                 // Extract chunk data (skip 4-byte header)
-                fullAvatar.write(data, 4, chunkLen);
+                System.arraycopy(data, AVATAR_HEADER_SIZE, fullAvatar, offset, chunkLen);
                 offset += chunkLen;
+                chunkCount++;
 
-                System.out.println("[AVATAR] Progress: " + offset + "/" + totalExpectedSize + " bytes (" +
-                        (totalExpectedSize > 0 ? (offset * 100 / totalExpectedSize) : 0) + "%)");
+                if (listener != null) {
+                    listener.onChunk(fullAvatar, offset, totalExpectedSize);
+                }
 
                 // Check if download complete
                 if (offset >= totalExpectedSize) {
-                    System.out.println("[AVATAR] Download complete!");
                     break;
                 }
             }
 
-            byte[] photoData = fullAvatar.toByteArray();
-
-            System.out.println("============================================================");
-            System.out.println("[AVATAR DOWNLOAD] Summary:");
-            System.out.println("  Total bytes received: " + photoData.length);
-            System.out.println("  Expected size: " + totalExpectedSize);
+            byte[] photoData = offset == fullAvatar.length ? fullAvatar
+                    : java.util.Arrays.copyOf(fullAvatar, offset);
 
             if (photoData.length == 0) {
                 System.out.println("[AVATAR] No avatar data received");
-                System.out.println("============================================================");
                 return null;
             }
 
-            // Debug: show first bytes to verify JPEG header
-            StringBuilder firstBytes = new StringBuilder("  First 16 bytes: ");
-            for (int i = 0; i < Math.min(16, photoData.length); i++) {
-                firstBytes.append(String.format("%02X ", photoData[i] & 0xFF));
-            }
-            System.out.println(firstBytes.toString());
+            System.out.println("[AVATAR DOWNLOAD] " + photoData.length + "/" + totalExpectedSize
+                    + " bytes in " + chunkCount + " chunks");
 
-            // JPEG should start with FF D8 FF
-            if (photoData.length >= 2 &&
-                    (photoData[0] & 0xFF) == 0xFF &&
-                    (photoData[1] & 0xFF) == 0xD8) {
-                System.out.println("  Format: Valid JPEG header detected!");
-            } else {
-                System.err.println("  WARNING: Data does not have JPEG header!");
+            // JPEG should start with FF D8
+            if (photoData.length < 2 || (photoData[0] & 0xFF) != 0xFF || (photoData[1] & 0xFF) != 0xD8) {
+                System.err.println("[AVATAR] WARNING: Data does not have JPEG header!");
             }
-            System.out.println("============================================================");
 
             return photoData;
 
@@ -1055,6 +1581,107 @@ public class CardService {
         }
     }
 
+    // =====================================================
+    // AVATAR CACHE
+    // =====================================================
+
+    private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+
+    /**
+     * Version of the avatar currently on the card, or null if there is none
+     *
+     * GET AVATAR_VERSION returns [version:2][SHA-1(avatar):8], updated by the
+     * applet on every upload and cleared with the card. Older applets answer
+     * 6A86; for those the version is fingerprinted from the photo itself.
+     */
+    public String getAvatarVersion() {
+        byte[] response = sendCommand(INS_GET, (byte) 0x00, P2_AVATAR_VERSION, null);
+        if (isSuccess(response)) {
+            byte[] data = getResponseData(response);
+            StringBuilder version = new StringBuilder("v:");
+            for (byte b : data) {
+                version.append(String.format("%02x", b));
+            }
+            return version.toString();
+        }
+        int sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+        if (sw == SW_CONDITIONS_NOT_SATISFIED) {
+            return null; // no avatar stored
+        }
+        return fingerprintAvatar();
+    }
+
+    /**
+     * Two small GET_AVATAR_CHUNK reads (length + first/last bytes) hashed by
+     * AvatarCache.fingerprint() - a few hundred bytes instead of the whole photo
+     */
+    private String fingerprintAvatar() {
+        int ne = AvatarCache.FINGERPRINT_SAMPLE + AVATAR_HEADER_SIZE;
+        byte[] response = sendCommand(INS_GET_AVATAR_CHUNK, (byte) 0x00, (byte) 0x00, null, ne);
+        if (!isSuccess(response)) {
+            return null; // no avatar stored
+        }
+        byte[] head = getResponseData(response);
+        if (head.length < AVATAR_HEADER_SIZE) {
+            throw new RuntimeException("Invalid avatar chunk response");
+        }
+        int totalLen = ((head[0] & 0xFF) << 8) | (head[1] & 0xFF);
+        int headLen = ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+        if (totalLen == 0 || headLen == 0) {
+            return null;
+        }
+
+        byte[] tail = new byte[AVATAR_HEADER_SIZE];
+        if (totalLen > headLen) {
+            int offset = Math.max(headLen, totalLen - AvatarCache.FINGERPRINT_SAMPLE);
+            response = sendCommand(INS_GET_AVATAR_CHUNK, (byte) (offset >> 8), (byte) offset, null, ne);
+            if (!isSuccess(response)) {
+                throw new RuntimeException("Failed to read avatar version");
+            }
+            tail = getResponseData(response);
+        }
+        return AvatarCache.fingerprint(totalLen,
+                java.util.Arrays.copyOfRange(head, AVATAR_HEADER_SIZE, AVATAR_HEADER_SIZE + headLen),
+                java.util.Arrays.copyOfRange(tail, AVATAR_HEADER_SIZE, tail.length));
+    }
+
+    /**
+     * Avatar via the host-side cache - full download only if the card's version changed
+     *
+     * @return Avatar bytes or null if no avatar
+     */
+    public byte[] downloadAvatarCached() {
+        return downloadAvatarCached(null);
+    }
+
+    /**
+     * downloadAvatarCached() with progress - the listener only hears from a real download
+     */
+    public byte[] downloadAvatarCached(AvatarListener listener) {
+        if (!isConnected()) {
+            throw new RuntimeException("Not connected to card");
+        }
+
+        String cardId = connectedCardId != null ? connectedCardId : getCardId();
+        String version = getAvatarVersion();
+        if (version == null) {
+            System.out.println("[AVATAR] No avatar stored on card");
+            return null;
+        }
+
+        byte[] cached = avatarCache.get(cardId, version);
+        if (cached != null) {
+            System.out.println("[AVATAR] Cache hit (" + version + ", " + cached.length + " bytes)");
+            return cached;
+        }
+
+        byte[] photo = downloadAvatar(listener);
+        if (photo != null) {
+            avatarCache.put(cardId, version, photo);
+        }
+        return photo;
+    }
+
     /**
      * Update existing avatar (v2.0) - Same as upload with chunked transfer
      */
@@ -0,0 +1,54 @@
+package citizencard.service;
+
+import java.io.IOException;
+
+/**
+ * Card Transport - raw APDU link used by CardService
+ *
+ * Implementations:
+ * - PcscCardTransport: physical reader / JCIDE via javax.smartcardio
+ * - EmulatedCardTransport: in-process citizen_applet emulator (no reader needed)
+ */
+public interface CardTransport {
+
+    /** Max data field of a short APDU (Lc = 1..255, Le = 1..256) */
+    int SHORT_APDU_MAX_DATA = 255;
+
+    /** Max data field of an extended APDU (ISO 7816-4) */
+    int EXTENDED_APDU_MAX_DATA = 65535;
+
+    /**
+     * Open the link to the card (does NOT select the applet)
+     */
+    void open() throws IOException;
+
+    /**
+     * Send raw command APDU bytes
+     *
+     * @return Full response (data + SW1 SW2)
+     */
+    byte[] transmit(byte[] command) throws IOException;
+
+    /**
+     * Close the link to the card
+     */
+    void close();
+
+    /**
+     * Check if link is open
+     */
+    boolean isOpen();
+
+    /**
+     * Short name for logging (reader name or "emulator")
+     */
+    String getName();
+
+    /**
+     * Largest APDU data field this link can carry
+     * CardService negotiates the avatar chunk size from this and the card's limits
+     */
+    default int getMaxApduDataLength() {
+        return SHORT_APDU_MAX_DATA;
+    }
+}
@@ -0,0 +1,75 @@
+package citizencard.service;
+
+import java.io.IOException;
+
+/**
+ * Emulated Card Transport - routes APDUs to an in-process AppletEmulator
+ *
+ * Used for load tests and development without a reader.
+ * Enable in the desktop app with -Dcitizencard.transport=emulator
+ */
+public class EmulatedCardTransport implements CardTransport {
+
+    private final AppletEmulator card;
+    private volatile boolean open = false;
+
+    /**
+     * Insert a fresh blank card
+     */
+    public EmulatedCardTransport() {
+        this(new AppletEmulator());
+    }
+
+    /**
+     * Insert an existing emulated card (keeps its persistent state)
+     */
+    public EmulatedCardTransport(AppletEmulator card) {
+        this.card = card;
+    }
+
+    @Override
+    public void open() {
+        if (!open) {
+            card.reset();
+            open = true;
+        }
+    }
+
+    @Override
+    public byte[] transmit(byte[] command) throws IOException {
+        if (!open) {
+            throw new IOException("Not connected to card");
+        }
+        return card.process(command);
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            card.reset();
+            open = false;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public String getName() {
+        return "emulator";
+    }
+
+    @Override
+    public int getMaxApduDataLength() {
+        return EXTENDED_APDU_MAX_DATA;
+    }
+
+    /**
+     * Access the emulated card (e.g. to move it to another transport)
+     */
+    public AppletEmulator getCard() {
+        return card;
+    }
+}
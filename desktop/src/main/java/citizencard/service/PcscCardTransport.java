@@ -0,0 +1,103 @@
+package citizencard.service;
+
+import javax.smartcardio.*;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * PC/SC Card Transport - physical reader or JCIDE terminal via javax.smartcardio
+ */
+public class PcscCardTransport implements CardTransport {
+
+    private static final String REQUIRED_PROTOCOL = "T=1";
+
+    // Reader APDU limit: -Dcitizencard.reader.maxApdu=255 forces short APDUs
+    // (PC/SC has no portable query - default assumes extended, CardService falls back on failure)
+    private static final String MAX_APDU_PROPERTY = "citizencard.reader.maxApdu";
+
+    private CardTerminal terminal;
+    private Card card;
+    private CardChannel channel;
+
+    /**
+     * Use first terminal reported by the default TerminalFactory
+     */
+    public PcscCardTransport() {
+        this(null);
+    }
+
+    /**
+     * Use a specific terminal (null = first available)
+     */
+    public PcscCardTransport(CardTerminal terminal) {
+        this.terminal = terminal;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+
+        try {
+            if (terminal == null) {
+                List<CardTerminal> terminals = TerminalFactory.getDefault().terminals().list();
+                if (terminals.isEmpty()) {
+                    throw new IOException("No card terminals found");
+                }
+                terminal = terminals.get(0);
+            }
+
+            if (!terminal.isCardPresent()) {
+                throw new IOException("No card present in terminal");
+            }
+
+            card = terminal.connect(REQUIRED_PROTOCOL);
+            channel = card.getBasicChannel();
+
+        } catch (CardException e) {
+            throw new IOException("Failed to connect to card: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] transmit(byte[] command) throws IOException {
+        if (channel == null) {
+            throw new IOException("Not connected to card");
+        }
+
+        try {
+            return channel.transmit(new CommandAPDU(command)).getBytes();
+        } catch (CardException e) {
+            throw new IOException("Error sending APDU: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (card != null) {
+            try {
+                card.disconnect(false);
+            } catch (CardException e) {
+                System.err.println("Error disconnecting card: " + e.getMessage());
+            }
+        }
+        card = null;
+        channel = null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    @Override
+    public String getName() {
+        return terminal != null ? terminal.getName() : "pcsc";
+    }
+
+    @Override
+    public int getMaxApduDataLength() {
+        return Integer.getInteger(MAX_APDU_PROPERTY, EXTENDED_APDU_MAX_DATA);
+    }
+}
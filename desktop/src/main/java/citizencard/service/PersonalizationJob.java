@@ -0,0 +1,202 @@
+package citizencard.service;
+
+import citizencard.dao.CardDAO;
+import citizencard.model.CitizenInfo;
+import citizencard.util.CitizenInfoParser;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Personalization Job - issues one citizen card as a TerminalPool job
+ *
+ * Steps: clear card -> initialize (PIN + Card ID) -> get public key -> register in DB
+ * -> personal info -> avatar -> initial balance
+ *
+ * Used by the issuance desk (DemoWorkflowController), which queues one job per card
+ * so several readers personalize in parallel. Photo must already be prepared for the
+ * card (PhotoUtils.preparePhotoForCard), so readers are not held while images are compressed.
+ */
+public class PersonalizationJob implements TerminalPool.CardJob<PersonalizationJob.Result> {
+
+    /** Public key stored for applets built without RSA */
+    public static final String NO_RSA_KEY = "SIMPLIFIED_APPLET_NO_RSA_KEY";
+
+    /**
+     * Progress reported to the caller (called on the reader thread)
+     */
+    public enum Step {
+        CLEAR, INITIALIZE, PUBLIC_KEY, REGISTER, PERSONAL_INFO, AVATAR, BALANCE
+    }
+
+    private final CitizenInfo info;
+    private final String cardId;
+    private final byte[] cardPhotoData;
+    private final CardDAO cardDAO;
+    private Consumer<Step> progress = step -> {
+    };
+
+    /**
+     * Outcome of one personalized card
+     */
+    public static class Result {
+        public final String cardId;
+        public final String publicKeyBase64;
+        public final String reader;
+        public final List<String> warnings; // optional steps that failed (info, avatar, balance)
+
+        public Result(String cardId, String publicKeyBase64, String reader, List<String> warnings) {
+            this.cardId = cardId;
+            this.publicKeyBase64 = publicKeyBase64;
+            this.reader = reader;
+            this.warnings = warnings;
+        }
+    }
+
+    /**
+     * @param info          Citizen info (PIN, balance and personal fields)
+     * @param cardId        Card ID to write on the card
+     * @param cardPhotoData Prepared avatar bytes or null
+     * @param cardDAO       Database for registration, or null to skip
+     */
+    public PersonalizationJob(CitizenInfo info, String cardId, byte[] cardPhotoData, CardDAO cardDAO) {
+        this.info = info;
+        this.cardId = cardId;
+        this.cardPhotoData = cardPhotoData;
+        this.cardDAO = cardDAO;
+    }
+
+    /**
+     * Listener for step changes, e.g. a progress dialog
+     */
+    public PersonalizationJob onProgress(Consumer<Step> listener) {
+        this.progress = listener;
+        return this;
+    }
+
+    @Override
+    public Result run(CardService card) throws Exception {
+        String reader = card.getTransport().getName();
+        String issuedId = cardId;
+        List<String> warnings = new ArrayList<>();
+
+        try {
+            // Step 1: Clear old data (new cards may reject this)
+            progress.accept(Step.CLEAR);
+            try {
+                card.clearCard();
+            } catch (Exception e) {
+                System.out.println("[POOL] " + reader + ": could not clear card (might be new card): " + e.getMessage());
+            }
+
+            // Step 2: Initialize with PIN and Card ID
+            progress.accept(Step.INITIALIZE);
+            issuedId = initialize(card, reader);
+
+            // Step 3: Public key for registration
+            progress.accept(Step.PUBLIC_KEY);
+            String publicKeyBase64 = readPublicKey(card, reader);
+
+            // Step 4: Register in database
+            progress.accept(Step.REGISTER);
+            if (cardDAO != null && !cardDAO.isCardRegistered(issuedId)) {
+                if (!cardDAO.registerCard(issuedId, publicKeyBase64)) {
+                    throw new Exception("Failed to register card in database: " + issuedId);
+                }
+                System.out.println("[DB] Card registered: " + issuedId);
+            }
+
+            // Step 5: Personal info
+            progress.accept(Step.PERSONAL_INFO);
+            try {
+                if (!card.updatePersonalInfo(CitizenInfoParser.serialize(info))) {
+                    warnings.add("personal info not saved");
+                }
+            } catch (Exception e) {
+                warnings.add("personal info not saved: " + e.getMessage());
+            }
+
+            // Step 6: Avatar
+            if (cardPhotoData != null && cardPhotoData.length > 0) {
+                progress.accept(Step.AVATAR);
+                try {
+                    if (!card.uploadAvatar(cardPhotoData)) {
+                        warnings.add("avatar not uploaded");
+                    }
+                } catch (Exception e) {
+                    warnings.add("avatar not uploaded: " + e.getMessage());
+                }
+            }
+
+            // Step 7: Initial balance
+            if (info.balance > 0) {
+                progress.accept(Step.BALANCE);
+                try {
+                    card.topupBalance((int) info.balance);
+                } catch (Exception e) {
+                    warnings.add("initial balance not loaded: " + e.getMessage());
+                }
+            }
+
+            for (String warning : warnings) {
+                System.err.println("[POOL] " + reader + ": " + issuedId + " " + warning);
+            }
+            logTransaction(issuedId, true, "Card initialized successfully");
+            System.out.println("[POOL] " + reader + ": card personalized " + issuedId);
+            return new Result(issuedId, publicKeyBase64, reader, Collections.unmodifiableList(warnings));
+
+        } catch (Exception e) {
+            logTransaction(issuedId, false, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Write PIN + Card ID; a card already initialized with the same PIN keeps its ID
+     */
+    private String initialize(CardService card, String reader) throws Exception {
+        try {
+            card.initializeCard(info.pin, cardId);
+            return cardId;
+        } catch (Exception e) {
+            System.out.println("[POOL] " + reader + ": card may already be initialized: " + e.getMessage());
+        }
+
+        CardService.PinVerificationResult pinResult = card.verifyPin(info.pin);
+        if (!pinResult.success) {
+            throw new Exception(pinResult.remainingTries > 0
+                    ? "Card already initialized with another PIN (" + pinResult.remainingTries + " tries left)"
+                    : "Card already initialized with another PIN and is now blocked");
+        }
+        String existingId = card.getCardId();
+        System.out.println("[POOL] " + reader + ": card already initialized with ID " + existingId);
+        return existingId;
+    }
+
+    private String readPublicKey(CardService card, String reader) {
+        try {
+            byte[] publicKey = card.getPublicKey();
+            if (publicKey != null && publicKey.length > 0) {
+                return Base64.getEncoder().encodeToString(publicKey);
+            }
+        } catch (Exception e) {
+            System.out.println("[POOL] " + reader + ": no public key (simplified applet): " + e.getMessage());
+        }
+        return NO_RSA_KEY;
+    }
+
+    private void logTransaction(String issuedId, boolean success, String details) {
+        if (cardDAO == null) {
+            return;
+        }
+        try {
+            // UPDATE_INFO is the closest transaction type to card creation
+            cardDAO.logTransaction(issuedId, "UPDATE_INFO", success, details);
+        } catch (Exception e) {
+            System.err.println("[WARN] Could not log transaction: " + e.getMessage());
+        }
+    }
+}
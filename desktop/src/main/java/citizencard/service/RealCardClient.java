@@ -11,6 +11,7 @@ import java.util.List;
 public class RealCardClient {
     private TerminalFactory factory;
     private CardTerminal terminal;
+    private CardTerminal boundTerminal;
     private Card card;
     private CardChannel channel;
     private boolean connected = false;
@@ -24,18 +25,29 @@ public class RealCardClient {
         factory = TerminalFactory.getDefault();
     }
 
+    /**
+     * Bind to a specific reader (multi-reader setups, see TerminalPool)
+     */
+    public RealCardClient(CardTerminal terminal) {
+        this();
+        this.boundTerminal = terminal;
+        this.terminal = terminal;
+    }
+
     public synchronized void connect() throws IOException {
         if (connected) {
             return;
         }
 
         try {
-            List<CardTerminal> terminals = factory.terminals().list();
-            if (terminals.isEmpty()) {
-                throw new IOException("No card terminals found");
+            if (terminal == null) {
+                List<CardTerminal> terminals = factory.terminals().list();
+                if (terminals.isEmpty()) {
+                    throw new IOException("No card terminals found");
+                }
+                terminal = terminals.get(0);
             }
 
-            terminal = terminals.get(0);
             if (!terminal.isCardPresent()) {
                 throw new IOException("No card present in terminal");
             }
@@ -105,6 +117,6 @@ public class RealCardClient {
         connected = false;
         card = null;
         channel = null;
-        terminal = null;
+        terminal = boundTerminal;
     }
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+package citizencard.service;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.TerminalFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Terminal Pool - one CardService session per reader, jobs run on idle readers in parallel
+ *
+ * Used by the issuance desk to personalize several cards at once (see getIssuancePool).
+ * Each job gets exclusive use of one reader: connect + select applet, run, disconnect
+ * (so the operator can swap the card as soon as the job finishes).
+ */
+public class TerminalPool implements AutoCloseable {
+
+    /**
+     * Work executed against one connected card
+     */
+    @FunctionalInterface
+    public interface CardJob<T> {
+        T run(CardService card) throws Exception;
+    }
+
+    private static TerminalPool issuancePool;
+
+    private final List<CardService> sessions;
+    private final BlockingQueue<CardService> idleSessions;
+    private final ExecutorService executor;
+    private final AtomicInteger completedJobs = new AtomicInteger();
+    private final AtomicInteger failedJobs = new AtomicInteger();
+
+    /**
+     * Shared pool of the issuance desk: every attached reader, or - when the app runs
+     * on the emulator - the app's emulated card, so the issued card is the one it logs in with
+     */
+    public static synchronized TerminalPool getIssuancePool(CardService appCard) throws IOException {
+        if (issuancePool == null) {
+            CardTransport transport = appCard.getTransport();
+            if (transport instanceof EmulatedCardTransport) {
+                AppletEmulator card = ((EmulatedCardTransport) transport).getCard();
+                issuancePool = new TerminalPool(List.of(new EmulatedCardTransport(card)));
+            } else {
+                issuancePool = fromAllReaders();
+            }
+        }
+        return issuancePool;
+    }
+
+    /**
+     * Close the issuance desk pool if it was ever used (application shutdown)
+     */
+    public static synchronized void closeIssuancePool() {
+        if (issuancePool != null) {
+            issuancePool.close();
+            issuancePool = null;
+        }
+    }
+
+    /**
+     * Create a pool over every PC/SC terminal currently attached
+     */
+    public static TerminalPool fromAllReaders() throws IOException {
+        List<CardTerminal> terminals;
+        try {
+            terminals = TerminalFactory.getDefault().terminals().list();
+        } catch (CardException e) {
+            throw new IOException("Failed to list card terminals: " + e.getMessage(), e);
+        }
+
+        if (terminals.isEmpty()) {
+            throw new IOException("No card terminals found");
+        }
+
+        List<CardTransport> transports = new ArrayList<>();
+        for (CardTerminal terminal : terminals) {
+            transports.add(new PcscCardTransport(terminal));
+        }
+        System.out.println("[POOL] Found " + transports.size() + " card terminal(s)");
+        return new TerminalPool(transports);
+    }
+
+    /**
+     * Create a pool over explicit transports (e.g. several emulated cards)
+     */
+    public TerminalPool(List<? extends CardTransport> transports) {
+        if (transports == null || transports.isEmpty()) {
+            throw new IllegalArgumentException("Terminal pool needs at least one transport");
+        }
+
+        List<CardService> created = new ArrayList<>();
+        for (CardTransport transport : transports) {
+            created.add(new CardService(transport));
+        }
+        sessions = Collections.unmodifiableList(created);
+        idleSessions = new LinkedBlockingQueue<>(created);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(created.size(), r -> {
+            Thread t = new Thread(r, "card-reader-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Run job on the next idle reader
+     */
+    public <T> CompletableFuture<T> submit(CardJob<T> job) {
+        return CompletableFuture.supplyAsync(() -> {
+            CardService session;
+            try {
+                session = idleSessions.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+
+            try {
+                if (!session.connectToCard()) {
+                    throw new IOException("Cannot connect to card on " + session.getTransport().getName());
+                }
+                T result = job.run(session);
+                completedJobs.incrementAndGet();
+                return result;
+            } catch (Exception e) {
+                failedJobs.incrementAndGet();
+                throw new CompletionException(e);
+            } finally {
+                session.disconnect();
+                idleSessions.offer(session);
+            }
+        }, executor);
+    }
+
+    /**
+     * Run all jobs, spread across readers
+     */
+    public <T> List<CompletableFuture<T>> submitAll(List<? extends CardJob<T>> jobs) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(jobs.size());
+        for (CardJob<T> job : jobs) {
+            futures.add(submit(job));
+        }
+        return futures;
+    }
+
+    /**
+     * Number of readers in the pool
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Number of readers not currently running a job
+     */
+    public int getIdleCount() {
+        return idleSessions.size();
+    }
+
+    public int getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    public int getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    /**
+     * Stop accepting jobs, wait for running ones and disconnect all readers
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        for (CardService session : sessions) {
+            session.disconnect();
+        }
+    }
+}
@@ -5,145 +5,249 @@ import java.nio.charset.StandardCharsets;
 
 /**
  * Parser for Citizen Information stored on smart card
- * 
- * Format: name|idNumber|roomNumber|dob|phone
- * Example: "Nguyen Van A|001234567890|A101|01/01/1990|0912345678"
- * 
+ *
+ * Format v1 (binary TLV): [0xC1] then [tag:1][len:1][UTF-8 value] per field
+ * Example: C1 01 0C "Nguyen Van A" 02 0C "001234567890" 03 04 "A101" ...
+ * Empty fields are left out, unknown tags are skipped, a 0x00 tag ends the record.
+ *
+ * Legacy format (still read): name|idNumber|roomNumber|dob|phone
+ * The header byte 0xC1 never occurs in UTF-8 text, so the two cannot be confused.
+ *
  * Note: CitizenInfo model has fields: name, dob, idNumber, roomNumber, phone, email, pin, balance, photoPath, photoData
- * Card only stores: name, idNumber, roomNumber, dob, phone (other fields not stored on card)
+ * Card only stores: name, idNumber, roomNumber, dob, phone, email (other fields not stored on card)
  */
 public class CitizenInfoParser {
-    
-    private static final String DELIMITER = "|";
-    
+
+    /** Format header: 0xC0 | version */
+    public static final byte FORMAT_V1 = (byte) 0xC1;
+
+    // Field tags - stable, the applet patches fields by tag
+    public static final byte TAG_END = (byte) 0x00;
+    public static final byte TAG_NAME = (byte) 0x01;
+    public static final byte TAG_ID_NUMBER = (byte) 0x02;
+    public static final byte TAG_ROOM_NUMBER = (byte) 0x03;
+    public static final byte TAG_DOB = (byte) 0x04;
+    public static final byte TAG_PHONE = (byte) 0x05;
+    public static final byte TAG_EMAIL = (byte) 0x06;
+
+    /** Longest value a single field can hold (1-byte length) */
+    public static final int MAX_FIELD_LENGTH = 255;
+
+    /** Longest whole record - the card returns it in one short APDU */
+    public static final int MAX_RECORD_LENGTH = 255;
+
+    private static final byte LEGACY_DELIMITER = (byte) '|';
+
     /**
-     * Serialize CitizenInfo to bytes for card storage
-     * Only stores: name|idNumber|roomNumber|dob|phone
+     * Serialize CitizenInfo to bytes for card storage (format v1)
+     * Editable fields (phone, email) go last, so patching them touches the fewest AES blocks
      */
     public static byte[] serialize(CitizenInfo info) {
         if (info == null) {
             throw new IllegalArgumentException("CitizenInfo cannot be null");
         }
-        
-        String infoString = String.format("%s|%s|%s|%s|%s",
-            info.name != null ? info.name : "",
-            info.idNumber != null ? info.idNumber : "",
-            info.roomNumber != null ? info.roomNumber : "",
-            info.dob != null ? info.dob : "",
-            info.phone != null ? info.phone : ""
-        );
-        
-        return infoString.getBytes(StandardCharsets.UTF_8);
+
+        byte[][] values = {
+            utf8(info.name), utf8(info.idNumber), utf8(info.roomNumber), utf8(info.dob), utf8(info.phone), utf8(info.email)
+        };
+        byte[] tags = { TAG_NAME, TAG_ID_NUMBER, TAG_ROOM_NUMBER, TAG_DOB, TAG_PHONE, TAG_EMAIL };
+
+        int size = 1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].length > MAX_FIELD_LENGTH) {
+                throw new IllegalArgumentException("Field 0x" + String.format("%02X", tags[i]) + " too long ("
+                        + values[i].length + " bytes, max " + MAX_FIELD_LENGTH + ")");
+            }
+            if (values[i].length > 0) {
+                size += 2 + values[i].length;
+            }
+        }
+
+        byte[] out = new byte[size];
+        int off = 0;
+        out[off++] = FORMAT_V1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].length == 0) {
+                continue;
+            }
+            out[off++] = tags[i];
+            out[off++] = (byte) values[i].length;
+            System.arraycopy(values[i], 0, out, off, values[i].length);
+            off += values[i].length;
+        }
+        return out;
     }
-    
+
     /**
-     * Parse bytes from card to CitizenInfo object
-     * Card format: name|idNumber|roomNumber|dob|phone
-     * Creates CitizenInfo with: name, dob, idNumber, roomNumber, phone, email=null, pin=null, balance=0, photoPath=null, photoData=null
+     * Parse bytes from card to CitizenInfo object (format v1 or legacy)
+     * Creates CitizenInfo with: name, dob, idNumber, roomNumber, phone, email, pin=null, balance=0, photoPath=null, photoData=null
      */
     public static CitizenInfo parse(byte[] infoBytes) {
         if (infoBytes == null || infoBytes.length == 0) {
             throw new IllegalArgumentException("Info bytes cannot be null or empty");
         }
-        
-        try {
-            // Debug: Show raw bytes
-            System.out.println("[DEBUG] Raw info bytes length: " + infoBytes.length);
-            System.out.println("[DEBUG] Raw info bytes (hex): " + bytesToHex(infoBytes));
-            
-            String infoString = new String(infoBytes, StandardCharsets.UTF_8).trim();
-            
-            // Debug: Show decoded string
-            System.out.println("[DEBUG] Decoded info string: '" + infoString + "'");
-            System.out.println("[DEBUG] String length: " + infoString.length());
-            
-            // Remove any null bytes or padding
-            infoString = infoString.replaceAll("\u0000", "");
-            
-            // Debug: Show after null removal
-            System.out.println("[DEBUG] After null removal: '" + infoString + "'");
-            
-            String[] parts = infoString.split("\\|", -1); // -1 to keep empty strings
-            
-            // Debug: Show parts
-            System.out.println("[DEBUG] Split into " + parts.length + " parts:");
-            for (int i = 0; i < parts.length; i++) {
-                System.out.println("[DEBUG]   Part " + i + ": '" + parts[i] + "'");
+        return parse(infoBytes, 0, infoBytes.length);
+    }
+
+    /**
+     * Parse info stored in data[offset, offset + length) - reads in place, no copy of the slice
+     */
+    public static CitizenInfo parse(byte[] data, int offset, int length) {
+        if (data == null || length <= 0 || offset < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Info bytes cannot be null or empty");
+        }
+
+        String[] fields = new String[TAG_EMAIL + 1];
+        if (data[offset] == FORMAT_V1) {
+            parseTlv(data, offset + 1, offset + length, fields);
+        } else {
+            parseLegacy(data, offset, offset + length, fields);
+        }
+
+        // Constructor: (name, dob, idNumber, roomNumber, phone, email, pin, balance, photoPath, photoData)
+        return new CitizenInfo(
+            fields[TAG_NAME],
+            fields[TAG_DOB],
+            fields[TAG_ID_NUMBER],
+            fields[TAG_ROOM_NUMBER],
+            fields[TAG_PHONE],
+            fields[TAG_EMAIL],
+            null,           // pin - not stored on card (security!)
+            0,              // balance - retrieved separately via getBalance()
+            null,           // photoPath - not stored on card
+            null            // photoData - retrieved separately via downloadAvatar()
+        );
+    }
+
+    private static void parseTlv(byte[] data, int off, int end, String[] fields) {
+        while (off < end) {
+            byte tag = data[off];
+            if (tag == TAG_END) {
+                break; // padding
+            }
+            if (off + 2 > end) {
+                throw new IllegalArgumentException("Invalid info format: truncated field header at " + off);
             }
-            
-            if (parts.length < 5) {
-                throw new IllegalArgumentException("Invalid info format: expected 5 parts, got " + parts.length);
+            int len = data[off + 1] & 0xFF;
+            off += 2;
+            if (off + len > end) {
+                throw new IllegalArgumentException("Invalid info format: field 0x" + String.format("%02X", tag)
+                        + " needs " + len + " bytes, " + (end - off) + " left");
+            }
+            if (tag > 0 && tag < fields.length && len > 0) {
+                fields[tag] = new String(data, off, len, StandardCharsets.UTF_8);
+            }
+            off += len; // unknown tag from a newer writer: skip
+        }
+    }
+
+    /**
+     * name|idNumber|roomNumber|dob|phone - '|' never occurs inside a UTF-8 multi-byte sequence
+     */
+    private static void parseLegacy(byte[] data, int off, int end, String[] fields) {
+        // Older applets zero-pad the record
+        while (end > off && (data[end - 1] == 0x00 || data[end - 1] == ' ')) {
+            end--;
+        }
+        while (off < end && data[off] == ' ') {
+            off++;
+        }
+
+        byte[] order = { TAG_NAME, TAG_ID_NUMBER, TAG_ROOM_NUMBER, TAG_DOB, TAG_PHONE };
+        int part = 0;
+        int start = off;
+        for (int i = off; i <= end && part < order.length; i++) {
+            if (i == end || data[i] == LEGACY_DELIMITER) {
+                if (i > start) {
+                    fields[order[part]] = new String(data, start, i - start, StandardCharsets.UTF_8);
+                }
+                part++;
+                start = i + 1;
             }
-            
-            // Extract fields from card
-            String name = parts[0].isEmpty() ? null : parts[0];
-            String idNumber = parts[1].isEmpty() ? null : parts[1];
-            String roomNumber = parts[2].isEmpty() ? null : parts[2];
-            String dob = parts[3].isEmpty() ? null : parts[3];
-            String phone = parts[4].isEmpty() ? null : parts[4];
-            
-            // Create CitizenInfo with all required constructor parameters
-            // Constructor: (name, dob, idNumber, roomNumber, phone, email, pin, balance, photoPath, photoData)
-            return new CitizenInfo(
-                name,           // name
-                dob,            // dob
-                idNumber,       // idNumber
-                roomNumber,     // roomNumber
-                phone,          // phone
-                null,           // email - not stored on card
-                null,           // pin - not stored on card (security!)
-                0,              // balance - retrieved separately via getBalance()
-                null,           // photoPath - not stored on card
-                null            // photoData - retrieved separately via downloadAvatar()
-            );
-            
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse citizen info: " + e.getMessage(), e);
+        }
+
+        if (part < order.length) {
+            throw new IllegalArgumentException("Invalid info format: expected 5 parts, got " + part);
         }
     }
-    
+
+    /**
+     * One field as sent to the card for a partial update: [tag:1][len:1][value]
+     * An empty or null value encodes as length 0 (field removed)
+     */
+    public static byte[] encodeField(byte tag, String value) {
+        if (tag < TAG_NAME || tag > TAG_EMAIL) {
+            throw new IllegalArgumentException("Unknown info field tag: 0x" + String.format("%02X", tag));
+        }
+        byte[] bytes = utf8(value);
+        if (bytes.length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("Field too long (" + bytes.length + " bytes, max " + MAX_FIELD_LENGTH + ")");
+        }
+        byte[] out = new byte[2 + bytes.length];
+        out[0] = tag;
+        out[1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, out, 2, bytes.length);
+        return out;
+    }
+
+    /**
+     * Copy of info with one card field (TAG_*) replaced
+     */
+    public static CitizenInfo withField(CitizenInfo info, byte tag, String value) {
+        if (value != null && value.isEmpty()) {
+            value = null;
+        }
+        return new CitizenInfo(
+            tag == TAG_NAME ? value : info.name,
+            tag == TAG_DOB ? value : info.dob,
+            tag == TAG_ID_NUMBER ? value : info.idNumber,
+            tag == TAG_ROOM_NUMBER ? value : info.roomNumber,
+            tag == TAG_PHONE ? value : info.phone,
+            tag == TAG_EMAIL ? value : info.email,
+            info.pin,
+            info.balance,
+            info.photoPath,
+            info.photoData
+        );
+    }
+
     /**
      * Validate CitizenInfo before serialization
      */
     public static boolean validate(CitizenInfo info) {
         if (info == null) return false;
-        
+
         // Check required fields
         if (info.name == null || info.name.trim().isEmpty()) return false;
         if (info.idNumber == null || info.idNumber.trim().isEmpty()) return false;
-        
-        // Check for delimiter in fields (would break parsing)
-        if (containsDelimiter(info.name)) return false;
-        if (containsDelimiter(info.idNumber)) return false;
-        if (containsDelimiter(info.roomNumber)) return false;
-        if (containsDelimiter(info.dob)) return false;
-        if (containsDelimiter(info.phone)) return false;
-        
-        return true;
+
+        // Each field must fit its 1-byte length
+        if (!fitsField(info.name)) return false;
+        if (!fitsField(info.idNumber)) return false;
+        if (!fitsField(info.roomNumber)) return false;
+        if (!fitsField(info.dob)) return false;
+        if (!fitsField(info.phone)) return false;
+        if (!fitsField(info.email)) return false;
+
+        // Whole record must fit one GET INFO response
+        return serialize(info).length <= MAX_RECORD_LENGTH;
+    }
+
+    private static boolean fitsField(String value) {
+        return utf8(value).length <= MAX_FIELD_LENGTH;
     }
-    
-    private static boolean containsDelimiter(String value) {
-        return value != null && value.contains(DELIMITER);
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
     }
-    
+
     /**
      * Get info string for display/debugging
      */
     public static String toString(CitizenInfo info) {
         if (info == null) return "null";
-        
-        return String.format("CitizenInfo{name='%s', id='%s', room='%s', dob='%s', phone='%s'}",
-            info.name, info.idNumber, info.roomNumber, info.dob, info.phone);
-    }
-    
-    /**
-     * Convert bytes to hex string for debugging
-     */
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X ", b));
-        }
-        return sb.toString().trim();
+
+        return String.format("CitizenInfo{name='%s', id='%s', room='%s', dob='%s', phone='%s', email='%s'}",
+            info.name, info.idNumber, info.roomNumber, info.dob, info.phone, info.email);
     }
 }
@@ -0,0 +1,101 @@
+package citizencard.util;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.util.Callback;
+
+import java.util.List;
+
+/**
+ * Virtualized list backed by paged data
+ *
+ * The ListView only creates cells for visible rows and reuses them while
+ * scrolling. Rows are fetched one page at a time from a PageSource; the next
+ * page is requested when a cell near the end of the loaded rows is shown.
+ */
+public class PagedListView<T> {
+
+    /**
+     * Sequential page provider (e.g. a CardDAO keyset cursor)
+     */
+    public interface PageSource<T> {
+        /**
+         * Next page of rows (empty when exhausted)
+         */
+        List<T> nextPage();
+
+        boolean hasMore();
+    }
+
+    // Start loading the next page when this close to the last loaded row
+    private static final int PREFETCH_ROWS = 10;
+
+    private final ListView<T> listView = new ListView<>();
+    private final ObservableList<T> rows = FXCollections.observableArrayList();
+    private PageSource<T> source;
+    private boolean loadScheduled;
+
+    /**
+     * @param cellFactory   Cells must update their content in updateItem (they are reused)
+     * @param fixedCellSize Row height in px - lets the ListView lay out without measuring rows
+     * @param emptyText     Shown when the source has no rows
+     */
+    public PagedListView(Callback<ListView<T>, ListCell<T>> cellFactory, double fixedCellSize, String emptyText) {
+        listView.setItems(rows);
+        listView.setFixedCellSize(fixedCellSize);
+
+        Label placeholder = new Label(emptyText);
+        placeholder.setStyle("-fx-font-size: 16px; -fx-text-fill: #6b7280; -fx-padding: 40px;");
+        listView.setPlaceholder(placeholder);
+
+        listView.setCellFactory(view -> {
+            ListCell<T> cell = cellFactory.call(view);
+            cell.indexProperty().addListener((obs, oldIndex, index) -> {
+                if (index.intValue() >= rows.size() - PREFETCH_ROWS) {
+                    scheduleLoad();
+                }
+            });
+            return cell;
+        });
+    }
+
+    /**
+     * Replace the data source and show its first page
+     */
+    public void setSource(PageSource<T> source) {
+        this.source = source;
+        rows.clear();
+        loadNextPage();
+        listView.scrollTo(0);
+    }
+
+    public ListView<T> getView() {
+        return listView;
+    }
+
+    public int getLoadedCount() {
+        return rows.size();
+    }
+
+    private void scheduleLoad() {
+        if (loadScheduled || source == null || !source.hasMore()) {
+            return;
+        }
+        // Don't modify the items while the ListView is laying out cells
+        loadScheduled = true;
+        Platform.runLater(() -> {
+            loadScheduled = false;
+            loadNextPage();
+        });
+    }
+
+    private void loadNextPage() {
+        if (source != null && source.hasMore()) {
+            rows.addAll(source.nextPage());
+        }
+    }
+}
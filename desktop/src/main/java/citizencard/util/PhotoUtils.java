@@ -6,6 +6,14 @@ import java.awt.image.BufferedImage;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
 
 /**
@@ -47,6 +55,80 @@ public class PhotoUtils {
             throw new IOException("Failed to load image: " + imageFile.getPath());
         }
 
+        return fitToCard(original);
+    }
+
+    // =====================================================
+    // SIZE SOLVER
+    // =====================================================
+
+    private static final float MIN_QUALITY = 0.5f;
+    private static final double MIN_SCALE = 0.1;
+    private static final int SEARCH_STEPS = 3; // Encodes per search phase once a fit is known
+    private static final int MAX_ENCODES = 12; // Hard cap, below the old worst case
+    private static final double TARGET_FILL = 0.97; // Aim a bit under the limit
+    private static final double GOOD_ENOUGH_FILL = 0.92; // Stop once a fit uses this much of the limit
+
+    /**
+     * One encoded (scale, quality) attempt
+     */
+    static class Candidate {
+        final double scale;
+        final float quality;
+        final byte[] bytes;
+
+        Candidate(double scale, float quality, byte[] bytes) {
+            this.scale = scale;
+            this.quality = quality;
+            this.bytes = bytes;
+        }
+
+        boolean fits() {
+            return bytes.length <= MAX_PHOTO_SIZE;
+        }
+    }
+
+    /**
+     * Encodes a working image at a given scale/quality, caching resized copies per scale
+     */
+    private static class Encoder {
+        final BufferedImage image;
+        int encodes;
+        private double lastScale = -1;
+        private BufferedImage lastResized;
+
+        Encoder(BufferedImage image) {
+            this.image = image;
+        }
+
+        Candidate encode(double scale, float quality) throws IOException {
+            BufferedImage source = image;
+            if (scale < 1.0) {
+                if (scale != lastScale) {
+                    lastResized = resizeImage(image, Math.max(1, (int) (image.getWidth() * scale)),
+                            Math.max(1, (int) (image.getHeight() * scale)));
+                    lastScale = scale;
+                }
+                source = lastResized;
+            }
+            encodes++;
+            Candidate c = new Candidate(scale, quality, compressToJPEG(source, quality));
+            System.out.println("[PHOTO] Encode #" + encodes + " " + source.getWidth() + "x" + source.getHeight()
+                    + " q=" + String.format("%.2f", quality) + ": " + c.bytes.length + " bytes");
+            return c;
+        }
+    }
+
+    /**
+     * Convert to RGB, cap at 800px, then search the largest scale / highest quality that fits MAX_PHOTO_SIZE
+     *
+     * Dimensions are preferred over quality (as before): the largest scale that fits at
+     * MIN_QUALITY is found first, guided by a bytes-proportional-to-pixels model from the
+     * previous encode, then quality is bisected upwards at that scale.
+     */
+    private static byte[] fitToCard(BufferedImage original) throws IOException {
+        long start = System.nanoTime();
+
         // Remove alpha channel (transparency) by converting to RGB
         // This is important because JPEG doesn't support transparency
         BufferedImage rgbImage = new BufferedImage(
@@ -64,8 +146,6 @@ public class PhotoUtils {
 
         System.out.println("[PHOTO] Original size: " + original.getWidth() + "x" + original.getHeight());
 
-        // Step 1: Try with original dimensions first (but limit max dimension to avoid
-        // ultra-large files)
         // If > 800px, resize to 800px first for sanity
         BufferedImage workingImage = original;
         int maxDim = Math.max(original.getWidth(), original.getHeight());
@@ -75,46 +155,319 @@ public class PhotoUtils {
                     + workingImage.getHeight());
         }
 
-        // Compress to JPEG with high quality
-        byte[] photoBytes = compressToJPEG(workingImage, JPEG_QUALITY);
-        System.out.println("[PHOTO] Initial compression: " + photoBytes.length + " bytes");
+        Candidate best;
+        int encodes;
+        if (parallelEncoding) {
+            ParallelEncoder encoder = new ParallelEncoder(workingImage);
+            best = solveParallel(encoder);
+            encodes = encoder.encodes.get();
+        } else {
+            Encoder encoder = new Encoder(workingImage);
+            best = solve(encoder);
+            encodes = encoder.encodes;
+        }
 
-        // Step 2: If too large, reduce quality (down to 0.5)
-        float quality = JPEG_QUALITY;
-        while (photoBytes.length > MAX_PHOTO_SIZE && quality > 0.5f) {
-            quality -= 0.1f;
-            photoBytes = compressToJPEG(workingImage, quality);
-            System.out.println("[PHOTO] Reducing quality to " + String.format("%.1f", quality) + ": "
-                    + photoBytes.length + " bytes");
+        if (best == null) {
+            throw new IOException("Cannot compress image to fit " + MAX_PHOTO_SIZE + " byte limit.");
         }
 
-        // Step 3: If still too large, resize incrementally (maintain aspect ratio)
-        // Reduce scaling factor until fit
-        double scale = 0.9;
-        while (photoBytes.length > MAX_PHOTO_SIZE && scale > 0.1) {
-            int newWidth = (int) (workingImage.getWidth() * scale);
-            int newHeight = (int) (workingImage.getHeight() * scale);
+        System.out.println("[PHOTO] Final photo ready: " + best.bytes.length + " bytes (scale "
+                + String.format("%.2f", best.scale) + ", q=" + String.format("%.2f", best.quality) + ", "
+                + encodes + " encodes" + (parallelEncoding ? " in parallel" : "") + ", " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        return best.bytes;
+    }
 
-            BufferedImage resized = resizeImage(workingImage, newWidth, newHeight);
+    private static Candidate solve(Encoder encoder) throws IOException {
+        // Step 1: full size, high quality
+        Candidate high = encoder.encode(1.0, JPEG_QUALITY);
+        if (high.fits()) {
+            return high;
+        }
+
+        // Step 2: full size, lowest acceptable quality - tells whether resizing is needed
+        Candidate low = encoder.encode(1.0, MIN_QUALITY);
+        if (!low.fits()) {
+            // Step 3: largest scale that fits at MIN_QUALITY
+            low = searchScale(encoder, low);
+            if (low == null) {
+                return null;
+            }
+        }
 
-            // Try with good quality first, then lower if needed for this size
-            photoBytes = compressToJPEG(resized, 0.7f);
+        // Step 4: highest quality that still fits at the chosen scale
+        return searchQuality(encoder, low, JPEG_QUALITY);
+    }
 
-            if (photoBytes.length > MAX_PHOTO_SIZE) {
-                photoBytes = compressToJPEG(resized, 0.5f);
+    /**
+     * Highest quality in (fit.quality, tooBigQuality) that still fits at fit.scale
+     */
+    private static Candidate searchQuality(Encoder encoder, Candidate fit, float tooBigQuality) throws IOException {
+        Candidate best = fit;
+        float lo = fit.quality;
+        float hi = tooBigQuality;
+
+        for (int step = 0; step < SEARCH_STEPS && encoder.encodes < MAX_ENCODES; step++) {
+            if (best.bytes.length >= MAX_PHOTO_SIZE * GOOD_ENOUGH_FILL || hi - lo < 0.05f) {
+                break;
             }
+            float mid = (lo + hi) / 2;
+            Candidate c = encoder.encode(fit.scale, mid);
+            if (c.fits()) {
+                best = c;
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Largest scale that fits at MIN_QUALITY, starting from a too-big full-size encode
+     * (bytes ~ pixels ~ scale^2 picks each guess, bisection keeps it inside the bracket)
+     */
+    private static Candidate searchScale(Encoder encoder, Candidate fullSize) throws IOException {
+        Candidate best = null;
+        double lo = MIN_SCALE; // not known to fit yet
+        double hi = 1.0; // known too big
+        Candidate last = fullSize;
+        int steps = 0;
+
+        while (encoder.encodes < MAX_ENCODES && (steps < SEARCH_STEPS || best == null)) {
+            double guess = last.scale * Math.sqrt(MAX_PHOTO_SIZE * TARGET_FILL / last.bytes.length);
+            if (best != null && (guess <= lo || guess >= hi)) {
+                guess = (lo + hi) / 2;
+            }
+            guess = Math.max(MIN_SCALE, Math.min(guess, hi - 0.01));
+
+            last = encoder.encode(guess, MIN_QUALITY);
+            steps++;
 
-            System.out.println("[PHOTO] Resizing to " + newWidth + "x" + newHeight + " (scale "
-                    + String.format("%.1f", scale) + "): " + photoBytes.length + " bytes");
-            scale -= 0.1;
+            if (last.fits()) {
+                best = last;
+                lo = guess;
+                if (last.bytes.length >= MAX_PHOTO_SIZE * GOOD_ENOUGH_FILL) {
+                    break;
+                }
+            } else {
+                hi = guess;
+                if (guess <= MIN_SCALE) {
+                    break;
+                }
+            }
+            if (best != null && hi - lo < 0.02) {
+                break;
+            }
         }
+        return best;
+    }
 
-        if (photoBytes.length > MAX_PHOTO_SIZE) {
-            throw new IOException("Cannot compress image to fit " + MAX_PHOTO_SIZE + " byte limit.");
+    // =====================================================
+    // PARALLEL SOLVER
+    // =====================================================
+
+    // Candidates per round; each round costs about one encode of wall time on enough cores
+    private static final int PARALLEL_WIDTH = Math.max(2,
+            Math.min(6, Runtime.getRuntime().availableProcessors()));
+    private static volatile boolean parallelEncoding = Boolean.parseBoolean(System.getProperty(
+            "citizencard.photo.parallel", String.valueOf(Runtime.getRuntime().availableProcessors() > 2)));
+    private static ForkJoinPool encodePool;
+
+    /**
+     * Encode several (scale, quality) candidates at once on a ForkJoinPool (default: on when > 2 cores)
+     */
+    public static void setParallelEncoding(boolean enabled) {
+        parallelEncoding = enabled;
+    }
+
+    public static boolean isParallelEncoding() {
+        return parallelEncoding;
+    }
+
+    private static synchronized ForkJoinPool encodePool() {
+        if (encodePool == null) {
+            encodePool = new ForkJoinPool(Math.min(8, Runtime.getRuntime().availableProcessors()));
+        }
+        return encodePool;
+    }
+
+    /**
+     * Thread-safe encoder: every candidate gets its own ImageWriter (compressToJPEG);
+     * resized copies are shared per scale
+     */
+    private static class ParallelEncoder {
+        final BufferedImage image;
+        final AtomicInteger encodes = new AtomicInteger();
+        private final ConcurrentHashMap<Double, BufferedImage> resized = new ConcurrentHashMap<>();
+
+        ParallelEncoder(BufferedImage image) {
+            this.image = image;
+        }
+
+        private Candidate encode(double scale, float quality) throws IOException {
+            BufferedImage source = scale >= 1.0 ? image
+                    : resized.computeIfAbsent(scale, s -> resizeImage(image,
+                            Math.max(1, (int) (image.getWidth() * s)), Math.max(1, (int) (image.getHeight() * s))));
+            encodes.incrementAndGet();
+            return new Candidate(scale, quality, compressToJPEG(source, quality));
         }
 
-        System.out.println("[PHOTO] Final photo ready: " + photoBytes.length + " bytes");
-        return photoBytes;
+        /**
+         * Encode all candidates concurrently (scales[i] with qualities[i])
+         */
+        List<Candidate> encodeAll(double[] scales, float[] qualities) throws IOException {
+            List<Callable<Candidate>> tasks = new ArrayList<>();
+            for (int i = 0; i < scales.length; i++) {
+                double scale = scales[i];
+                float quality = qualities[i];
+                tasks.add(() -> encode(scale, quality));
+            }
+
+            List<Candidate> results = new ArrayList<>();
+            try {
+                for (Future<Candidate> f : encodePool().invokeAll(tasks)) {
+                    results.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Photo encoding interrupted", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException("Photo encoding failed", e.getCause());
+            }
+
+            StringBuilder log = new StringBuilder("[PHOTO] Round of " + results.size() + ":");
+            for (Candidate c : results) {
+                log.append(String.format(" (%.2f, q%.2f)=%d", c.scale, c.quality, c.bytes.length));
+            }
+            System.out.println(log);
+            return results;
+        }
+    }
+
+    /**
+     * Same preference as solve() - largest scale, then highest quality - but each step
+     * tries PARALLEL_WIDTH candidates at once instead of one
+     */
+    private static Candidate solveParallel(ParallelEncoder encoder) throws IOException {
+        // Round 1: full size across the whole quality range
+        float[] qualities = spread(MIN_QUALITY, JPEG_QUALITY, PARALLEL_WIDTH);
+        List<Candidate> round = encoder.encodeAll(repeat(1.0, qualities.length), qualities);
+        Candidate best = highestQualityFit(round);
+        if (best != null) {
+            return refineQuality(encoder, best, round);
+        }
+
+        // Round 2+: scales around the bytes ~ pixels estimate, at MIN_QUALITY
+        Candidate fullSizeLow = round.get(0);
+        double estimate = Math.sqrt(MAX_PHOTO_SIZE * TARGET_FILL / fullSizeLow.bytes.length);
+        double lo = Math.max(MIN_SCALE, estimate * 0.8);
+        double hi = Math.min(0.99, estimate * 1.15);
+        double tooBig = 1.0;
+
+        for (int step = 0; step < SEARCH_STEPS + 1 && encoder.encodes.get() < MAX_ENCODES * 2; step++) {
+            double[] scales = spread(lo, hi, PARALLEL_WIDTH);
+            round = encoder.encodeAll(scales, repeat(MIN_QUALITY, scales.length));
+
+            Candidate largestFit = null;
+            for (Candidate c : round) {
+                if (c.fits() && (largestFit == null || c.scale > largestFit.scale)) {
+                    largestFit = c;
+                } else if (!c.fits() && c.scale < tooBig) {
+                    tooBig = c.scale;
+                }
+            }
+            if (largestFit != null && (best == null || largestFit.scale > best.scale)) {
+                best = largestFit;
+            }
+
+            if (best == null) {
+                // Everything too big: search below the smallest candidate
+                if (lo <= MIN_SCALE) {
+                    return null;
+                }
+                hi = lo;
+                lo = Math.max(MIN_SCALE, lo * 0.6);
+                continue;
+            }
+            if (best.bytes.length >= MAX_PHOTO_SIZE * GOOD_ENOUGH_FILL || tooBig - best.scale < 0.02) {
+                break;
+            }
+            // Next round strictly between the best fit and the smallest scale known too big
+            double gap = (tooBig - best.scale) / (PARALLEL_WIDTH + 1);
+            lo = best.scale + gap;
+            hi = tooBig - gap;
+        }
+
+        if (best == null) {
+            return null; // encode budget spent before anything fit - caller reports it
+        }
+
+        // Final round: quality range at the chosen scale
+        qualities = spread(MIN_QUALITY + (JPEG_QUALITY - MIN_QUALITY) / PARALLEL_WIDTH, JPEG_QUALITY, PARALLEL_WIDTH);
+        round = encoder.encodeAll(repeat(best.scale, qualities.length), qualities);
+        Candidate better = highestQualityFit(round);
+        return better != null ? better : best;
+    }
+
+    /**
+     * One more round between the best fitting quality and the next one that didn't fit
+     */
+    private static Candidate refineQuality(ParallelEncoder encoder, Candidate best, List<Candidate> round)
+            throws IOException {
+        float tooBig = Float.MAX_VALUE;
+        for (Candidate c : round) {
+            if (!c.fits() && c.quality > best.quality && c.quality < tooBig) {
+                tooBig = c.quality;
+            }
+        }
+        if (tooBig == Float.MAX_VALUE || best.bytes.length >= MAX_PHOTO_SIZE * GOOD_ENOUGH_FILL
+                || tooBig - best.quality < 0.05f) {
+            return best;
+        }
+
+        float gap = (tooBig - best.quality) / (PARALLEL_WIDTH + 1);
+        float[] qualities = spread(best.quality + gap, tooBig - gap, PARALLEL_WIDTH);
+        Candidate better = highestQualityFit(encoder.encodeAll(repeat(best.scale, qualities.length), qualities));
+        return better != null && better.quality > best.quality ? better : best;
+    }
+
+    private static Candidate highestQualityFit(List<Candidate> candidates) {
+        Candidate best = null;
+        for (Candidate c : candidates) {
+            if (c.fits() && (best == null || c.quality > best.quality)) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static float[] spread(float from, float to, int n) {
+        float[] values = new float[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = n == 1 ? from : from + (to - from) * i / (n - 1);
+        }
+        return values;
+    }
+
+    private static double[] spread(double from, double to, int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = n == 1 ? from : from + (to - from) * i / (n - 1);
+        }
+        return values;
+    }
+
+    private static double[] repeat(double value, int n) {
+        double[] values = new double[n];
+        java.util.Arrays.fill(values, value);
+        return values;
+    }
+
+    private static float[] repeat(float value, int n) {
+        float[] values = new float[n];
+        java.util.Arrays.fill(values, value);
+        return values;
     }
 
     /**
@@ -128,27 +481,7 @@ public class PhotoUtils {
         // Convert JavaFX Image to BufferedImage using SwingFXUtils
         BufferedImage bufferedImage = SwingFXUtils.fromFXImage(fxImage, null);
 
-        // Convert to RGB (handle transparency)
-        BufferedImage rgbImage = new BufferedImage(
-                bufferedImage.getWidth(),
-                bufferedImage.getHeight(),
-                BufferedImage.TYPE_INT_RGB);
-
-        Graphics2D g2d = rgbImage.createGraphics();
-        g2d.setColor(java.awt.Color.WHITE);
-        g2d.fillRect(0, 0, rgbImage.getWidth(), rgbImage.getHeight());
-        g2d.drawImage(bufferedImage, 0, 0, null);
-        g2d.dispose();
-
-        // Use temporary file to reuse the logic (or refactor to direct byte array - but
-        // file is easier for now)
-        File tempFile = File.createTempFile("temp_photo", ".png");
-        try {
-            ImageIO.write(rgbImage, "png", tempFile);
-            return preparePhotoForCard(tempFile);
-        } finally {
-            tempFile.delete();
-        }
+        return fitToCard(bufferedImage);
     }
 
     /**
@@ -196,6 +529,10 @@ public class PhotoUtils {
             param.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
             param.setCompressionQuality(quality);
         }
+        // Progressive scans: ~10% smaller here, and a partial download already shows the whole photo
+        if (param.canWriteProgressive()) {
+            param.setProgressiveMode(javax.imageio.ImageWriteParam.MODE_DEFAULT);
+        }
 
         javax.imageio.stream.ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
         writer.setOutput(ios);
@@ -237,6 +574,36 @@ public class PhotoUtils {
         }
     }
 
+    /**
+     * Render the first `length` bytes of a JPEG that is still downloading
+     *
+     * Progressive JPEGs show the whole photo at lower detail, baseline ones the
+     * top rows. Returns null until enough of the header has arrived.
+     */
+    public static Image bytesToImage(byte[] photoBytes, int length) {
+        if (photoBytes == null || length < 2) {
+            return null;
+        }
+        // Terminate the truncated stream with EOI so the decoder stops cleanly
+        byte[] partial = java.util.Arrays.copyOf(photoBytes, length + 2);
+        partial[length] = (byte) 0xFF;
+        partial[length + 1] = (byte) 0xD9;
+
+        javax.imageio.ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        try (javax.imageio.stream.ImageInputStream iis = ImageIO.createImageInputStream(
+                new ByteArrayInputStream(partial))) {
+            reader.setInput(iis);
+            // "Premature end of data" warnings are expected here
+            reader.addIIOReadWarningListener((source, warning) -> {
+            });
+            return SwingFXUtils.toFXImage(reader.read(0), null);
+        } catch (Exception e) {
+            return null; // header not complete yet
+        } finally {
+            reader.dispose();
+        }
+    }
+
     /**
      * Save photo bytes to file
      */
@@ -0,0 +1,160 @@
+package citizencard.util;
+
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Public Key Cache - parsed card public keys by card ID
+ *
+ * Holds registered keys only (registered_cards.public_key, filled by CardDAO and read
+ * by CardService) - a key a card reports about itself is never stored here.
+ * On a miss the loader is asked first - CardDAO installs one that reads the
+ * registered key - so a known card is authenticated against the key on record
+ * without another APDU. Bounded: the oldest entries are dropped first.
+ */
+public class PublicKeyCache {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static PublicKeyCache instance;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, PublicKey> keys = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private volatile Function<String, PublicKey> loader;
+    private final AtomicLong invalidations = new AtomicLong(); // bumped before every removal
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public static synchronized PublicKeyCache getInstance() {
+        if (instance == null) {
+            instance = new PublicKeyCache(Integer.getInteger("citizencard.publicKeyCache.size", DEFAULT_CAPACITY));
+        }
+        return instance;
+    }
+
+    public PublicKeyCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Source for keys not in the cache (e.g. the database); may return null
+     */
+    public void setLoader(Function<String, PublicKey> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Parsed key for a card, from the cache or the loader; null if unknown
+     */
+    public PublicKey get(String cardId) {
+        if (cardId == null) {
+            return null;
+        }
+        PublicKey key = keys.get(cardId);
+        if (key != null) {
+            hits.increment();
+            return key;
+        }
+
+        long generation = invalidations.get();
+        Function<String, PublicKey> source = loader;
+        key = source != null ? source.apply(cardId) : null;
+        if (key == null) {
+            misses.increment();
+            return null;
+        }
+        loads.increment();
+        put(cardId, key);
+        if (invalidations.get() != generation) {
+            // Invalidated while loading (e.g. card blocked): drop the possibly stale key
+            // and answer from a fresh read, without caching it
+            remove(cardId, key);
+            return source.apply(cardId);
+        }
+        return key;
+    }
+
+    /**
+     * Parse and remember a serialized card key ([expLen:2][exp][modLen:2][mod])
+     *
+     * @return Parsed key, or null if the blob is not a valid key
+     */
+    public PublicKey put(String cardId, byte[] blob) {
+        PublicKey key = RSAUtils.generatePublicKeyFromBytes(blob);
+        if (key != null) {
+            put(cardId, key);
+        }
+        return key;
+    }
+
+    /**
+     * Same as put(cardId, blob) for the Base64 text stored in registered_cards
+     */
+    public PublicKey putEncoded(String cardId, String base64) {
+        if (base64 == null) {
+            return null;
+        }
+        try {
+            return put(cardId, Base64.getDecoder().decode(base64));
+        } catch (IllegalArgumentException e) {
+            return null; // placeholder key (e.g. simplified applet without RSA)
+        }
+    }
+
+    private void put(String cardId, PublicKey key) {
+        if (cardId == null || key == null) {
+            return;
+        }
+        if (keys.put(cardId, key) == null) {
+            insertionOrder.add(cardId);
+            while (keys.size() > capacity) {
+                String eldest = insertionOrder.poll();
+                if (eldest == null) {
+                    break;
+                }
+                keys.remove(eldest);
+            }
+        }
+    }
+
+    private void remove(String cardId, PublicKey key) {
+        if (keys.remove(cardId, key)) {
+            insertionOrder.remove(cardId);
+        }
+    }
+
+    /**
+     * Forget a card's key (blocked, cleared, re-issued)
+     */
+    public void invalidate(String cardId) {
+        if (cardId == null) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        if (keys.remove(cardId) != null) {
+            insertionOrder.remove(cardId);
+        }
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        keys.clear();
+        insertionOrder.clear();
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public String getStats() {
+        return String.format("size=%d hits=%d loads=%d misses=%d", keys.size(), hits.sum(), loads.sum(), misses.sum());
+    }
+}
@@ -4,6 +4,9 @@ import java.math.BigInteger;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * RSA Utilities for Citizen Card
@@ -13,21 +16,90 @@ import java.security.spec.RSAPublicKeySpec;
  */
 public class RSAUtils {
 
+    // JCA engines are not thread-safe but are reusable: one per thread, looked up once
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyFactory.getInstance("RSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA KeyFactory not available", e);
+        }
+    });
+    private static final ThreadLocal<Signature> SHA1_VERIFIER = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA1withRSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA1withRSA not available", e);
+        }
+    });
+
+    // Parsed keys by serialized card blob (LRU)
+    private static final int PUBLIC_KEY_CACHE_SIZE = 1024;
+    private static final Map<BlobKey, PublicKey> PUBLIC_KEY_CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BlobKey, PublicKey> eldest) {
+            return size() > PUBLIC_KEY_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * byte[] with value equality (map key)
+     */
+    private static final class BlobKey {
+        private final byte[] bytes;
+        private final int hash;
+
+        BlobKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BlobKey && Arrays.equals(bytes, ((BlobKey) other).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     /**
      * Generate PublicKey from serialized bytes from card
      * 
      * Format: [expLen:2][exp:expLen][modLen:2][mod:modLen]
      * Typically: 2 + 3 + 2 + 128 = 135 bytes for RSA-1024
      * 
+     * Parsed keys are cached by blob, so repeated calls for the same card are a map lookup.
+     * 
      * @param data Serialized public key bytes from card
      * @return PublicKey object or null if failed
      */
     public static PublicKey generatePublicKeyFromBytes(byte[] data) {
-        try {
-            if (data == null || data.length < 7) {
-                System.err.println("[RSA] Invalid public key data: too short");
-                return null;
+        if (data == null || data.length < 7) {
+            System.err.println("[RSA] Invalid public key data: too short");
+            return null;
+        }
+
+        BlobKey cacheKey = new BlobKey(data.clone());
+        synchronized (PUBLIC_KEY_CACHE) {
+            PublicKey cached = PUBLIC_KEY_CACHE.get(cacheKey);
+            if (cached != null) {
+                return cached;
             }
+        }
+
+        PublicKey publicKey = parsePublicKey(data);
+        if (publicKey != null) {
+            synchronized (PUBLIC_KEY_CACHE) {
+                PUBLIC_KEY_CACHE.put(cacheKey, publicKey);
+            }
+        }
+        return publicKey;
+    }
+
+    private static PublicKey parsePublicKey(byte[] data) {
+        try {
 
             System.out.println("[RSA] Parsing public key, data length: " + data.length);
 
@@ -39,6 +111,11 @@ public class RSAUtils {
                 return null;
             }
 
+            if (data.length < 2 + expLen + 2) {
+                System.err.println("[RSA] Invalid public key data: truncated");
+                return null;
+            }
+
             // Extract exponent bytes
             byte[] expBytes = new byte[expLen];
             System.arraycopy(data, 2, expBytes, 0, expLen);
@@ -47,7 +124,7 @@ public class RSAUtils {
             int modOffset = 2 + expLen;
             int modLen = ((data[modOffset] & 0xFF) << 8) | (data[modOffset + 1] & 0xFF);
 
-            if (modLen <= 0 || modLen > 256) {
+            if (modLen <= 0 || modLen > 256 || data.length < modOffset + 2 + modLen) {
                 System.err.println("[RSA] Invalid modulus length: " + modLen);
                 return null;
             }
@@ -66,13 +143,12 @@ public class RSAUtils {
             RSAPublicKeySpec publicKeySpec = new RSAPublicKeySpec(modulus, exponent);
 
             // Generate public key
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            PublicKey publicKey = keyFactory.generatePublic(publicKeySpec);
+            PublicKey publicKey = KEY_FACTORY.get().generatePublic(publicKeySpec);
 
             System.out.println("[RSA] Public key generated successfully");
             return publicKey;
 
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+        } catch (InvalidKeySpecException e) {
             System.err.println("[RSA] Failed to generate public key: " + e.getMessage());
             e.printStackTrace();
             return null;
@@ -93,16 +169,12 @@ public class RSAUtils {
                 return false;
             }
 
-            Signature verifier = Signature.getInstance("SHA1withRSA");
-            verifier.initVerify(publicKey);
-            verifier.update(challenge.getBytes());
-
-            boolean valid = verifier.verify(signature);
+            boolean valid = verify(signature, publicKey, challenge.getBytes());
             System.out.println("[RSA] Signature verification: " + (valid ? "VALID" : "INVALID"));
 
             return valid;
 
-        } catch (NoSuchAlgorithmException | SignatureException | InvalidKeyException e) {
+        } catch (SignatureException | InvalidKeyException e) {
             System.err.println("[RSA] Signature verification failed: " + e.getMessage());
             e.printStackTrace();
             return false;
@@ -118,11 +190,7 @@ public class RSAUtils {
                 return false;
             }
 
-            Signature verifier = Signature.getInstance("SHA1withRSA");
-            verifier.initVerify(publicKey);
-            verifier.update(challenge);
-
-            boolean valid = verifier.verify(signature);
+            boolean valid = verify(signature, publicKey, challenge);
             System.out.println("[RSA] Signature verification: " + (valid ? "VALID" : "INVALID"));
 
             return valid;
@@ -133,6 +201,22 @@ public class RSAUtils {
         }
     }
 
+    /**
+     * SHA1withRSA verification on this thread's Signature engine (no logging - bulk use)
+     */
+    public static boolean verify(byte[] signature, PublicKey publicKey, byte[] data)
+            throws InvalidKeyException, SignatureException {
+        Signature verifier = SHA1_VERIFIER.get();
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        try {
+            return verifier.verify(signature);
+        } catch (SignatureException e) {
+            // Malformed signature (e.g. wrong length) - the engine is reset by the next initVerify
+            return false;
+        }
+    }
+
     /**
      * Check if key pair is valid (for testing)
      */
@@ -0,0 +1,71 @@
+package citizencard.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CardSearchIndexTest {
+
+    private static CardSearchIndex index(String... cardIds) {
+        CardSearchIndex index = new CardSearchIndex();
+        for (String cardId : cardIds) {
+            index.add(cardId, "ACTIVE");
+        }
+        return index;
+    }
+
+    private static String ids(List<CardSearchIndex.Match> matches) {
+        StringBuilder sb = new StringBuilder();
+        for (CardSearchIndex.Match m : matches) {
+            sb.append(sb.length() > 0 ? "," : "").append(m.cardId);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void exactThenPrefixThenSubstringByPosition() {
+        CardSearchIndex index = index("XXAB12", "AB12", "AB123", "XAB12", "ab129");
+
+        List<CardSearchIndex.Match> matches = index.search("ab12", null, 10);
+
+        // Prefix ties newest first, substrings by position
+        assertEquals("AB12,ab129,AB123,XAB12,XXAB12", ids(matches));
+        assertEquals(CardSearchIndex.MatchType.EXACT, matches.get(0).type);
+        assertEquals(CardSearchIndex.MatchType.PREFIX, matches.get(1).type);
+        assertEquals(CardSearchIndex.MatchType.SUBSTRING, matches.get(3).type);
+        assertEquals(1, matches.get(3).position);
+        assertEquals(2, matches.get(4).position);
+    }
+
+    @Test
+    void limitOneWithExactHit() {
+        CardSearchIndex index = index("AB12", "XAB12", "AB123");
+
+        assertEquals("AB12", ids(index.search("AB12", null, 1)));
+    }
+
+    @Test
+    void limitCutsAcrossMatchTypes() {
+        CardSearchIndex index = index("AB12", "AB123", "XAB12", "YYAB12", "ZAB12");
+
+        assertEquals("AB12,AB123", ids(index.search("AB12", null, 2)));
+        // Same position: newest substring hit first
+        assertEquals("AB12,AB123,ZAB12", ids(index.search("AB12", null, 3)));
+        assertEquals("ZAB12", ids(index.search("AB12", null, 5).subList(2, 3)));
+        assertEquals(1, index.search("AB", null, 1).size());
+    }
+
+    @Test
+    void statusFilterAndNoMatch() {
+        CardSearchIndex index = index("AB12", "XAB12");
+        index.updateStatus("AB12", "BLOCKED");
+
+        assertEquals("XAB12", ids(index.search("AB12", "ACTIVE", 5)));
+        assertEquals("AB12", ids(index.search("AB12", "BLOCKED", 5)));
+        assertTrue(index.search("QQ", null, 5).isEmpty());
+        assertTrue(index.search("AB12", null, 0).isEmpty());
+    }
+}